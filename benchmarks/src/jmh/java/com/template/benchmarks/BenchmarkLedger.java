@@ -0,0 +1,68 @@
+package com.template.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.template.contracts.MetalContract;
+import com.template.states.MetalState;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.serialization.internal.SerializationEnvironmentKt;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.node.MockServices;
+
+import static net.corda.testing.internal.InternalSerializationTestHelpersKt.createTestSerializationEnv;
+
+/**
+ * Builds the transactions measured by the benchmarks, using the same mock ledger as the contract tests.
+ */
+final class BenchmarkLedger {
+
+    static final TestIdentity MINT = new TestIdentity(new CordaX500Name("Mint", "London", "GB"));
+    static final TestIdentity TRADER_A = new TestIdentity(new CordaX500Name("TraderA", "New York", "US"));
+    static final TestIdentity TRADER_B = new TestIdentity(new CordaX500Name("TraderB", "New York", "US"));
+    static final TestIdentity NOTARY = new TestIdentity(new CordaX500Name("Notary", "London", "GB"));
+
+    private static boolean serializationInstalled = false;
+
+    private final MockServices services;
+
+    BenchmarkLedger() {
+        installSerialization();
+        this.services = new MockServices(ImmutableList.of("com.template.contracts"), MINT, TRADER_A, TRADER_B);
+    }
+
+    // Benchmarks run outside of a node, so the AMQP serialisation used by the node has to be set up by hand.
+    static synchronized void installSerialization() {
+        if (serializationInstalled) return;
+        SerializationEnvironmentKt.get_driverSerializationEnv().set(createTestSerializationEnv());
+        serializationInstalled = true;
+    }
+
+    // Mints one Gold bar per output for TraderA.
+    SignedTransaction issue(int width) {
+        TransactionBuilder builder = new TransactionBuilder(NOTARY.getParty())
+                .addCommand(new MetalContract.Issue(), MINT.getPublicKey());
+        for (int i = 0; i < width; i++) {
+            builder.addOutputState(new MetalState("Gold", 10, MINT.getParty(), TRADER_A.getParty()), MetalContract.CID);
+        }
+        return services.signInitialTransaction(builder);
+    }
+
+    // Moves every bar of the issuance from TraderA to TraderB.
+    LedgerTransaction transfer(SignedTransaction issue) throws Exception {
+        services.recordTransactions(issue);
+
+        TransactionBuilder builder = new TransactionBuilder(NOTARY.getParty())
+                .addCommand(new MetalContract.Transfer(), TRADER_A.getPublicKey());
+        for (int i = 0; i < issue.getTx().getOutputs().size(); i++) {
+            builder.addInputState(issue.getTx().outRef(i));
+            builder.addOutputState(new MetalState("Gold", 10, MINT.getParty(), TRADER_B.getParty()), MetalContract.CID);
+        }
+        return builder.toWireTransaction(services).toLedgerTransaction(services);
+    }
+
+    LedgerTransaction toLedgerTransaction(SignedTransaction transaction) throws Exception {
+        return transaction.getTx().toLedgerTransaction(services);
+    }
+}
@@ -0,0 +1,51 @@
+package com.template.benchmarks;
+
+import com.template.contracts.MetalContract;
+import net.corda.core.transactions.LedgerTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MetalContract#verify} on Issue and Transfer transactions of growing width, where the width is the
+ * number of outputs of an Issue, and the number of inputs and of outputs of a Transfer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetalContractVerifyBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int width;
+
+    private final MetalContract contract = new MetalContract();
+    private LedgerTransaction issue;
+    private LedgerTransaction transfer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkLedger ledger = new BenchmarkLedger();
+        issue = ledger.toLedgerTransaction(ledger.issue(width));
+        transfer = ledger.transfer(ledger.issue(width));
+    }
+
+    @Benchmark
+    public LedgerTransaction verifyIssue() {
+        contract.verify(issue);
+        return issue;
+    }
+
+    @Benchmark
+    public LedgerTransaction verifyTransfer() {
+        contract.verify(transfer);
+        return transfer;
+    }
+}
@@ -0,0 +1,97 @@
+package com.template.benchmarks;
+
+import com.template.states.MetalState;
+import com.template.states.MetalStateSerializer;
+import net.corda.client.rpc.internal.serialization.amqp.AMQPClientSerializationScheme;
+import net.corda.core.serialization.SerializationContext;
+import net.corda.core.serialization.SerializationFactory;
+import net.corda.core.serialization.SerializedBytes;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.serialization.internal.SharedContexts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures AMQP serialisation and deserialisation of a single {@link MetalState} and of whole issuance
+ * {@link SignedTransaction}s of growing width. The state is also measured through {@link MetalStateSerializer}, against
+ * a scheme that has only that serializer registered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetalSerializationBenchmark {
+
+    @Param({"1", "100"})
+    public int width;
+
+    private SerializationFactory factory;
+    private SerializationContext context;
+
+    private MetalState state;
+    private SerializedBytes<MetalState> serializedState;
+    private SignedTransaction transaction;
+    private SerializedBytes<SignedTransaction> serializedTransaction;
+
+    private AMQPClientSerializationScheme compactScheme;
+    private SerializationContext compactContext;
+    private SerializedBytes<MetalState> compactState;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkLedger ledger = new BenchmarkLedger();
+        factory = SerializationFactory.Companion.getDefaultFactory();
+        context = factory.getDefaultContext();
+
+        state = new MetalState("Gold", 10, BenchmarkLedger.MINT.getParty(), BenchmarkLedger.TRADER_A.getParty());
+        serializedState = factory.serialize(state, context);
+
+        transaction = ledger.issue(width);
+        serializedTransaction = factory.serialize(transaction, context);
+
+        compactScheme = new AMQPClientSerializationScheme(
+                Collections.singleton(new MetalStateSerializer()), Collections.emptySet(), new ConcurrentHashMap<>());
+        compactContext = SharedContexts.getAMQP_P2P_CONTEXT();
+        compactState = compactScheme.serialize(state, compactContext);
+    }
+
+    @Benchmark
+    public SerializedBytes<MetalState> serializeState() {
+        return factory.serialize(state, context);
+    }
+
+    @Benchmark
+    public MetalState deserializeState() {
+        return factory.deserialize(serializedState, MetalState.class, context);
+    }
+
+    @Benchmark
+    public SerializedBytes<MetalState> serializeStateThroughProxy() {
+        return compactScheme.serialize(state, compactContext);
+    }
+
+    @Benchmark
+    public MetalState deserializeStateThroughProxy() {
+        return compactScheme.deserialize(compactState, MetalState.class, compactContext);
+    }
+
+    @Benchmark
+    public SerializedBytes<SignedTransaction> serializeTransaction() {
+        return factory.serialize(transaction, context);
+    }
+
+    @Benchmark
+    public SignedTransaction deserializeTransaction() {
+        return factory.deserialize(serializedTransaction, SignedTransaction.class, context);
+    }
+}
@@ -0,0 +1,30 @@
+package com.template.benchmarks;
+
+import com.template.states.MetalState;
+import net.corda.core.identity.AbstractParty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MetalState#getParticipants()}, which the node calls for every state it records or sends. Run with
+ * the gc profiler (the default in build.gradle) to see the bytes allocated per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetalStateParticipantsBenchmark {
+
+    private final MetalState state = new MetalState("Gold", 10, BenchmarkLedger.MINT.getParty(), BenchmarkLedger.TRADER_A.getParty());
+
+    @Benchmark
+    public List<AbstractParty> getParticipants() {
+        return state.getParticipants();
+    }
+}
@@ -1,12 +1,25 @@
 package com.template;
 
+import com.template.archive.MetalArchive;
+import com.template.archive.MetalArchiveExporter;
+import com.template.archive.MetalArchiveWriter;
+import com.template.client.BulkExporter;
+import com.template.client.BulkImporter;
+import com.template.client.LoadConfig;
+import com.template.client.LoadGenerator;
 import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
 import net.corda.core.messaging.CordaRPCOps;
 import net.corda.core.node.NodeInfo;
+import net.corda.core.node.services.Vault;
 import net.corda.core.utilities.NetworkHostAndPort;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static net.corda.core.utilities.NetworkHostAndPort.parse;
@@ -14,17 +27,55 @@ import static net.corda.core.utilities.NetworkHostAndPort.parse;
 /**
  * Connects to a Corda node via RPC and performs RPC operations on the node.
  *
- * The RPC connection is configured using command line arguments.
+ * The RPC connection is configured using command line arguments. With no command the client prints the nodes on the
+ * network; the {@code load} command runs a {@link LoadGenerator} configured by the remaining {@code key=value} arguments,
+ * and the {@code archive <directory> [page size]} command appends the node's newly consumed MetalStates to a
+ * {@link MetalArchive}. {@code export <file> [status] [page size]} streams the vault's MetalStates to a file with a
+ * {@link BulkExporter}, and {@code import <file> [concurrency] [batch size]} replays a file of instructions with a
+ * {@link BulkImporter}.
  */
 public class Client {
     private static final Logger logger = LoggerFactory.getLogger(Client.class);
 
-    public static void main(String[] args) {
+    // RPC connections the import spreads its flows over.
+    private static final int IMPORT_CONNECTIONS = 4;
+
+    public static void main(String[] args) throws Exception {
         // Create an RPC connection to the node.
-        if (args.length != 3) throw new IllegalArgumentException("Usage: Client <node address> <rpc username> <rpc password>");
+        if (args.length < 3) throw new IllegalArgumentException("Usage: Client <node address> <rpc username> <rpc password> [load key=value ... | archive <directory> [page size] | export <file> [status] [page size] | import <file> [concurrency] [batch size]]");
         final NetworkHostAndPort nodeAddress = parse(args[0]);
         final String rpcUsername = args[1];
         final String rpcPassword = args[2];
+
+        if (args.length > 3) {
+            switch (args[3]) {
+                case "load":
+                    final LoadConfig config = new LoadConfig(Arrays.copyOfRange(args, 4, args.length));
+                    new LoadGenerator(nodeAddress, rpcUsername, rpcPassword, config).run();
+                    return;
+                case "archive":
+                    if (args.length < 5) throw new IllegalArgumentException("Usage: archive <directory> [page size]");
+                    final int pageSize = args.length > 5 ? Integer.parseInt(args[5]) : MetalArchiveExporter.DEFAULT_PAGE_SIZE;
+                    archive(nodeAddress, rpcUsername, rpcPassword, Paths.get(args[4]), pageSize);
+                    return;
+                case "export":
+                    if (args.length < 5) throw new IllegalArgumentException("Usage: export <file> [status] [page size]");
+                    final Vault.StateStatus status = args.length > 5 ? Vault.StateStatus.valueOf(args[5]) : Vault.StateStatus.UNCONSUMED;
+                    final int exportPageSize = args.length > 6 ? Integer.parseInt(args[6]) : BulkExporter.DEFAULT_PAGE_SIZE;
+                    export(nodeAddress, rpcUsername, rpcPassword, Paths.get(args[4]), status, exportPageSize);
+                    return;
+                case "import":
+                    if (args.length < 5) throw new IllegalArgumentException("Usage: import <file> [concurrency] [batch size]");
+                    final int concurrency = args.length > 5 ? Integer.parseInt(args[5]) : BulkImporter.DEFAULT_CONCURRENCY;
+                    final int batchSize = args.length > 6 ? Integer.parseInt(args[6]) : BulkImporter.DEFAULT_BATCH_SIZE;
+                    final long failed = importFile(nodeAddress, rpcUsername, rpcPassword, Paths.get(args[4]), concurrency, batchSize);
+                    if (failed > 0) System.exit(1);
+                    return;
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + args[3]);
+            }
+        }
+
         final CordaRPCClient client = new CordaRPCClient(nodeAddress);
         final CordaRPCOps proxy = client.start(rpcUsername, rpcPassword).getProxy();
 
@@ -33,4 +84,45 @@ public class Client {
         final List<NodeInfo> nodes = proxy.networkMapSnapshot();
         logger.info("{}", nodes);
     }
-}
\ No newline at end of file
+
+    private static void archive(NetworkHostAndPort nodeAddress, String rpcUsername, String rpcPassword, Path directory, int pageSize) throws Exception {
+        final CordaRPCConnection connection = new CordaRPCClient(nodeAddress).start(rpcUsername, rpcPassword);
+        try (MetalArchiveWriter writer = MetalArchiveWriter.open(directory)) {
+            final long appended = new MetalArchiveExporter(connection.getProxy(), pageSize).export(writer);
+            logger.info("Archived {} newly consumed states to {}", appended, directory);
+        } finally {
+            connection.notifyServerAndClose();
+        }
+
+        try (MetalArchive archive = MetalArchive.open(directory)) {
+            logger.info("The archive holds {} consumed states; weight consumed per metal: {}",
+                    archive.size(), archive.query().weightByMetal());
+        }
+    }
+
+    private static void export(NetworkHostAndPort nodeAddress, String rpcUsername, String rpcPassword, Path file, Vault.StateStatus status, int pageSize) throws Exception {
+        final CordaRPCConnection connection = new CordaRPCClient(nodeAddress).start(rpcUsername, rpcPassword);
+        try {
+            final long exported = new BulkExporter(connection.getProxy(), status, pageSize).export(file);
+            logger.info("Exported {} {} states to {}", exported, status, file);
+        } finally {
+            connection.notifyServerAndClose();
+        }
+    }
+
+    private static long importFile(NetworkHostAndPort nodeAddress, String rpcUsername, String rpcPassword, Path file, int concurrency, int batchSize) throws Exception {
+        final CordaRPCClient client = new CordaRPCClient(nodeAddress);
+        final List<CordaRPCConnection> connections = new ArrayList<>(IMPORT_CONNECTIONS);
+        try {
+            final List<CordaRPCOps> proxies = new ArrayList<>(IMPORT_CONNECTIONS);
+            for (int i = 0; i < IMPORT_CONNECTIONS; i++) {
+                final CordaRPCConnection connection = client.start(rpcUsername, rpcPassword);
+                connections.add(connection);
+                proxies.add(connection.getProxy());
+            }
+            return new BulkImporter(proxies, concurrency, batchSize).importFile(file);
+        } finally {
+            for (CordaRPCConnection connection : connections) connection.notifyServerAndClose();
+        }
+    }
+}
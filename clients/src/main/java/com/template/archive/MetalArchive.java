@@ -0,0 +1,168 @@
+package com.template.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A read-only view of a directory written by {@link MetalArchiveWriter}: the consumed MetalStates of a node, stored
+ * column by column so that reports can scan them off-node.
+ *
+ * Each column is a file of fixed-width big-endian values, one per row:
+ * <ul>
+ *     <li>{@code metal.col}: one byte, the metal's index in {@code metals.dict}</li>
+ *     <li>{@code weight.col}: a four byte int</li>
+ *     <li>{@code owner.col} and {@code issuer.col}: four byte indexes of the party names in {@code parties.dict}</li>
+ *     <li>{@code consumed.col} and {@code recorded.col}: eight byte times, in microseconds since the epoch</li>
+ * </ul>
+ * The dictionaries hold one UTF-8 name per line. {@code archive.properties} records how many rows and dictionary
+ * entries have been committed; anything past them is an append that did not finish and is ignored.
+ *
+ * The columns are memory-mapped when the archive is opened and scanned in place, without copying them onto the heap.
+ * A view does not see rows committed after it was opened. Each column file is limited to 2GB, which is over
+ * 268 million rows.
+ */
+public final class MetalArchive implements Closeable {
+
+    static final String METAL_COLUMN = "metal.col";
+    static final String WEIGHT_COLUMN = "weight.col";
+    static final String OWNER_COLUMN = "owner.col";
+    static final String ISSUER_COLUMN = "issuer.col";
+    static final String CONSUMED_COLUMN = "consumed.col";
+    static final String RECORDED_COLUMN = "recorded.col";
+    static final String METALS_DICTIONARY = "metals.dict";
+    static final String PARTIES_DICTIONARY = "parties.dict";
+    static final String PROPERTIES = "archive.properties";
+
+    // Keys of archive.properties.
+    static final String ROWS = "rows";
+    static final String METALS = "metals";
+    static final String METALS_BYTES = "metals.bytes";
+    static final String PARTIES = "parties";
+    static final String PARTIES_BYTES = "parties.bytes";
+    static final String CURSOR = "cursor";
+    static final String CURSOR_REFS = "cursor.refs";
+
+    private final int rows;
+    private final List<String> metals;
+    private final List<String> parties;
+    private final List<FileChannel> channels = new ArrayList<>();
+
+    final ByteBuffer metalColumn;
+    final IntBuffer weightColumn;
+    final IntBuffer ownerColumn;
+    final IntBuffer issuerColumn;
+    final LongBuffer consumedColumn;
+    final LongBuffer recordedColumn;
+
+    private MetalArchive(Path directory, Properties properties) throws IOException {
+        long committedRows = Long.parseLong(properties.getProperty(ROWS, "0"));
+        if (committedRows * Long.BYTES > Integer.MAX_VALUE)
+            throw new IOException("Archive has too many rows to map: " + committedRows);
+        this.rows = (int) committedRows;
+
+        this.metals = readDictionary(directory.resolve(METALS_DICTIONARY), Integer.parseInt(properties.getProperty(METALS, "0")));
+        this.parties = readDictionary(directory.resolve(PARTIES_DICTIONARY), Integer.parseInt(properties.getProperty(PARTIES, "0")));
+
+        try {
+            this.metalColumn = map(directory.resolve(METAL_COLUMN), Byte.BYTES);
+            this.weightColumn = map(directory.resolve(WEIGHT_COLUMN), Integer.BYTES).asIntBuffer();
+            this.ownerColumn = map(directory.resolve(OWNER_COLUMN), Integer.BYTES).asIntBuffer();
+            this.issuerColumn = map(directory.resolve(ISSUER_COLUMN), Integer.BYTES).asIntBuffer();
+            this.consumedColumn = map(directory.resolve(CONSUMED_COLUMN), Long.BYTES).asLongBuffer();
+            this.recordedColumn = map(directory.resolve(RECORDED_COLUMN), Long.BYTES).asLongBuffer();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /** Opens the archive in {@code directory}. An archive that has never been written to is empty. */
+    public static MetalArchive open(Path directory) throws IOException {
+        return new MetalArchive(directory, readProperties(directory));
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    /** The metal names, in dictionary order. */
+    public List<String> getMetals() {
+        return metals;
+    }
+
+    /** The owner and issuer names, in dictionary order. */
+    public List<String> getParties() {
+        return parties;
+    }
+
+    /** Starts a query over every row; narrow it with the query's filters. */
+    public MetalArchiveQuery query() {
+        return new MetalArchiveQuery(this);
+    }
+
+    String metalName(int id) {
+        return metals.get(id);
+    }
+
+    String partyName(int id) {
+        return parties.get(id);
+    }
+
+    // The column is mapped up to the committed rows only, so a torn append past them is never read.
+    private ByteBuffer map(Path column, int width) throws IOException {
+        long length = (long) rows * width;
+        if (length == 0) return ByteBuffer.allocate(0);
+
+        FileChannel channel = FileChannel.open(column, StandardOpenOption.READ);
+        channels.add(channel);
+        if (channel.size() < length)
+            throw new IOException(column + " is shorter than the " + rows + " committed rows");
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+
+    static Properties readProperties(Path directory) throws IOException {
+        Properties properties = new Properties();
+        Path file = directory.resolve(PROPERTIES);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+        }
+        return properties;
+    }
+
+    static List<String> readDictionary(Path file, int entries) throws IOException {
+        if (entries == 0) return Collections.emptyList();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.size() < entries)
+            throw new IOException(file + " has fewer than the " + entries + " committed entries");
+        return Collections.unmodifiableList(new ArrayList<>(lines.subList(0, entries)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        channels.clear();
+        if (failure != null) throw failure;
+    }
+}
@@ -0,0 +1,63 @@
+package com.template.archive;
+
+import com.template.flows.MetalQueries;
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Copies the MetalStates a node has consumed since the last export into a {@link MetalArchive}, over RPC.
+ *
+ * The vault is read in pages of consumed states ordered by consumed time, starting at the archive's cursor, so each
+ * run only reads the history added since the previous one. Every page is committed before the next is read: an
+ * interrupted export loses at most the page in flight, and the next run picks up from the last committed row.
+ */
+public class MetalArchiveExporter {
+    private static final Logger logger = LoggerFactory.getLogger(MetalArchiveExporter.class);
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final CordaRPCOps proxy;
+    private final int pageSize;
+
+    public MetalArchiveExporter(CordaRPCOps proxy, int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("Page size must be at least 1");
+        this.proxy = proxy;
+        this.pageSize = pageSize;
+    }
+
+    /** Appends the newly consumed states to the archive and returns how many were appended. */
+    public long export(MetalArchiveWriter writer) throws IOException {
+        // Pages are numbered from the cursor the export started at, not from the one each page moves it to.
+        QueryCriteria criteria = MetalQueries.consumedSince(writer.getCursor());
+        long appended = 0;
+        for (int pageNumber = 1; ; pageNumber++) {
+            Vault.Page<MetalState> page = proxy.vaultQueryBy(criteria, new PageSpecification(pageNumber, pageSize),
+                    MetalQueries.byConsumedTime(), MetalState.class);
+
+            List<StateAndRef<MetalState>> states = page.getStates();
+            List<Vault.StateMetadata> metadata = page.getStatesMetadata();
+            for (int i = 0; i < states.size(); i++) {
+                StateAndRef<MetalState> state = states.get(i);
+                Vault.StateMetadata stateMetadata = metadata.get(i);
+                if (writer.isArchived(state.getRef(), stateMetadata.getConsumedTime())) continue;
+
+                writer.append(state.getRef(), state.getState().getData(),
+                        stateMetadata.getConsumedTime(), stateMetadata.getRecordedTime());
+                appended++;
+            }
+            writer.commit();
+
+            logger.info("Archived page {}: {} consumed states so far", pageNumber, appended);
+            if (states.size() < pageSize) return appended;
+        }
+    }
+}
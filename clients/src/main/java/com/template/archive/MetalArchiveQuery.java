@@ -0,0 +1,127 @@
+package com.template.archive;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A scan over a {@link MetalArchive}, narrowed by any of its filters and ended by one of its aggregates.
+ *
+ * Filters on names are resolved to dictionary ids once, so the scan itself only compares primitives read straight
+ * from the mapped columns. A name that is not in the archive matches no rows.
+ */
+public final class MetalArchiveQuery {
+
+    // Filter value meaning "any".
+    private static final int ANY = -1;
+    // Filter value for a name the archive has never seen.
+    private static final int NONE = -2;
+
+    /** Receives the rows of {@link #forEach}. Times are in microseconds since the epoch. */
+    public interface RowVisitor {
+        void visit(String metalName, int weight, String owner, String issuer, long consumedMicros, long recordedMicros);
+    }
+
+    private final MetalArchive archive;
+    private int metal = ANY;
+    private int owner = ANY;
+    private int issuer = ANY;
+    private long consumedFrom = Long.MIN_VALUE;
+    private long consumedTo = Long.MAX_VALUE;
+
+    MetalArchiveQuery(MetalArchive archive) {
+        this.archive = archive;
+    }
+
+    public MetalArchiveQuery metal(String metalName) {
+        this.metal = idOf(archive.getMetals().indexOf(metalName));
+        return this;
+    }
+
+    public MetalArchiveQuery owner(String ownerName) {
+        this.owner = idOf(archive.getParties().indexOf(ownerName));
+        return this;
+    }
+
+    public MetalArchiveQuery issuer(String issuerName) {
+        this.issuer = idOf(archive.getParties().indexOf(issuerName));
+        return this;
+    }
+
+    /** Keeps the states consumed at or after {@code from} and before {@code to}. Either bound may be null. */
+    public MetalArchiveQuery consumedBetween(Instant from, Instant to) {
+        this.consumedFrom = from == null ? Long.MIN_VALUE : MetalArchiveWriter.micros(from);
+        this.consumedTo = to == null ? Long.MAX_VALUE : MetalArchiveWriter.micros(to);
+        return this;
+    }
+
+    //    ----------------------------------------------- Aggregates -----------------------------------------------
+
+    public long count() {
+        long count = 0;
+        for (int row = 0; row < archive.size(); row++) {
+            if (matches(row)) count++;
+        }
+        return count;
+    }
+
+    public long totalWeight() {
+        long total = 0;
+        for (int row = 0; row < archive.size(); row++) {
+            if (matches(row)) total += archive.weightColumn.get(row);
+        }
+        return total;
+    }
+
+    /** The weight that left each metal, keyed by metal name. */
+    public Map<String, Long> weightByMetal() {
+        long[] totals = new long[archive.getMetals().size()];
+        for (int row = 0; row < archive.size(); row++) {
+            if (matches(row)) totals[archive.metalColumn.get(row) & 0xFF] += archive.weightColumn.get(row);
+        }
+        return byName(totals, false);
+    }
+
+    /** The weight each party held in the matching states before they were consumed, keyed by owner name. */
+    public Map<String, Long> weightByOwner() {
+        long[] totals = new long[archive.getParties().size()];
+        for (int row = 0; row < archive.size(); row++) {
+            if (matches(row)) totals[archive.ownerColumn.get(row)] += archive.weightColumn.get(row);
+        }
+        return byName(totals, true);
+    }
+
+    public void forEach(RowVisitor visitor) {
+        for (int row = 0; row < archive.size(); row++) {
+            if (!matches(row)) continue;
+            visitor.visit(archive.metalName(archive.metalColumn.get(row) & 0xFF), archive.weightColumn.get(row),
+                    archive.partyName(archive.ownerColumn.get(row)), archive.partyName(archive.issuerColumn.get(row)),
+                    archive.consumedColumn.get(row), archive.recordedColumn.get(row));
+        }
+    }
+
+    //    ----------------------------------------------- Scanning -----------------------------------------------
+
+    private boolean matches(int row) {
+        if (metal != ANY && (archive.metalColumn.get(row) & 0xFF) != metal) return false;
+        if (owner != ANY && archive.ownerColumn.get(row) != owner) return false;
+        if (issuer != ANY && archive.issuerColumn.get(row) != issuer) return false;
+        if (consumedFrom != Long.MIN_VALUE || consumedTo != Long.MAX_VALUE) {
+            long consumed = archive.consumedColumn.get(row);
+            return consumed >= consumedFrom && consumed < consumedTo;
+        }
+        return true;
+    }
+
+    private static int idOf(int index) {
+        return index < 0 ? NONE : index;
+    }
+
+    private Map<String, Long> byName(long[] totals, boolean parties) {
+        Map<String, Long> byName = new LinkedHashMap<>();
+        for (int id = 0; id < totals.length; id++) {
+            if (totals[id] != 0) byName.put(parties ? archive.partyName(id) : archive.metalName(id), totals[id]);
+        }
+        return byName;
+    }
+}
@@ -0,0 +1,244 @@
+package com.template.archive;
+
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends consumed MetalStates to a {@link MetalArchive} directory.
+ *
+ * Rows are buffered per column and written out by {@link #commit}, which forces the columns to disk before it
+ * records the new row count, so a reader never sees a row that was only partly written. Opening a writer truncates
+ * whatever a previous writer appended without committing. The writer also keeps the export cursor: the consumed
+ * time of the last committed row and the refs of the states consumed at that time, so that the next export can
+ * start there without archiving any state twice.
+ *
+ * A writer is not thread-safe, and only one writer may have an archive open at a time.
+ */
+public final class MetalArchiveWriter implements Closeable {
+
+    // Rows buffered per column before they are written out.
+    private static final int BUFFERED_ROWS = 8192;
+
+    private final Path directory;
+    private final FileChannel metalChannel;
+    private final FileChannel weightChannel;
+    private final FileChannel ownerChannel;
+    private final FileChannel issuerChannel;
+    private final FileChannel consumedChannel;
+    private final FileChannel recordedChannel;
+    private final FileChannel metalsDictionary;
+    private final FileChannel partiesDictionary;
+
+    private final ByteBuffer metalBuffer = ByteBuffer.allocateDirect(BUFFERED_ROWS * Byte.BYTES);
+    private final ByteBuffer weightBuffer = ByteBuffer.allocateDirect(BUFFERED_ROWS * Integer.BYTES);
+    private final ByteBuffer ownerBuffer = ByteBuffer.allocateDirect(BUFFERED_ROWS * Integer.BYTES);
+    private final ByteBuffer issuerBuffer = ByteBuffer.allocateDirect(BUFFERED_ROWS * Integer.BYTES);
+    private final ByteBuffer consumedBuffer = ByteBuffer.allocateDirect(BUFFERED_ROWS * Long.BYTES);
+    private final ByteBuffer recordedBuffer = ByteBuffer.allocateDirect(BUFFERED_ROWS * Long.BYTES);
+
+    private final Map<String, Integer> metalIds = new HashMap<>();
+    private final Map<String, Integer> partyIds = new HashMap<>();
+
+    private long rows;
+    private long metalsBytes;
+    private long partiesBytes;
+    private Instant cursor;
+    private Set<StateRef> cursorRefs = new LinkedHashSet<>();
+
+    private MetalArchiveWriter(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+
+        Properties properties = MetalArchive.readProperties(directory);
+        this.rows = Long.parseLong(properties.getProperty(MetalArchive.ROWS, "0"));
+        this.metalsBytes = Long.parseLong(properties.getProperty(MetalArchive.METALS_BYTES, "0"));
+        this.partiesBytes = Long.parseLong(properties.getProperty(MetalArchive.PARTIES_BYTES, "0"));
+
+        List<String> metals = MetalArchive.readDictionary(directory.resolve(MetalArchive.METALS_DICTIONARY),
+                Integer.parseInt(properties.getProperty(MetalArchive.METALS, "0")));
+        for (String metal : metals) metalIds.put(metal, metalIds.size());
+        List<String> parties = MetalArchive.readDictionary(directory.resolve(MetalArchive.PARTIES_DICTIONARY),
+                Integer.parseInt(properties.getProperty(MetalArchive.PARTIES, "0")));
+        for (String party : parties) partyIds.put(party, partyIds.size());
+
+        String committedCursor = properties.getProperty(MetalArchive.CURSOR);
+        if (committedCursor != null) this.cursor = Instant.parse(committedCursor);
+        String committedRefs = properties.getProperty(MetalArchive.CURSOR_REFS, "");
+        for (String ref : committedRefs.split(",")) {
+            if (ref.isEmpty()) continue;
+            int separator = ref.lastIndexOf(':');
+            cursorRefs.add(new StateRef(SecureHash.parse(ref.substring(0, separator)), Integer.parseInt(ref.substring(separator + 1))));
+        }
+
+        this.metalChannel = openTruncated(MetalArchive.METAL_COLUMN, rows * Byte.BYTES);
+        this.weightChannel = openTruncated(MetalArchive.WEIGHT_COLUMN, rows * Integer.BYTES);
+        this.ownerChannel = openTruncated(MetalArchive.OWNER_COLUMN, rows * Integer.BYTES);
+        this.issuerChannel = openTruncated(MetalArchive.ISSUER_COLUMN, rows * Integer.BYTES);
+        this.consumedChannel = openTruncated(MetalArchive.CONSUMED_COLUMN, rows * Long.BYTES);
+        this.recordedChannel = openTruncated(MetalArchive.RECORDED_COLUMN, rows * Long.BYTES);
+        this.metalsDictionary = openTruncated(MetalArchive.METALS_DICTIONARY, metalsBytes);
+        this.partiesDictionary = openTruncated(MetalArchive.PARTIES_DICTIONARY, partiesBytes);
+    }
+
+    /** Opens the archive in {@code directory} for appending, creating it if needed. */
+    public static MetalArchiveWriter open(Path directory) throws IOException {
+        return new MetalArchiveWriter(directory);
+    }
+
+    /** The consumed time of the last committed row, or null if nothing has been archived yet. */
+    public Instant getCursor() {
+        return cursor;
+    }
+
+    /** Whether the state was already archived: only states consumed at the cursor itself are remembered. */
+    public boolean isArchived(StateRef ref, Instant consumedTime) {
+        return cursor != null && (consumedTime.isBefore(cursor) || (consumedTime.equals(cursor) && cursorRefs.contains(ref)));
+    }
+
+    /** Adds a row. States must be appended in order of consumed time. The row is visible to readers after {@link #commit}. */
+    public void append(StateRef ref, MetalState state, Instant consumedTime, Instant recordedTime) throws IOException {
+        if (cursor != null && consumedTime.isBefore(cursor))
+            throw new IllegalArgumentException("States must be archived in order of consumed time");
+
+        int metalId = intern(metalIds, state.getMetalName(), metalsDictionary, true);
+        metalBuffer.put((byte) metalId);
+        weightBuffer.putInt(state.getWeight());
+        ownerBuffer.putInt(intern(partyIds, state.getOwner().getName().toString(), partiesDictionary, false));
+        issuerBuffer.putInt(intern(partyIds, state.getIssuer().getName().toString(), partiesDictionary, false));
+        consumedBuffer.putLong(micros(consumedTime));
+        recordedBuffer.putLong(micros(recordedTime));
+
+        if (!consumedTime.equals(cursor)) {
+            cursor = consumedTime;
+            cursorRefs = new LinkedHashSet<>();
+        }
+        cursorRefs.add(ref);
+        rows++;
+
+        if (!metalBuffer.hasRemaining()) flush();
+    }
+
+    /** Makes every appended row durable and visible to archives opened from now on. */
+    public void commit() throws IOException {
+        flush();
+        for (FileChannel channel : channels()) {
+            channel.force(false);
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(MetalArchive.ROWS, Long.toString(rows));
+        properties.setProperty(MetalArchive.METALS, Integer.toString(metalIds.size()));
+        properties.setProperty(MetalArchive.METALS_BYTES, Long.toString(metalsBytes));
+        properties.setProperty(MetalArchive.PARTIES, Integer.toString(partyIds.size()));
+        properties.setProperty(MetalArchive.PARTIES_BYTES, Long.toString(partiesBytes));
+        if (cursor != null) {
+            properties.setProperty(MetalArchive.CURSOR, cursor.toString());
+            List<String> refs = new ArrayList<>(cursorRefs.size());
+            for (StateRef ref : cursorRefs) refs.add(ref.getTxhash() + ":" + ref.getIndex());
+            properties.setProperty(MetalArchive.CURSOR_REFS, String.join(",", refs));
+        }
+
+        // Replace the properties in one step, so a crash leaves either the old commit or the new one.
+        Path temporary = directory.resolve(MetalArchive.PROPERTIES + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            properties.store(out, "MetalArchive");
+        }
+        Files.move(temporary, directory.resolve(MetalArchive.PROPERTIES),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long size() {
+        return rows;
+    }
+
+    private int intern(Map<String, Integer> ids, String name, FileChannel dictionary, boolean metal) throws IOException {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+
+        if (name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0)
+            throw new IllegalArgumentException("Cannot archive a name with a line break: " + name);
+        if (metal && ids.size() > 0xFF)
+            throw new IllegalStateException("The archive holds at most 256 metals");
+
+        ByteBuffer line = ByteBuffer.wrap((name + "\n").getBytes(StandardCharsets.UTF_8));
+        if (metal) metalsBytes += line.remaining();
+        else partiesBytes += line.remaining();
+        while (line.hasRemaining()) dictionary.write(line);
+
+        id = ids.size();
+        ids.put(name, id);
+        return id;
+    }
+
+    private void flush() throws IOException {
+        write(metalBuffer, metalChannel);
+        write(weightBuffer, weightChannel);
+        write(ownerBuffer, ownerChannel);
+        write(issuerBuffer, issuerChannel);
+        write(consumedBuffer, consumedChannel);
+        write(recordedBuffer, recordedChannel);
+    }
+
+    private static void write(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private FileChannel openTruncated(String name, long committedLength) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(name),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < committedLength)
+            throw new IOException(name + " is shorter than its committed length " + committedLength);
+        channel.truncate(committedLength);
+        channel.position(committedLength);
+        return channel;
+    }
+
+    private List<FileChannel> channels() {
+        List<FileChannel> channels = new ArrayList<>();
+        Collections.addAll(channels, metalChannel, weightChannel, ownerChannel, issuerChannel, consumedChannel,
+                recordedChannel, metalsDictionary, partiesDictionary);
+        return channels;
+    }
+
+    static long micros(Instant instant) {
+        return TimeUnit.SECONDS.toMicros(instant.getEpochSecond()) + TimeUnit.NANOSECONDS.toMicros(instant.getNano());
+    }
+
+    /** Closes the archive without committing: rows appended since the last {@link #commit} are discarded. */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (FileChannel channel : channels()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+}
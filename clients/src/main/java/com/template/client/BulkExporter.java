@@ -0,0 +1,90 @@
+package com.template.client;
+
+import com.template.flows.MetalQueries;
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Streams the MetalStates of a node's vault to a file, one page at a time.
+ *
+ * Each state becomes a line that {@link BulkImporter} can replay as an issuance:
+ * {@code ISSUE <metal> <weight> <owner> <issuer> <state ref>}, separated by tabs. The issuer and state ref are there
+ * for reconciliation; the importer ignores them. Only one page is held in memory.
+ *
+ * Pages are ordered by recorded time and state ref, and each one starts from the recorded time the previous one ended
+ * at rather than from an offset, so a state leaving the selected status cannot shift an unread one out of the pages.
+ * While an export of unconsumed states runs, a state consumed before its page is read is left out, one consumed after
+ * is exported, and a state recorded after the current page is exported when its page is reached.
+ */
+public class BulkExporter {
+    private static final Logger logger = LoggerFactory.getLogger(BulkExporter.class);
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final CordaRPCOps proxy;
+    private final Vault.StateStatus status;
+    private final int pageSize;
+
+    public BulkExporter(CordaRPCOps proxy, Vault.StateStatus status, int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("Page size must be at least 1");
+        this.proxy = proxy;
+        this.status = status;
+        this.pageSize = pageSize;
+    }
+
+    /** Writes every matching state to {@code file}, replacing it, and returns how many were written. */
+    public long export(Path file) throws IOException {
+        long exported = 0;
+        Instant since = null;
+        // The states already exported that were recorded at exactly the time the next page starts from. That page
+        // returns them again, so it is made larger by their number.
+        Set<StateRef> exportedAtSince = new HashSet<>();
+
+        try (ChannelLineWriter writer = new ChannelLineWriter(file)) {
+            writer.writeLine("# " + String.join("\t", "ISSUE", "metal", "weight", "owner", "issuer", "stateRef"));
+            StringBuilder line = new StringBuilder();
+
+            for (int pageNumber = 1; ; pageNumber++) {
+                int requested = pageSize + exportedAtSince.size();
+                Vault.Page<MetalState> page = proxy.vaultQueryBy(MetalQueries.recordedSince(status, since),
+                        new PageSpecification(1, requested), MetalQueries.byRecordedTime(), MetalState.class);
+
+                for (int i = 0; i < page.getStates().size(); i++) {
+                    StateAndRef<MetalState> state = page.getStates().get(i);
+                    Instant recorded = page.getStatesMetadata().get(i).getRecordedTime();
+                    if (!recorded.equals(since)) {
+                        since = recorded;
+                        exportedAtSince.clear();
+                    }
+                    if (!exportedAtSince.add(state.getRef())) continue;
+
+                    MetalState metal = state.getState().getData();
+                    line.setLength(0);
+                    line.append(BulkImporter.ISSUE).append('\t')
+                            .append(metal.getMetalName()).append('\t')
+                            .append(metal.getWeight()).append('\t')
+                            .append(metal.getOwner().getName()).append('\t')
+                            .append(metal.getIssuer().getName()).append('\t')
+                            .append(state.getRef());
+                    writer.writeLine(line);
+                    exported++;
+                }
+
+                if (pageNumber % 100 == 0) logger.info("Exported {} states", exported);
+                if (page.getStates().size() < requested) return exported;
+            }
+        }
+    }
+}
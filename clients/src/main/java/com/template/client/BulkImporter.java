@@ -0,0 +1,224 @@
+package com.template.client;
+
+import com.template.flows.IssueMetalBatch;
+import com.template.flows.MetalIssuance;
+import com.template.flows.MetalTransfer;
+import com.template.flows.TransferMetalBatch;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Replays a file of issuance and transfer instructions against a node over RPC.
+ *
+ * Each line is {@code ISSUE <metal> <weight> <owner>} or {@code TRANSFER <metal> <weight> <new owner>}, separated by
+ * tabs; further fields and lines starting with {@code #} are ignored, so the output of {@link BulkExporter} can be
+ * imported as it is. Issuances run on the node as {@link IssueMetalBatch} and transfers as {@link TransferMetalBatch},
+ * up to {@code batchSize} lines per flow.
+ *
+ * The file is read as it is imported, twice: every issuance is made before the first transfer starts, as transfers
+ * usually spend issued metal. Within each pass, flows are started without waiting for earlier ones, spread over the
+ * RPC connections, until {@code concurrency} are in flight, so memory stays constant and the node always has work
+ * queued. Transfers therefore take effect in no particular order among themselves. Lines that cannot be parsed, and
+ * the lines of failed flows, are written to {@code <file>.failed}, which can be imported again once fixed.
+ */
+public class BulkImporter {
+    private static final Logger logger = LoggerFactory.getLogger(BulkImporter.class);
+
+    public static final String ISSUE = "ISSUE";
+    public static final String TRANSFER = "TRANSFER";
+    public static final int DEFAULT_CONCURRENCY = 32;
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private final List<CordaRPCOps> proxies;
+    private final int concurrency;
+    private final int batchSize;
+
+    private final AtomicInteger nextProxy = new AtomicInteger();
+    private final Map<String, Party> parties = new HashMap<>();
+    private final LongAdder imported = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public BulkImporter(List<CordaRPCOps> proxies, int concurrency, int batchSize) {
+        if (proxies.isEmpty()) throw new IllegalArgumentException("At least one RPC connection is needed");
+        if (concurrency < 1 || batchSize < 1) throw new IllegalArgumentException("Concurrency and batch size must be at least 1");
+        this.proxies = proxies;
+        this.concurrency = concurrency;
+        this.batchSize = batchSize;
+    }
+
+    /** Imports every line of {@code file} and returns the number of lines that were malformed or whose flow failed. */
+    public long importFile(Path file) throws IOException, InterruptedException {
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final long start = System.nanoTime();
+        final Path failures = Paths.get(file + ".failed");
+
+        try (ChannelLineWriter failureWriter = new ChannelLineWriter(failures)) {
+            try {
+                importLines(file, ISSUE, inFlight, failureWriter);
+                awaitInFlight(inFlight);
+                importLines(file, TRANSFER, inFlight, failureWriter);
+            } finally {
+                // Flows still in flight write their failures when they end, so the failures file stays open until then.
+                awaitInFlight(inFlight);
+            }
+        }
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        logger.info("Imported {} lines in {}s ({} lines/s), {} failed", imported.sum(), String.format("%.1f", seconds),
+                String.format("%.1f", imported.sum() / seconds), failed.sum());
+        if (failed.sum() == 0) Files.deleteIfExists(failures);
+        else logger.info("The failed lines are in {}", failures);
+        return failed.sum();
+    }
+
+    // One pass over the file, importing the lines of one kind. Lines of an unknown kind are reported by the first pass.
+    private void importLines(Path file, String kind, Semaphore inFlight, ChannelLineWriter failureWriter) throws IOException, InterruptedException {
+        final List<String> lines = new ArrayList<>(batchSize);
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String lineKind = line.substring(0, Math.max(0, line.indexOf('\t')));
+
+                if (lineKind.equals(kind)) {
+                    lines.add(line);
+                    if (lines.size() == batchSize) startBatch(kind, lines, inFlight, failureWriter);
+                } else if (!lineKind.equals(ISSUE) && !lineKind.equals(TRANSFER) && kind.equals(ISSUE)) {
+                    malformed(line, "Expected an ISSUE or TRANSFER instruction", failureWriter);
+                }
+            }
+        }
+        if (!lines.isEmpty()) startBatch(kind, lines, inFlight, failureWriter);
+    }
+
+    private void startBatch(String kind, List<String> lines, Semaphore inFlight, ChannelLineWriter failureWriter) throws IOException, InterruptedException {
+        if (kind.equals(ISSUE)) startIssues(lines, inFlight, failureWriter);
+        else startTransfers(lines, inFlight, failureWriter);
+    }
+
+    private void startIssues(List<String> lines, Semaphore inFlight, ChannelLineWriter failureWriter) throws IOException, InterruptedException {
+        final List<String> batch = new ArrayList<>(lines.size());
+        final List<MetalIssuance> issuances = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            try {
+                String[] fields = fields(line);
+                issuances.add(new MetalIssuance(fields[1], Integer.parseInt(fields[2]), party(fields[3])));
+                batch.add(line);
+            } catch (IllegalArgumentException e) {
+                malformed(line, e.getMessage(), failureWriter);
+            }
+        }
+        lines.clear();
+        if (batch.isEmpty()) return;
+
+        final CordaRPCOps proxy = next();
+        start(batch, inFlight, failureWriter, () -> proxy.startFlowDynamic(IssueMetalBatch.class, issuances, batchSize));
+    }
+
+    private void startTransfers(List<String> lines, Semaphore inFlight, ChannelLineWriter failureWriter) throws IOException, InterruptedException {
+        final List<String> batch = new ArrayList<>(lines.size());
+        final List<MetalTransfer> transfers = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            try {
+                String[] fields = fields(line);
+                transfers.add(new MetalTransfer(fields[1], Integer.parseInt(fields[2]), party(fields[3])));
+                batch.add(line);
+            } catch (IllegalArgumentException e) {
+                malformed(line, e.getMessage(), failureWriter);
+            }
+        }
+        lines.clear();
+        if (batch.isEmpty()) return;
+
+        final CordaRPCOps proxy = next();
+        start(batch, inFlight, failureWriter, () -> proxy.startFlowDynamic(TransferMetalBatch.class, transfers, batchSize));
+    }
+
+    private void start(List<String> batch, Semaphore inFlight, ChannelLineWriter failureWriter, Supplier<FlowHandle<?>> starter) throws IOException, InterruptedException {
+        inFlight.acquire();
+        final FlowHandle<?> handle;
+        try {
+            handle = starter.get();
+        } catch (RuntimeException e) {
+            try {
+                failed(batch, e, failureWriter);
+            } finally {
+                inFlight.release();
+            }
+            return;
+        }
+
+        handle.getReturnValue().toCompletableFuture().whenComplete((result, error) -> {
+            try {
+                if (error == null) imported.add(batch.size());
+                else failed(batch, error, failureWriter);
+            } catch (IOException e) {
+                logger.error("Could not write {} failed lines to the failures file", batch.size(), e);
+            } finally {
+                handle.close();
+                inFlight.release();
+            }
+        });
+    }
+
+    private void awaitInFlight(Semaphore inFlight) {
+        inFlight.acquireUninterruptibly(concurrency);
+        inFlight.release(concurrency);
+    }
+
+    private void malformed(String line, String reason, ChannelLineWriter failureWriter) throws IOException {
+        logger.warn("Skipping malformed line: {}: {}", reason, line);
+        failed.increment();
+        synchronized (failureWriter) {
+            failureWriter.writeLine(line);
+        }
+    }
+
+    private void failed(List<String> batch, Throwable error, ChannelLineWriter failureWriter) throws IOException {
+        final Throwable cause = error.getCause() != null ? error.getCause() : error;
+        logger.warn("{} lines failed: {}", batch.size(), cause.toString());
+        failed.add(batch.size());
+        synchronized (failureWriter) {
+            for (String line : batch) failureWriter.writeLine(line);
+        }
+    }
+
+    private static String[] fields(String line) {
+        String[] fields = line.split("\t");
+        if (fields.length < 4) throw new IllegalArgumentException("Expected <kind> <metal> <weight> <party> but got: " + line);
+        return fields;
+    }
+
+    // Names are resolved once each: an import usually names a handful of parties millions of times.
+    private Party party(String name) {
+        return parties.computeIfAbsent(name, key -> {
+            Party party = proxies.get(0).wellKnownPartyFromX500Name(CordaX500Name.parse(key));
+            if (party == null) throw new IllegalArgumentException("Unknown party: " + key);
+            return party;
+        });
+    }
+
+    private CordaRPCOps next() {
+        return proxies.get(Math.floorMod(nextProxy.getAndIncrement(), proxies.size()));
+    }
+}
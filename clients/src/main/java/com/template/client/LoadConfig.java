@@ -0,0 +1,49 @@
+package com.template.client;
+
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.utilities.NetworkHostAndPort;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings for a {@link LoadGenerator} run, parsed from {@code key=value} command line arguments.
+ *
+ * Issues are started on the node given to the client (normally the Mint) in favour of {@code owner}. Transfers are
+ * started on {@code traderNode} and move metal to {@code receiver}. The defaults match the {@code deployNodes} network.
+ */
+public class LoadConfig {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    public LoadConfig(String[] args) {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            values.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+    }
+
+    /** Flows started per second, across all connections. */
+    public double getRate() {return Double.parseDouble(get("rate", "20"));}
+    /** The most flows allowed in flight at once. */
+    public int getConcurrency() {return Integer.parseInt(get("concurrency", "16"));}
+    /** RPC connections opened to each node. */
+    public int getConnections() {return Integer.parseInt(get("connections", "4"));}
+    public int getDurationSeconds() {return Integer.parseInt(get("duration", "60"));}
+    /** Seconds run before recording starts, so the nodes reach a steady state first. */
+    public int getWarmupSeconds() {return Integer.parseInt(get("warmup", "10"));}
+    /** The fraction of started flows that are transfers; the rest are issues. */
+    public double getTransferRatio() {return Double.parseDouble(get("transfers", "0.5"));}
+    /** Bars issued to the owner before the run so that the first transfers can be funded. */
+    public int getPrefund() {return Integer.parseInt(get("prefund", "100"));}
+    public String getMetalName() {return get("metal", "Gold");}
+    public int getWeight() {return Integer.parseInt(get("weight", "1"));}
+    public NetworkHostAndPort getTraderNode() {return NetworkHostAndPort.parse(get("traderNode", "localhost:10009"));}
+    public CordaX500Name getOwner() {return CordaX500Name.parse(get("owner", "O=TraderA,L=New York,C=US"));}
+    public CordaX500Name getReceiver() {return CordaX500Name.parse(get("receiver", "O=TraderB,L=New York,C=US"));}
+
+    private String get(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+}
@@ -0,0 +1,213 @@
+package com.template.client;
+
+import com.template.flows.IssueMetal;
+import com.template.flows.IssueMetalBatch;
+import com.template.flows.MetalIssuance;
+import com.template.flows.TransferMetal;
+import com.template.metrics.LatencyHistogram;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Drives {@link IssueMetal} and {@link TransferMetal} over RPC at a fixed target rate and reports their latency.
+ *
+ * Flows are started open-loop: each one has a scheduled start time derived from the target rate, and the generator
+ * only falls behind that schedule when the concurrency limit is reached. Latency is measured from the
+ * {@code startFlowDynamic} call until {@link FlowHandle#getReturnValue()} completes. It is also measured from the
+ * scheduled start, which shows the queueing that a closed-loop client would hide.
+ */
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final NetworkHostAndPort issuerAddress;
+    private final String rpcUsername;
+    private final String rpcPassword;
+    private final LoadConfig config;
+
+    private final List<CordaRPCConnection> connections = new ArrayList<>();
+    private final List<CordaRPCOps> issuerProxies = new ArrayList<>();
+    private final List<CordaRPCOps> traderProxies = new ArrayList<>();
+    private final AtomicInteger nextProxy = new AtomicInteger();
+
+    public LoadGenerator(NetworkHostAndPort issuerAddress, String rpcUsername, String rpcPassword, LoadConfig config) {
+        this.issuerAddress = issuerAddress;
+        this.rpcUsername = rpcUsername;
+        this.rpcPassword = rpcPassword;
+        this.config = config;
+    }
+
+    public void run() throws InterruptedException, ExecutionException {
+        try {
+            open(issuerAddress, issuerProxies);
+            if (config.getTransferRatio() > 0) open(config.getTraderNode(), traderProxies);
+
+            final Party owner = resolve(issuerProxies.get(0), config.getOwner());
+            final Party receiver = traderProxies.isEmpty() ? null : resolve(traderProxies.get(0), config.getReceiver());
+            prefund(owner);
+
+            logger.info("Warming up for {}s", config.getWarmupSeconds());
+            drive(config.getWarmupSeconds(), owner, receiver);
+            logger.info("Measuring for {}s at {} flows/s with at most {} in flight",
+                    config.getDurationSeconds(), config.getRate(), config.getConcurrency());
+            final Workload measured = drive(config.getDurationSeconds(), owner, receiver);
+
+            measured.issues.report("IssueMetal", measured.elapsedNanos);
+            measured.transfers.report("TransferMetal", measured.elapsedNanos);
+        } finally {
+            for (CordaRPCConnection connection : connections) connection.notifyServerAndClose();
+        }
+    }
+
+    private void open(NetworkHostAndPort address, List<CordaRPCOps> proxies) {
+        final CordaRPCClient client = new CordaRPCClient(address);
+        for (int i = 0; i < config.getConnections(); i++) {
+            final CordaRPCConnection connection = client.start(rpcUsername, rpcPassword);
+            connections.add(connection);
+            proxies.add(connection.getProxy());
+        }
+    }
+
+    private Party resolve(CordaRPCOps proxy, CordaX500Name name) {
+        final Party party = proxy.wellKnownPartyFromX500Name(name);
+        if (party == null) throw new IllegalArgumentException("Unknown party: " + name);
+        return party;
+    }
+
+    private void prefund(Party owner) throws InterruptedException, ExecutionException {
+        if (config.getPrefund() <= 0) return;
+        if (traderProxies.isEmpty()) {
+            logger.info("Not issuing the {} prefund bars, as a run without transfers would never spend them",
+                    config.getPrefund());
+            return;
+        }
+
+        final List<MetalIssuance> issuances = new ArrayList<>(config.getPrefund());
+        for (int i = 0; i < config.getPrefund(); i++) {
+            issuances.add(new MetalIssuance(config.getMetalName(), config.getWeight(), owner));
+        }
+        logger.info("Issuing {} bars to {} before the run", issuances.size(), owner);
+        try (FlowHandle<?> handle = issuerProxies.get(0).startFlowDynamic(IssueMetalBatch.class, issuances)) {
+            handle.getReturnValue().get();
+        }
+    }
+
+    private Workload drive(int seconds, Party owner, Party receiver) throws InterruptedException {
+        final Workload workload = new Workload();
+        final int concurrency = config.getConcurrency();
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final Random random = new Random();
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / config.getRate());
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+
+        for (long scheduled = start; scheduled < end; scheduled += interval) {
+            for (long wait = scheduled - System.nanoTime(); wait > 0; wait = scheduled - System.nanoTime()) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            inFlight.acquire();
+
+            if (receiver != null && random.nextDouble() < config.getTransferRatio()) {
+                final CordaRPCOps proxy = next(traderProxies);
+                start(workload.transfers, scheduled, inFlight, () -> proxy.startFlowDynamic(TransferMetal.class,
+                        config.getMetalName(), config.getWeight(), receiver));
+            } else {
+                final CordaRPCOps proxy = next(issuerProxies);
+                start(workload.issues, scheduled, inFlight, () -> proxy.startFlowDynamic(IssueMetal.class,
+                        config.getMetalName(), config.getWeight(), owner));
+            }
+        }
+
+        // Wait for the stragglers so that they are counted in this window.
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+        workload.elapsedNanos = System.nanoTime() - start;
+        return workload;
+    }
+
+    private void start(FlowStats stats, long scheduled, Semaphore inFlight, Supplier<FlowHandle<?>> starter) {
+        final long started = System.nanoTime();
+        final FlowHandle<?> handle;
+        try {
+            handle = starter.get();
+        } catch (RuntimeException e) {
+            stats.failed(e);
+            inFlight.release();
+            return;
+        }
+
+        handle.getReturnValue().toCompletableFuture().whenComplete((result, error) -> {
+            final long completed = System.nanoTime();
+            if (error == null) stats.completed(scheduled, started, completed);
+            else stats.failed(error);
+            handle.close();
+            inFlight.release();
+        });
+    }
+
+    private CordaRPCOps next(List<CordaRPCOps> proxies) {
+        return proxies.get(Math.floorMod(nextProxy.getAndIncrement(), proxies.size()));
+    }
+
+    private static class Workload {
+        final FlowStats issues = new FlowStats();
+        final FlowStats transfers = new FlowStats();
+        long elapsedNanos;
+    }
+
+    private static class FlowStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram sinceScheduled = new LatencyHistogram();
+        final LongAdder failures = new LongAdder();
+        final Map<String, LongAdder> failureReasons = new ConcurrentHashMap<>();
+
+        void completed(long scheduled, long started, long completed) {
+            latency.record(TimeUnit.NANOSECONDS.toMicros(completed - started));
+            sinceScheduled.record(TimeUnit.NANOSECONDS.toMicros(completed - scheduled));
+        }
+
+        void failed(Throwable error) {
+            final Throwable cause = error.getCause() != null ? error.getCause() : error;
+            failures.increment();
+            failureReasons.computeIfAbsent(cause.getClass().getSimpleName(), reason -> new LongAdder()).increment();
+        }
+
+        void report(String flowName, long elapsedNanos) {
+            final long completed = latency.getCount();
+            if (completed == 0 && failures.sum() == 0) return;
+
+            final double seconds = elapsedNanos / 1e9;
+            logger.info("{}: {} completed, {} failed, {} flows/s", flowName, completed, failures.sum(),
+                    String.format("%.1f", completed / seconds));
+            logger.info("{} latency (ms): p50={} p99={} p99.9={} max={} mean={}", flowName,
+                    millis(latency.valueAtPercentile(50)), millis(latency.valueAtPercentile(99)),
+                    millis(latency.valueAtPercentile(99.9)), millis(latency.getMax()), millis((long) latency.getMean()));
+            logger.info("{} latency from scheduled start (ms): p50={} p99={} p99.9={}", flowName,
+                    millis(sinceScheduled.valueAtPercentile(50)), millis(sinceScheduled.valueAtPercentile(99)),
+                    millis(sinceScheduled.valueAtPercentile(99.9)));
+            failureReasons.forEach((reason, count) -> logger.info("{} failures: {} x {}", flowName, count, reason));
+        }
+
+        private static String millis(long micros) {
+            return String.format("%.2f", micros / 1000.0);
+        }
+    }
+}
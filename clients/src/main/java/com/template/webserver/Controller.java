@@ -1,27 +1,161 @@
 package com.template.webserver;
 
-import net.corda.core.messaging.CordaRPCOps;
+import com.template.flows.GetCheckpointMetrics;
+import com.template.flows.GetFlowMetrics;
+import com.template.flows.GetHoldings;
+import com.template.flows.IssueMetal;
+import com.template.flows.SearchVault;
+import com.template.flows.TransferMetal;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Define your API endpoints here.
+ *
+ * The metal endpoints return a {@link DeferredResult} so that no servlet thread waits on a running flow; see
+ * {@link FlowStarter}. Issues and transfers sent with an {@code Idempotency-Key} header are run at most once per key;
+ * a retry answers with the transaction of the first request, or 409 while that request is still running. Party names
+ * are resolved through the {@link IdentityCache}, so a request thread only asks the node about a name it has not seen.
  */
 @RestController
 @RequestMapping("/") // The paths for HTTP requests are relative to this base path.
 public class Controller {
-private final CordaRPCOps proxy;
-private final static Logger logger = LoggerFactory.getLogger(Controller.class);
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
 
-public Controller(NodeRPCConnection rpc) {
-        this.proxy = rpc.proxy;
-        }
+    private final NodeRPCConnection rpc;
+    private final IdentityCache identities;
+    private final FlowStarter flows;
+    private final MetalEventStream metalEvents;
+    private final MetalReadModel readModel;
+    private final static Logger logger = LoggerFactory.getLogger(Controller.class);
 
-@GetMapping(value = "/templateendpoint", produces = "text/plain")
-private String templateendpoint() {
+    public Controller(NodeRPCConnection rpc, IdentityCache identities, FlowStarter flows, MetalEventStream metalEvents,
+                      MetalReadModel readModel) {
+        this.rpc = rpc;
+        this.identities = identities;
+        this.flows = flows;
+        this.metalEvents = metalEvents;
+        this.readModel = readModel;
+    }
+
+    @GetMapping(value = "/templateendpoint", produces = "text/plain")
+    private String templateendpoint() {
         return "Define an endpoint here.";
+    }
+
+    @PostMapping(value = "/metal/issue", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> issueMetal(@RequestParam String metalName,
+                                                        @RequestParam int weight,
+                                                        @RequestParam String owner,
+                                                        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String requestId) {
+        final Party ownerParty = party(owner);
+        return flows.start(() -> requestId == null
+                        ? rpc.proxy().startFlowDynamic(IssueMetal.class, metalName, weight, ownerParty)
+                        : rpc.proxy().startFlowDynamic(IssueMetal.class, metalName, weight, ownerParty, requestId),
+                tx -> Collections.singletonMap("txId", tx.getId().toString()));
+    }
+
+    @PostMapping(value = "/metal/transfer", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> transferMetal(@RequestParam String metalName,
+                                                           @RequestParam int weight,
+                                                           @RequestParam String newOwner,
+                                                           @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String requestId) {
+        final Party newOwnerParty = party(newOwner);
+        return flows.start(() -> requestId == null
+                        ? rpc.proxy().startFlowDynamic(TransferMetal.class, metalName, weight, newOwnerParty)
+                        : rpc.proxy().startFlowDynamic(TransferMetal.class, metalName, weight, newOwnerParty, requestId),
+                tx -> Collections.singletonMap("txId", tx.getId().toString()));
+    }
+
+    @GetMapping(value = "/metal/states", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> metalStates(@RequestParam(defaultValue = "UNCONSUMED") Vault.StateStatus status,
+                                                         @RequestParam(required = false) String metalName,
+                                                         @RequestParam(required = false) String owner,
+                                                         @RequestParam(defaultValue = "1") int page,
+                                                         @RequestParam(defaultValue = "" + SearchVault.DEFAULT_PAGE_SIZE) int pageSize) {
+        final Party ownerParty = owner == null ? null : party(owner);
+        return flows.start(() -> rpc.proxy().startFlowDynamic(SearchVault.class, status, metalName, ownerParty, page, pageSize),
+                MetalStatePageView::new);
+    }
+
+    // Summed by the node's database, one row per metal and owner.
+    @GetMapping(value = "/metal/totals", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> metalTotals(@RequestParam(required = false) String metalName,
+                                                         @RequestParam(required = false) String owner) {
+        final Party ownerParty = owner == null ? null : party(owner);
+        return flows.start(() -> rpc.proxy().startFlowDynamic(GetHoldings.class, metalName, ownerParty), holdings -> holdings);
+    }
+
+    // Per-step flow latency and vault query timings collected by the node.
+    @GetMapping(value = "/metrics", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> metrics() {
+        return flows.start(() -> rpc.proxy().startFlowDynamic(GetFlowMetrics.class), snapshots -> snapshots);
+    }
+
+    // Checkpoint sizes and suspension counts of the flow runs the node sampled.
+    @GetMapping(value = "/metrics/checkpoints", produces = MediaType.APPLICATION_JSON_VALUE)
+    public DeferredResult<ResponseEntity<?>> checkpointMetrics() {
+        return flows.start(() -> rpc.proxy().startFlowDynamic(GetCheckpointMetrics.class), snapshots -> snapshots);
+    }
+
+    @GetMapping(value = "/metal/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter metalStream() {
+        return metalEvents.subscribe();
+    }
+
+    // Answered from the in-memory read model, without an RPC call.
+    @GetMapping(value = "/metal/holdings", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Map<String, Long>> metalHoldings(@RequestParam(defaultValue = "owner") String by,
+                                                        @RequestParam(required = false) String key) {
+        final MetalReadModel.GroupBy groupBy;
+        try {
+            groupBy = MetalReadModel.GroupBy.valueOf(by.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot group holdings by " + by, e);
+        }
+        return readModel().holdings(groupBy, key);
+    }
+
+    // Answered from the in-memory read model, without an RPC call.
+    @GetMapping(value = "/metal/history", produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<MetalStateView> metalHistory(@RequestParam(defaultValue = "100") int limit) {
+        return readModel().recentlyConsumed(limit).stream().map(MetalStateView::new).collect(Collectors.toList());
+    }
+
+    private MetalReadModel readModel() {
+        if (!readModel.isReady()) throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "The vault is still being loaded");
+        return readModel;
+    }
+
+    private Party party(String name) {
+        final CordaX500Name x500Name;
+        try {
+            x500Name = CordaX500Name.parse(name);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid X.500 name: " + name, e);
         }
-        }
\ No newline at end of file
+        final Party party = identities.wellKnownParty(x500Name);
+        if (party == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown party: " + name);
+        return party;
+    }
+}
@@ -0,0 +1,123 @@
+package com.template.webserver;
+
+import com.template.flows.DuplicateRequestException;
+import net.corda.core.CordaRuntimeException;
+import net.corda.core.flows.FlowException;
+import net.corda.core.messaging.FlowHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Starts flows over RPC without holding a servlet thread while they run.
+ *
+ * The returned {@link DeferredResult} is completed from the flow's {@code CordaFuture}, so the request thread goes
+ * back to the pool as soon as the flow has been started. At most {@code config.flow.max-in-flight} flows started from
+ * here may be running at once; beyond that requests are rejected with 429. A flow that outlives
+ * {@code config.flow.timeout-seconds} answers 504 but keeps its in-flight permit until it actually finishes.
+ */
+@Component
+public class FlowStarter {
+    private final static Logger logger = LoggerFactory.getLogger(FlowStarter.class);
+
+    @Value("${config.flow.timeout-seconds:60}")
+    private long timeoutSeconds;
+    @Value("${config.flow.max-in-flight:1000}")
+    private int maxInFlight;
+
+    private Semaphore inFlight;
+
+    @PostConstruct
+    public void initialiseFlowStarter() {
+        inFlight = new Semaphore(maxInFlight);
+    }
+
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public <T> DeferredResult<ResponseEntity<?>> start(Supplier<FlowHandle<T>> starter, Function<? super T, ?> view) {
+        if (!inFlight.tryAcquire()) {
+            return completed(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header("Retry-After", "1")
+                    .body(error("Too many flows in flight, limit is " + maxInFlight)));
+        }
+
+        final FlowHandle<T> handle;
+        try {
+            handle = starter.get();
+        } catch (RuntimeException e) {
+            inFlight.release();
+            return completed(failure(e));
+        }
+
+        final DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(TimeUnit.SECONDS.toMillis(timeoutSeconds),
+                ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                        .body(error("Flow " + handle.getId().getUuid() + " is still running")));
+
+        handle.getReturnValue().toCompletableFuture().whenComplete((value, error) -> {
+            try {
+                inFlight.release();
+                handle.close();
+            } finally {
+                result.setResult(error == null ? success(view, value) : failure(error));
+            }
+        });
+        return result;
+    }
+
+    private static DeferredResult<ResponseEntity<?>> completed(ResponseEntity<?> response) {
+        final DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+        result.setResult(response);
+        return result;
+    }
+
+    private static <T> ResponseEntity<?> success(Function<? super T, ?> view, T value) {
+        try {
+            return ResponseEntity.ok(view.apply(value));
+        } catch (RuntimeException e) {
+            // The flow has succeeded, so the request must still be answered rather than left to time out.
+            logger.error("Could not build the response to a completed flow", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error(String.valueOf(e.getMessage())));
+        }
+    }
+
+    private static ResponseEntity<?> failure(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof DuplicateRequestException) {
+            final Map<String, String> body = new LinkedHashMap<>();
+            body.put("error", cause.getMessage());
+            body.put("flowId", String.valueOf(((DuplicateRequestException) cause).getRunningFlowId()));
+            return ResponseEntity.status(HttpStatus.CONFLICT).header("Retry-After", "1").body(body);
+        }
+        // Flow exceptions are the flow rejecting the request; anything else is a problem with the node or RPC.
+        if (cause instanceof FlowException || cause instanceof IllegalArgumentException) {
+            return ResponseEntity.badRequest().body(error(cause.getMessage()));
+        }
+        logger.error("Flow failed", cause);
+        final HttpStatus status = cause instanceof CordaRuntimeException ? HttpStatus.BAD_GATEWAY : HttpStatus.INTERNAL_SERVER_ERROR;
+        return ResponseEntity.status(status).body(error(String.valueOf(cause.getMessage())));
+    }
+
+    private static Object error(String message) {
+        return Collections.singletonMap("error", message);
+    }
+}
@@ -0,0 +1,42 @@
+package com.template.webserver;
+
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves X.500 names to the node's well-known parties, so that a request thread only makes the blocking RPC call
+ * the first time it sees a name.
+ *
+ * Names the node does not know are not cached, so a party that joins the network later is found. The cache is
+ * dropped when the RPC pool reconnects, as the node may have restarted with a different network map.
+ */
+@Component
+public class IdentityCache {
+
+    private final NodeRPCConnection rpc;
+    private final ConcurrentMap<CordaX500Name, Party> parties = new ConcurrentHashMap<>();
+
+    public IdentityCache(NodeRPCConnection rpc) {
+        this.rpc = rpc;
+    }
+
+    @PostConstruct
+    public void initialiseIdentityCache() {
+        rpc.addReconnectListener(parties::clear);
+    }
+
+    /** Returns the well-known party with this name, or null if the node does not know it. */
+    public Party wellKnownParty(CordaX500Name name) {
+        Party party = parties.get(name);
+        if (party == null) {
+            party = rpc.proxy().wellKnownPartyFromX500Name(name);
+            if (party != null) parties.put(name, party);
+        }
+        return party;
+    }
+}
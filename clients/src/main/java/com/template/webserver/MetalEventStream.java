@@ -0,0 +1,150 @@
+package com.template.webserver;
+
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.services.Vault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Fans the {@link MetalVaultFeed} out to Server-Sent Events subscribers.
+ *
+ * Each subscriber gets a {@code snapshot} event followed by an {@code update} event per vault update. Events are
+ * queued per subscriber in a buffer of {@code config.stream.buffer-size} and written by a small pool of sender
+ * threads, so the shared RPC observable never waits on a client. When a buffer is full the
+ * {@code config.stream.overflow} policy applies: {@code DISCONNECT} closes that subscriber's stream, while
+ * {@code DROP_OLDEST} discards its oldest events and later sends an {@code overflow} event with the number dropped.
+ */
+@Component
+public class MetalEventStream {
+    private final static Logger logger = LoggerFactory.getLogger(MetalEventStream.class);
+
+    public enum OverflowPolicy {DISCONNECT, DROP_OLDEST}
+
+    @Value("${config.stream.buffer-size:1024}")
+    private int bufferSize;
+    @Value("${config.stream.overflow:DISCONNECT}")
+    private OverflowPolicy overflowPolicy;
+    @Value("${config.stream.sender-threads:4}")
+    private int senderThreads;
+    // How long a stream stays open; 0 keeps it open until the client goes away.
+    @Value("${config.stream.timeout-ms:0}")
+    private long timeoutMs;
+
+    private final MetalVaultFeed feed;
+    private ExecutorService senders;
+
+    public MetalEventStream(MetalVaultFeed feed) {
+        this.feed = feed;
+    }
+
+    @PostConstruct
+    public void initialiseMetalEventStream() {
+        senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "metal-event-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        senders.shutdownNow();
+    }
+
+    public SseEmitter subscribe() {
+        final SseEmitter emitter = new SseEmitter(timeoutMs);
+        subscribe(emitter);
+        return emitter;
+    }
+
+    // Streams the feed to the given emitter and returns the listener that fills its buffer.
+    MetalFeedListener subscribe(SseEmitter emitter) {
+        final Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        feed.addListener(subscriber);
+        return subscriber;
+    }
+
+    private class Subscriber implements MetalFeedListener {
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void onSnapshot(List<StateAndRef<MetalState>> states) {
+            offer(SseEmitter.event().name("snapshot")
+                    .data(states.stream().map(MetalStateView::new).collect(Collectors.toList())));
+        }
+
+        @Override
+        public void onUpdate(Vault.Update<MetalState> update) {
+            offer(SseEmitter.event().name("update").data(new MetalUpdateView(update)));
+        }
+
+        private void offer(SseEmitter.SseEventBuilder event) {
+            if (closed) return;
+            while (!buffer.offer(event)) {
+                if (overflowPolicy == OverflowPolicy.DISCONNECT) {
+                    logger.info("Closing a metal event stream whose buffer of {} events is full", bufferSize);
+                    close();
+                    emitter.complete();
+                    return;
+                }
+                if (buffer.poll() != null) dropped.incrementAndGet();
+            }
+            scheduleSend();
+        }
+
+        private void scheduleSend() {
+            if (!closed && sending.compareAndSet(false, true)) senders.execute(this::send);
+        }
+
+        private void send() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while (!closed) {
+                    final long lost = dropped.getAndSet(0);
+                    if (lost > 0) emitter.send(SseEmitter.event().name("overflow").data(Collections.singletonMap("dropped", lost)));
+                    if ((event = buffer.poll()) == null) break;
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client has gone away.
+                close();
+            } finally {
+                sending.set(false);
+            }
+            if (!buffer.isEmpty()) scheduleSend();
+        }
+
+        private void close() {
+            closed = true;
+            feed.removeListener(this);
+            buffer.clear();
+        }
+    }
+}
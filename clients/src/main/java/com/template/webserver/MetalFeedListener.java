@@ -0,0 +1,21 @@
+package com.template.webserver;
+
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.services.Vault;
+
+import java.util.List;
+
+/**
+ * Receives the unconsumed {@link MetalState}s from a {@link MetalVaultFeed}, then every update after them.
+ *
+ * Callbacks run on the RPC observation thread while the feed holds its lock, so implementations must hand the work
+ * off rather than block.
+ */
+public interface MetalFeedListener {
+
+    /** Called first and again after every resync; replaces anything received before. */
+    void onSnapshot(List<StateAndRef<MetalState>> states);
+
+    void onUpdate(Vault.Update<MetalState> update);
+}
@@ -0,0 +1,154 @@
+package com.template.webserver;
+
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.node.services.Vault;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory projection of the node's {@link MetalState}s, so that read endpoints do not make an RPC call.
+ *
+ * It is built from the {@link MetalVaultFeed} snapshot and kept current by its updates; when the feed resyncs after a
+ * reconnect the projection is rebuilt from the new snapshot. Holdings are kept as running totals of weight per owner,
+ * metal and issuer. States consumed since the last snapshot are kept as recent history, up to
+ * {@code config.read-model.history-size} entries with the oldest evicted first.
+ */
+@Component
+public class MetalReadModel implements MetalFeedListener {
+
+    public enum GroupBy {OWNER, METAL, ISSUER}
+
+    @Value("${config.read-model.history-size:10000}")
+    private int historySize;
+
+    private final MetalVaultFeed feed;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<StateRef, StateAndRef<MetalState>> unconsumed = new HashMap<>();
+    private final LinkedHashMap<StateRef, StateAndRef<MetalState>> consumed = new LinkedHashMap<>();
+    // Total weight, keyed first by the grouping party or metal and then by metal, or by owner when grouping by metal.
+    private final Map<GroupBy, Map<String, Map<String, Long>>> holdings = new HashMap<>();
+    private boolean ready;
+
+    public MetalReadModel(MetalVaultFeed feed) {
+        this.feed = feed;
+        for (GroupBy groupBy : GroupBy.values()) holdings.put(groupBy, new TreeMap<>());
+    }
+
+    @PostConstruct
+    public void initialiseMetalReadModel() {
+        feed.addListener(this);
+    }
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return ready;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the total weight held, grouped by {@code groupBy} and then by metal (or by owner when grouping by
+     * metal). A non-null {@code key} restricts the result to that one group.
+     */
+    public Map<String, Map<String, Long>> holdings(GroupBy groupBy, String key) {
+        lock.readLock().lock();
+        try {
+            final Map<String, Map<String, Long>> groups = holdings.get(groupBy);
+            final Map<String, Map<String, Long>> copy = new TreeMap<>();
+            for (Map.Entry<String, Map<String, Long>> group : groups.entrySet()) {
+                if (key == null || key.equals(group.getKey())) copy.put(group.getKey(), new TreeMap<>(group.getValue()));
+            }
+            return copy;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Returns up to {@code limit} of the most recently consumed states, newest first. */
+    public List<StateAndRef<MetalState>> recentlyConsumed(int limit) {
+        lock.readLock().lock();
+        try {
+            final List<StateAndRef<MetalState>> recent = new ArrayList<>(consumed.values());
+            Collections.reverse(recent);
+            return recent.subList(0, Math.min(limit, recent.size()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onSnapshot(List<StateAndRef<MetalState>> states) {
+        lock.writeLock().lock();
+        try {
+            unconsumed.clear();
+            consumed.clear();
+            for (Map<String, Map<String, Long>> groups : holdings.values()) groups.clear();
+            for (StateAndRef<MetalState> state : states) add(state);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onUpdate(Vault.Update<MetalState> update) {
+        lock.writeLock().lock();
+        try {
+            for (StateAndRef<MetalState> state : update.getConsumed()) remove(state);
+            for (StateAndRef<MetalState> state : update.getProduced()) add(state);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(StateAndRef<MetalState> state) {
+        if (unconsumed.put(state.getRef(), state) == null) adjust(state.getState().getData(), 1);
+    }
+
+    private void remove(StateAndRef<MetalState> state) {
+        final StateAndRef<MetalState> removed = unconsumed.remove(state.getRef());
+        if (removed == null) return;
+        adjust(removed.getState().getData(), -1);
+
+        consumed.put(removed.getRef(), removed);
+        final Iterator<StateRef> oldest = consumed.keySet().iterator();
+        while (consumed.size() > historySize) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    private void adjust(MetalState state, int sign) {
+        final String owner = state.getOwner().getName().toString();
+        final String issuer = state.getIssuer().getName().toString();
+        final long weight = (long) sign * state.getWeight();
+        adjust(GroupBy.OWNER, owner, state.getMetalName(), weight);
+        adjust(GroupBy.METAL, state.getMetalName(), owner, weight);
+        adjust(GroupBy.ISSUER, issuer, state.getMetalName(), weight);
+    }
+
+    private void adjust(GroupBy groupBy, String key, String subKey, long weight) {
+        final Map<String, Map<String, Long>> groups = holdings.get(groupBy);
+        final Map<String, Long> group = groups.computeIfAbsent(key, k -> new TreeMap<>());
+        final long total = group.getOrDefault(subKey, 0L) + weight;
+        if (total == 0) group.remove(subKey);
+        else group.put(subKey, total);
+        if (group.isEmpty()) groups.remove(key);
+    }
+}
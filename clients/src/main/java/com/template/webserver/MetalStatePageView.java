@@ -0,0 +1,32 @@
+package com.template.webserver;
+
+import com.template.flows.MetalStatePage;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A JSON-friendly view of a {@link MetalStatePage}.
+ */
+public class MetalStatePageView {
+
+    private final List<MetalStateView> states;
+    private final long totalStatesAvailable;
+    private final int pageNumber;
+    private final int pageSize;
+    private final Integer nextPageNumber;
+
+    public MetalStatePageView(MetalStatePage page) {
+        this.states = page.getStates().stream().map(MetalStateView::new).collect(Collectors.toList());
+        this.totalStatesAvailable = page.getTotalStatesAvailable();
+        this.pageNumber = page.getPageNumber();
+        this.pageSize = page.getPageSize();
+        this.nextPageNumber = page.hasNextPage() ? page.nextPageNumber() : null;
+    }
+
+    public List<MetalStateView> getStates() {return states;}
+    public long getTotalStatesAvailable() {return totalStatesAvailable;}
+    public int getPageNumber() {return pageNumber;}
+    public int getPageSize() {return pageSize;}
+    public Integer getNextPageNumber() {return nextPageNumber;}
+}
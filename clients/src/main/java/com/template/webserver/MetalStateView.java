@@ -0,0 +1,31 @@
+package com.template.webserver;
+
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+
+/**
+ * A JSON-friendly view of a {@link MetalState} and the reference it was recorded under.
+ */
+public class MetalStateView {
+
+    private final String metalName;
+    private final int weight;
+    private final String issuer;
+    private final String owner;
+    private final String stateRef;
+
+    public MetalStateView(StateAndRef<MetalState> stateAndRef) {
+        final MetalState state = stateAndRef.getState().getData();
+        this.metalName = state.getMetalName();
+        this.weight = state.getWeight();
+        this.issuer = state.getIssuer().getName().toString();
+        this.owner = state.getOwner().getName().toString();
+        this.stateRef = stateAndRef.getRef().toString();
+    }
+
+    public String getMetalName() {return metalName;}
+    public int getWeight() {return weight;}
+    public String getIssuer() {return issuer;}
+    public String getOwner() {return owner;}
+    public String getStateRef() {return stateRef;}
+}
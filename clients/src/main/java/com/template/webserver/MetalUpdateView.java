@@ -0,0 +1,24 @@
+package com.template.webserver;
+
+import com.template.states.MetalState;
+import net.corda.core.node.services.Vault;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A JSON-friendly view of a vault update to {@link MetalState}s.
+ */
+public class MetalUpdateView {
+
+    private final List<MetalStateView> consumed;
+    private final List<MetalStateView> produced;
+
+    public MetalUpdateView(Vault.Update<MetalState> update) {
+        this.consumed = update.getConsumed().stream().map(MetalStateView::new).collect(Collectors.toList());
+        this.produced = update.getProduced().stream().map(MetalStateView::new).collect(Collectors.toList());
+    }
+
+    public List<MetalStateView> getConsumed() {return consumed;}
+    public List<MetalStateView> getProduced() {return produced;}
+}
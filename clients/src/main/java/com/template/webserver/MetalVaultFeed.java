@@ -0,0 +1,182 @@
+package com.template.webserver;
+
+import com.template.flows.MetalQueries;
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import rx.Subscription;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the webserver's single {@code vaultTrackBy} subscription for {@link MetalState}s and shares it with any number
+ * of {@link MetalFeedListener}s.
+ *
+ * The snapshot is read in pages of unconsumed states ordered by recorded time and state ref. Each page starts from the
+ * recorded time the previous one ended at rather than from an offset, so a state consumed during the read cannot shift
+ * a later one out of the pages. States recorded or consumed during the read arrive as updates, which are buffered and
+ * applied on top. After an RPC reconnect, or if the observable fails, the snapshot is read again and every listener
+ * is sent the new one.
+ */
+@Component
+public class MetalVaultFeed {
+    private final static Logger logger = LoggerFactory.getLogger(MetalVaultFeed.class);
+
+    // The page size used to read the snapshot.
+    @Value("${config.feed.page-size:1000}")
+    private int pageSize;
+    // The delay before retrying a snapshot that could not be read.
+    @Value("${config.feed.retry-interval-ms:5000}")
+    private long retryIntervalMs;
+
+    private final NodeRPCConnection rpc;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metal-vault-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    private final Object lock = new Object();
+    private final List<MetalFeedListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<StateRef, StateAndRef<MetalState>> unconsumed = new LinkedHashMap<>();
+    // Updates received while a snapshot is being read, or null once it has been read.
+    private List<Vault.Update<MetalState>> pending;
+    private Subscription subscription;
+
+    public MetalVaultFeed(NodeRPCConnection rpc) {
+        this.rpc = rpc;
+    }
+
+    @PostConstruct
+    public void initialiseMetalVaultFeed() {
+        rpc.addReconnectListener(() -> scheduleRefresh(0));
+        scheduleRefresh(0);
+    }
+
+    @PreDestroy
+    public void close() {
+        refresher.shutdownNow();
+        synchronized (lock) {
+            if (subscription != null) subscription.unsubscribe();
+        }
+    }
+
+    /**
+     * Sends the listener the current snapshot, unless one is being read, and then every update until it is removed.
+     */
+    public void addListener(MetalFeedListener listener) {
+        synchronized (lock) {
+            if (pending == null && subscription != null) listener.onSnapshot(new ArrayList<>(unconsumed.values()));
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(MetalFeedListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void scheduleRefresh(long delayMs) {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            refresher.schedule(this::refresh, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refresh() {
+        refreshScheduled.set(false);
+        try {
+            final CordaRPCOps proxy = rpc.proxy();
+            synchronized (lock) {
+                if (subscription != null) subscription.unsubscribe();
+                pending = new ArrayList<>();
+                // Only the update observable is used; the snapshot is read in pages below.
+                final DataFeed<Vault.Page<MetalState>, Vault.Update<MetalState>> feed = proxy.vaultTrackBy(
+                        new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED),
+                        new PageSpecification(1, 1), MetalQueries.byRecordedTime(), MetalState.class);
+                subscription = feed.getUpdates().subscribe(this::onUpdate, this::onError);
+            }
+
+            final List<StateAndRef<MetalState>> snapshot = readSnapshot(proxy);
+
+            synchronized (lock) {
+                unconsumed.clear();
+                for (StateAndRef<MetalState> state : snapshot) unconsumed.put(state.getRef(), state);
+                for (Vault.Update<MetalState> update : pending) apply(update);
+                pending = null;
+                final List<StateAndRef<MetalState>> states = new ArrayList<>(unconsumed.values());
+                for (MetalFeedListener listener : listeners) listener.onSnapshot(states);
+            }
+            logger.info("Metal vault feed holds {} unconsumed states", snapshot.size());
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the metal vault snapshot, retrying in {}ms", retryIntervalMs, e);
+            scheduleRefresh(retryIntervalMs);
+        }
+    }
+
+    private List<StateAndRef<MetalState>> readSnapshot(CordaRPCOps proxy) {
+        final Map<StateRef, StateAndRef<MetalState>> states = new LinkedHashMap<>();
+        Instant since = null;
+        // The states already read that were recorded at exactly the time the next page starts from. That page returns
+        // them again, so it is made larger by their number; only a transaction with more outputs than a page grows it.
+        final Set<StateRef> readAtSince = new HashSet<>();
+        while (true) {
+            final int requested = pageSize + readAtSince.size();
+            final Vault.Page<MetalState> page = proxy.vaultQueryBy(MetalQueries.recordedSince(Vault.StateStatus.UNCONSUMED, since),
+                    new PageSpecification(1, requested), MetalQueries.byRecordedTime(), MetalState.class);
+            for (int i = 0; i < page.getStates().size(); i++) {
+                final StateAndRef<MetalState> state = page.getStates().get(i);
+                final Instant recorded = page.getStatesMetadata().get(i).getRecordedTime();
+                if (!recorded.equals(since)) {
+                    since = recorded;
+                    readAtSince.clear();
+                }
+                readAtSince.add(state.getRef());
+                states.put(state.getRef(), state);
+            }
+            if (page.getStates().size() < requested) return new ArrayList<>(states.values());
+        }
+    }
+
+    private void onUpdate(Vault.Update<MetalState> update) {
+        synchronized (lock) {
+            if (pending != null) {
+                pending.add(update);
+                return;
+            }
+            apply(update);
+            for (MetalFeedListener listener : listeners) listener.onUpdate(update);
+        }
+    }
+
+    private void onError(Throwable error) {
+        logger.warn("Metal vault updates failed, resubscribing", error);
+        scheduleRefresh(retryIntervalMs);
+    }
+
+    private void apply(Vault.Update<MetalState> update) {
+        for (StateAndRef<MetalState> consumed : update.getConsumed()) unconsumed.remove(consumed.getRef());
+        for (StateAndRef<MetalState> produced : update.getProduced()) unconsumed.put(produced.getRef(), produced);
+    }
+}
@@ -1,22 +1,43 @@
 package com.template.webserver;
 
 import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCClientConfiguration;
 import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.client.rpc.GracefulReconnect;
 import net.corda.core.messaging.CordaRPCOps;
 import net.corda.core.utilities.NetworkHostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Wraps an RPC connection to a Corda node.
+ * Wraps a pool of RPC connections to a Corda node.
  *
- * The RPC connection is configured using command line arguments.
+ * The RPC connections are configured using command line arguments. Each connection reconnects by itself with an
+ * increasing delay when the node goes away, so the webserver survives node restarts. Callers should ask for
+ * {@link #proxy()} per request rather than holding on to one; it hands out a connected proxy by round-robin or by
+ * fewest RPC calls in progress.
  */
 @Component
 public class NodeRPCConnection implements AutoCloseable {
+    private final static Logger logger = LoggerFactory.getLogger(NodeRPCConnection.class);
+
+    public enum Selection {ROUND_ROBIN, LEAST_BUSY}
+
+    // Still a positional parameter of CordaRPCClientConfiguration, but no longer used by the client.
+    private static final int UNUSED_CACHE_CONCURRENCY_LEVEL = 1;
+
     // The host of the node we are connecting to.
     @Value("${config.rpc.host}")
     private String host;
@@ -29,20 +50,129 @@ public class NodeRPCConnection implements AutoCloseable {
     // The password for logging into the RPC client.
     @Value("${config.rpc.port}")
     private int rpcPort;
+    // The number of RPC connections to open to the node.
+    @Value("${config.rpc.pool-size:4}")
+    private int poolSize;
+    // How a connection is picked for each request.
+    @Value("${config.rpc.selection:ROUND_ROBIN}")
+    private Selection selection;
+    // The first delay between reconnection attempts, which then grows by the multiplier up to the maximum.
+    @Value("${config.rpc.reconnect.initial-interval-ms:1000}")
+    private long reconnectInitialIntervalMs;
+    @Value("${config.rpc.reconnect.multiplier:1.5}")
+    private double reconnectMultiplier;
+    @Value("${config.rpc.reconnect.max-interval-ms:60000}")
+    private long reconnectMaxIntervalMs;
 
-    private CordaRPCConnection rpcConnection;
-    CordaRPCOps proxy;
+    private final List<PooledConnection> pool = new ArrayList<>();
+    private final List<Runnable> reconnectListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    // The connections currently lost, so that a node restart that drops them all is reported once.
+    private final AtomicInteger disconnected = new AtomicInteger();
 
     @PostConstruct
     public void initialiseNodeRPCConnection() {
         NetworkHostAndPort rpcAddress = new NetworkHostAndPort(host, rpcPort);
-        CordaRPCClient rpcClient = new CordaRPCClient(rpcAddress);
-        rpcConnection = rpcClient.start(username, password);
-        proxy = rpcConnection.getProxy();
+        CordaRPCClient rpcClient = new CordaRPCClient(rpcAddress, clientConfiguration());
+        for (int i = 0; i < poolSize; i++) {
+            pool.add(new PooledConnection(i, rpcClient));
+        }
+        logger.info("Opened {} RPC connections to {}", poolSize, rpcAddress);
+    }
+
+    /**
+     * Returns a proxy on a connected member of the pool, or on any member if the node is currently unreachable.
+     */
+    public CordaRPCOps proxy() {
+        final int start = Math.floorMod(next.getAndIncrement(), pool.size());
+        PooledConnection chosen = null;
+        for (int i = 0; i < pool.size(); i++) {
+            final PooledConnection candidate = pool.get((start + i) % pool.size());
+            if (!candidate.connected) continue;
+            if (selection == Selection.ROUND_ROBIN) return candidate.proxy;
+            if (chosen == null || candidate.busy.get() < chosen.busy.get()) chosen = candidate;
+        }
+        return (chosen != null ? chosen : pool.get(start)).proxy;
+    }
+
+    /**
+     * Registers a callback run once every connection lost from the pool has reconnected to the node, e.g. once per node
+     * restart. Observables obtained before the disconnect are resubscribed by the RPC client, but their snapshots are
+     * not delivered again.
+     */
+    public void addReconnectListener(Runnable listener) {
+        reconnectListeners.add(listener);
     }
 
     @PreDestroy
     public void close() {
-        rpcConnection.notifyServerAndClose();
+        for (PooledConnection connection : pool) {
+            connection.rpcConnection.notifyServerAndClose();
+        }
+    }
+
+    private CordaRPCClientConfiguration clientConfiguration() {
+        final CordaRPCClientConfiguration defaults = CordaRPCClientConfiguration.DEFAULT;
+        // The parameters after the multiplier keep their defaults.
+        return new CordaRPCClientConfiguration(
+                Duration.ofMillis(reconnectMaxIntervalMs),
+                defaults.getMinimumServerProtocolVersion(),
+                defaults.getTrackRpcCallSites(),
+                defaults.getReapInterval(),
+                defaults.getObservationExecutorPoolSize(),
+                UNUSED_CACHE_CONCURRENCY_LEVEL,
+                Duration.ofMillis(reconnectInitialIntervalMs),
+                reconnectMultiplier);
+    }
+
+    private void reconnected() {
+        logger.info("All {} RPC connections re-established", pool.size());
+        for (Runnable listener : reconnectListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                logger.error("Reconnect listener failed", e);
+            }
+        }
+    }
+
+    private class PooledConnection {
+        private final int index;
+        private final CordaRPCConnection rpcConnection;
+        private final CordaRPCOps proxy;
+        private final AtomicInteger busy = new AtomicInteger();
+        private volatile boolean connected = true;
+
+        PooledConnection(int index, CordaRPCClient rpcClient) {
+            this.index = index;
+            this.rpcConnection = rpcClient.start(username, password, new GracefulReconnect(this::onDisconnect, this::onReconnect));
+            final CordaRPCOps target = rpcConnection.getProxy();
+            this.proxy = (CordaRPCOps) Proxy.newProxyInstance(CordaRPCOps.class.getClassLoader(),
+                    new Class<?>[]{CordaRPCOps.class},
+                    (self, method, args) -> {
+                        busy.incrementAndGet();
+                        try {
+                            return method.invoke(target, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        } finally {
+                            busy.decrementAndGet();
+                        }
+                    });
+        }
+
+        private synchronized void onDisconnect() {
+            if (!connected) return;
+            connected = false;
+            disconnected.incrementAndGet();
+            logger.warn("RPC connection {} lost, reconnecting", index);
+        }
+
+        private synchronized void onReconnect() {
+            if (connected) return;
+            connected = true;
+            logger.info("RPC connection {} re-established", index);
+            if (disconnected.decrementAndGet() == 0) reconnected();
+        }
     }
-}
\ No newline at end of file
+}
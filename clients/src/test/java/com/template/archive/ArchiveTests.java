@@ -0,0 +1,197 @@
+package com.template.archive;
+
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArchiveTests {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Party mint = party("O=Mint,L=London,C=GB");
+    private final Party traderA = party("O=TraderA,L=New York,C=US");
+    private final Party traderB = party("O=TraderB,L=New York,C=US");
+
+    private final Instant t1 = Instant.parse("2020-01-01T10:00:00.000001Z");
+    private final Instant t2 = Instant.parse("2020-01-01T11:00:00Z");
+    private final Instant t3 = Instant.parse("2020-01-01T12:00:00Z");
+
+    private Path directory;
+
+    @Before
+    public void setup() throws Exception {
+        directory = folder.newFolder("archive").toPath();
+    }
+
+    @Test
+    public void committedRowsReadBackAfterReopening() throws Exception {
+        try (MetalArchiveWriter writer = MetalArchiveWriter.open(directory)) {
+            writer.append(ref(), new MetalState("Gold", 10, mint, traderA), t1, t1);
+            writer.append(ref(), new MetalState("Silver", 20, mint, traderB), t2, t2);
+            writer.append(ref(), new MetalState("Gold", 30, mint, traderB), t3, t3);
+            writer.commit();
+        }
+
+        try (MetalArchive archive = MetalArchive.open(directory)) {
+            assertEquals(3, archive.size());
+            assertEquals(Arrays.asList("Gold", "Silver"), archive.getMetals());
+            assertEquals(Arrays.asList(traderA.getName().toString(), mint.getName().toString(), traderB.getName().toString()),
+                    archive.getParties());
+
+            List<String> rows = new ArrayList<>();
+            archive.query().forEach((metalName, weight, owner, issuer, consumedMicros, recordedMicros) ->
+                    rows.add(metalName + " " + weight + " " + owner + " " + issuer + " " + consumedMicros));
+            assertEquals(Arrays.asList(
+                    "Gold 10 " + traderA.getName() + " " + mint.getName() + " " + MetalArchiveWriter.micros(t1),
+                    "Silver 20 " + traderB.getName() + " " + mint.getName() + " " + MetalArchiveWriter.micros(t2),
+                    "Gold 30 " + traderB.getName() + " " + mint.getName() + " " + MetalArchiveWriter.micros(t3)), rows);
+        }
+    }
+
+    @Test
+    public void rowsThatWereNotCommittedAreNeverRead() throws Exception {
+        try (MetalArchiveWriter writer = MetalArchiveWriter.open(directory)) {
+            writer.append(ref(), new MetalState("Gold", 10, mint, traderA), t1, t1);
+            writer.commit();
+            writer.append(ref(), new MetalState("Silver", 20, mint, traderB), t2, t2);
+        }
+
+        try (MetalArchive archive = MetalArchive.open(directory)) {
+            assertEquals(1, archive.size());
+            assertEquals(10, archive.query().totalWeight());
+        }
+    }
+
+    @Test
+    public void aTornLastRecordIsTruncatedWhenTheWriterReopens() throws Exception {
+        try (MetalArchiveWriter writer = MetalArchiveWriter.open(directory)) {
+            writer.append(ref(), new MetalState("Gold", 10, mint, traderA), t1, t1);
+            writer.commit();
+        }
+        // A writer that crashed halfway through its next row.
+        Files.write(directory.resolve(MetalArchive.WEIGHT_COLUMN), new byte[]{0, 0}, StandardOpenOption.APPEND);
+        Files.write(directory.resolve(MetalArchive.PARTIES_DICTIONARY), "O=Torn".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (MetalArchive archive = MetalArchive.open(directory)) {
+            assertEquals(1, archive.size());
+            assertEquals(2, archive.getParties().size());
+        }
+
+        try (MetalArchiveWriter writer = MetalArchiveWriter.open(directory)) {
+            assertEquals(Integer.BYTES, Files.size(directory.resolve(MetalArchive.WEIGHT_COLUMN)));
+            writer.append(ref(), new MetalState("Gold", 20, traderA, traderB), t2, t2);
+            writer.commit();
+        }
+
+        try (MetalArchive archive = MetalArchive.open(directory)) {
+            assertEquals(2, archive.size());
+            assertEquals(30, archive.query().totalWeight());
+            assertEquals(Arrays.asList(traderA.getName().toString(), mint.getName().toString(), traderB.getName().toString()),
+                    archive.getParties());
+        }
+    }
+
+    @Test
+    public void theCursorResumesAtTheLastCommittedConsumedTime() throws Exception {
+        StateRef first = ref();
+        StateRef second = ref();
+        StateRef third = ref();
+        try (MetalArchiveWriter writer = MetalArchiveWriter.open(directory)) {
+            assertEquals(null, writer.getCursor());
+            writer.append(first, new MetalState("Gold", 10, mint, traderA), t1, t1);
+            writer.append(second, new MetalState("Gold", 20, mint, traderA), t2, t2);
+            writer.append(third, new MetalState("Gold", 30, mint, traderA), t2, t2);
+            writer.commit();
+        }
+
+        try (MetalArchiveWriter writer = MetalArchiveWriter.open(directory)) {
+            assertEquals(t2, writer.getCursor());
+            assertEquals(3, writer.size());
+            assertTrue(writer.isArchived(first, t1));
+            assertTrue(writer.isArchived(second, t2));
+            assertTrue(writer.isArchived(third, t2));
+            // Another state consumed at the cursor, or anything after it, still has to be archived.
+            assertFalse(writer.isArchived(ref(), t2));
+            assertFalse(writer.isArchived(ref(), t3));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void statesConsumedBeforeTheCursorCannotBeAppended() throws Exception {
+        try (MetalArchiveWriter writer = MetalArchiveWriter.open(directory)) {
+            writer.append(ref(), new MetalState("Gold", 10, mint, traderA), t2, t2);
+            writer.append(ref(), new MetalState("Gold", 10, mint, traderA), t1, t1);
+        }
+    }
+
+    @Test
+    public void queriesFilterByMetalPartiesAndConsumedTime() throws Exception {
+        try (MetalArchiveWriter writer = MetalArchiveWriter.open(directory)) {
+            writer.append(ref(), new MetalState("Gold", 10, mint, traderA), t1, t1);
+            writer.append(ref(), new MetalState("Silver", 20, mint, traderB), t2, t2);
+            writer.append(ref(), new MetalState("Gold", 30, traderA, traderB), t3, t3);
+            writer.commit();
+        }
+
+        try (MetalArchive archive = MetalArchive.open(directory)) {
+            assertEquals(3, archive.query().count());
+            assertEquals(2, archive.query().metal("Gold").count());
+            assertEquals(40, archive.query().metal("Gold").totalWeight());
+            assertEquals(50, archive.query().owner(traderB.getName().toString()).totalWeight());
+            assertEquals(30, archive.query().issuer(traderA.getName().toString()).totalWeight());
+            assertEquals(20, archive.query().metal("Silver").owner(traderB.getName().toString()).totalWeight());
+
+            // From is inclusive and to exclusive.
+            assertEquals(1, archive.query().consumedBetween(t2, t3).count());
+            assertEquals(2, archive.query().consumedBetween(null, t3).count());
+            assertEquals(2, archive.query().consumedBetween(t2, null).count());
+
+            // Names the archive has never seen match nothing.
+            assertEquals(0, archive.query().metal("Platinum").count());
+            assertEquals(0, archive.query().owner("O=Nobody,L=London,C=GB").count());
+
+            assertEquals(40L, (long) archive.query().weightByMetal().get("Gold"));
+            assertEquals(20L, (long) archive.query().weightByMetal().get("Silver"));
+            assertEquals(10L, (long) archive.query().weightByOwner().get(traderA.getName().toString()));
+            assertFalse(archive.query().metal("Silver").weightByOwner().containsKey(traderA.getName().toString()));
+        }
+    }
+
+    @Test
+    public void anArchiveThatWasNeverWrittenIsEmpty() throws Exception {
+        try (MetalArchive archive = MetalArchive.open(directory)) {
+            assertEquals(0, archive.size());
+            assertEquals(0, archive.query().count());
+            assertTrue(archive.query().weightByMetal().isEmpty());
+        }
+    }
+
+    private static Party party(String name) {
+        return new Party(CordaX500Name.parse(name), Crypto.generateKeyPair(Crypto.EDDSA_ED25519_SHA512).getPublic());
+    }
+
+    private static StateRef ref() {
+        return new StateRef(SecureHash.randomSHA256(), 0);
+    }
+}
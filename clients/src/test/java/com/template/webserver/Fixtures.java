@@ -0,0 +1,44 @@
+package com.template.webserver;
+
+import com.template.contracts.MetalContract;
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+
+import java.lang.reflect.Field;
+
+/**
+ * Builds the webserver's components and the states they handle without Spring or a node.
+ */
+final class Fixtures {
+
+    static final Party NOTARY = party("O=Notary,L=London,C=GB");
+
+    private Fixtures() {}
+
+    /** Sets a field that Spring would fill from {@code @Value}. */
+    static void inject(Object bean, String field, Object value) {
+        try {
+            Field target = bean.getClass().getDeclaredField(field);
+            target.setAccessible(true);
+            target.set(bean, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(bean.getClass().getSimpleName() + " has no field " + field, e);
+        }
+    }
+
+    static Party party(String name) {
+        return new Party(CordaX500Name.parse(name), Crypto.generateKeyPair(Crypto.EDDSA_ED25519_SHA512).getPublic());
+    }
+
+    static StateAndRef<MetalState> metal(String metalName, int weight, Party issuer, Party owner) {
+        return new StateAndRef<>(
+                new TransactionState<>(new MetalState(metalName, weight, issuer, owner), MetalContract.CID, NOTARY),
+                new StateRef(SecureHash.randomSHA256(), 0));
+    }
+}
@@ -0,0 +1,155 @@
+package com.template.webserver;
+
+import kotlin.jvm.functions.Function1;
+import net.corda.core.CordaRuntimeException;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.StateMachineRunId;
+import net.corda.core.messaging.FlowHandle;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlowStarterTests {
+
+    private final FlowStarter starter = new FlowStarter();
+
+    @Before
+    public void setup() {
+        Fixtures.inject(starter, "timeoutSeconds", 60L);
+        Fixtures.inject(starter, "maxInFlight", 1);
+        starter.initialiseFlowStarter();
+    }
+
+    @Test
+    public void aFlowThatCompletesAnswersWithItsView() {
+        TestFuture<Integer> returnValue = new TestFuture<>();
+        DeferredResult<ResponseEntity<?>> result = starter.start(() -> handle(returnValue), value -> "weight " + value);
+        assertFalse(result.hasResult());
+
+        returnValue.complete(5);
+
+        assertEquals(HttpStatus.OK, response(result).getStatusCode());
+        assertEquals("weight 5", response(result).getBody());
+        assertEquals(0, starter.getInFlight());
+    }
+
+    @Test
+    public void requestsBeyondTheInFlightLimitAre429UntilAFlowFinishes() {
+        TestFuture<Integer> first = new TestFuture<>();
+        starter.start(() -> handle(first), value -> value);
+
+        DeferredResult<ResponseEntity<?>> rejected = starter.start(() -> handle(new TestFuture<Integer>()), value -> value);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, response(rejected).getStatusCode());
+        assertEquals("1", response(rejected).getHeaders().getFirst("Retry-After"));
+
+        first.complete(1);
+
+        DeferredResult<ResponseEntity<?>> accepted = starter.start(() -> handle(new TestFuture<Integer>()), value -> value);
+        assertFalse(accepted.hasResult());
+        assertEquals(1, starter.getInFlight());
+    }
+
+    @Test
+    public void aFlowThatOutlivesTheTimeoutIs504AndKeepsItsPermitUntilItFinishes() throws Exception {
+        TestFuture<Integer> returnValue = new TestFuture<>();
+        FlowHandle<Integer> handle = handle(returnValue);
+        DeferredResult<ResponseEntity<?>> result = starter.start(() -> handle, value -> value);
+
+        timeOut(result);
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response(result).getStatusCode());
+        assertTrue(error(result).contains(handle.getId().getUuid().toString()));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+                response(starter.start(() -> handle(new TestFuture<Integer>()), value -> value)).getStatusCode());
+
+        // The late result is dropped, but the permit comes back.
+        returnValue.complete(1);
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, response(result).getStatusCode());
+        assertEquals(0, starter.getInFlight());
+    }
+
+    @Test
+    public void aFlowThatRejectsTheRequestIs400AndANodeFailureIs502() {
+        TestFuture<Integer> rejected = new TestFuture<>();
+        DeferredResult<ResponseEntity<?>> badRequest = starter.start(() -> handle(rejected), value -> value);
+        rejected.completeExceptionally(new FlowException("Not enough Gold"));
+        assertEquals(HttpStatus.BAD_REQUEST, response(badRequest).getStatusCode());
+        assertEquals("Not enough Gold", error(badRequest));
+
+        TestFuture<Integer> broken = new TestFuture<>();
+        DeferredResult<ResponseEntity<?>> badGateway = starter.start(() -> handle(broken), value -> value);
+        broken.completeExceptionally(new CordaRuntimeException("Connection lost"));
+        assertEquals(HttpStatus.BAD_GATEWAY, response(badGateway).getStatusCode());
+    }
+
+    @Test
+    public void aViewThatFailsIs500RatherThanNoAnswer() {
+        TestFuture<Integer> returnValue = new TestFuture<>();
+        DeferredResult<ResponseEntity<?>> result = starter.start(() -> handle(returnValue), value -> {
+            throw new IllegalStateException("No view of " + value);
+        });
+
+        returnValue.complete(5);
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response(result).getStatusCode());
+        assertEquals("No view of 5", error(result));
+        assertEquals(0, starter.getInFlight());
+    }
+
+    @Test
+    public void aFlowThatCannotBeStartedGivesBackItsPermit() {
+        DeferredResult<ResponseEntity<?>> result = starter.start(() -> {
+            throw new IllegalArgumentException("Unknown party");
+        }, value -> value);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response(result).getStatusCode());
+        assertEquals(0, starter.getInFlight());
+    }
+
+    private static ResponseEntity<?> response(DeferredResult<ResponseEntity<?>> result) {
+        assertTrue("The request has not been answered", result.hasResult());
+        return (ResponseEntity<?>) result.getResult();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String error(DeferredResult<ResponseEntity<?>> result) {
+        return ((Map<String, String>) response(result).getBody()).get("error");
+    }
+
+    // What the servlet container does once an async request has been open for longer than its timeout.
+    private static void timeOut(DeferredResult<ResponseEntity<?>> result) throws Exception {
+        Method getInterceptor = DeferredResult.class.getDeclaredMethod("getInterceptor");
+        getInterceptor.setAccessible(true);
+        ((DeferredResultProcessingInterceptor) getInterceptor.invoke(result)).handleTimeout(null, result);
+    }
+
+    private static <T> FlowHandle<T> handle(CordaFuture<T> returnValue) {
+        StateMachineRunId id = new StateMachineRunId(UUID.randomUUID());
+        return new FlowHandle<T>() {
+            @Override public StateMachineRunId getId() {return id;}
+            @Override public CordaFuture<T> getReturnValue() {return returnValue;}
+            @Override public void close() {}
+        };
+    }
+
+    // A flow's return value that the test completes itself.
+    private static class TestFuture<V> extends CompletableFuture<V> implements CordaFuture<V> {
+        @Override
+        public <W> void then(Function1<? super CordaFuture<V>, ? extends W> callback) {
+            whenComplete((value, error) -> callback.invoke(this));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.template.webserver;
+
+import com.template.states.MetalState;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetalEventStreamTests {
+
+    private final Party mint = Fixtures.party("O=Mint,L=London,C=GB");
+    private final Party trader = Fixtures.party("O=TraderA,L=New York,C=US");
+
+    private final MetalEventStream stream = new MetalEventStream(new MetalVaultFeed(null));
+
+    @After
+    public void tearDown() {
+        stream.close();
+    }
+
+    @Test
+    public void dropOldestDiscardsTheOldestEventsAndThenReportsHowManyWereDropped() throws Exception {
+        start(MetalEventStream.OverflowPolicy.DROP_OLDEST, 2);
+        BlockedEmitter emitter = new BlockedEmitter();
+        MetalFeedListener listener = stream.subscribe(emitter);
+
+        // The first event is taken by the sender, which the client then holds up.
+        listener.onUpdate(update(1));
+        emitter.awaitFirstSend();
+        for (int weight = 2; weight <= 5; weight++) listener.onUpdate(update(weight));
+
+        emitter.release();
+        assertEquals(Arrays.asList("update 1", "overflow 2", "update 4", "update 5"), emitter.awaitEvents(4));
+        assertEquals(0, emitter.completions);
+    }
+
+    @Test
+    public void disconnectClosesTheStreamOfASubscriberWhoseBufferIsFull() throws Exception {
+        start(MetalEventStream.OverflowPolicy.DISCONNECT, 1);
+        BlockedEmitter emitter = new BlockedEmitter();
+        MetalFeedListener listener = stream.subscribe(emitter);
+
+        listener.onUpdate(update(1));
+        emitter.awaitFirstSend();
+        listener.onUpdate(update(2));
+        listener.onUpdate(update(3));
+        assertEquals(1, emitter.completions);
+
+        // Nothing more is queued or sent once the stream is closed.
+        listener.onUpdate(update(4));
+        emitter.release();
+        assertEquals(Collections.singletonList("update 1"), emitter.awaitEvents(1));
+        Thread.sleep(100);
+        assertEquals(1, emitter.events.size());
+    }
+
+    @Test
+    public void aSubscriberThatKeepsUpGetsEveryEventInOrder() throws Exception {
+        start(MetalEventStream.OverflowPolicy.DISCONNECT, 4);
+        BlockedEmitter emitter = new BlockedEmitter();
+        emitter.release();
+        MetalFeedListener listener = stream.subscribe(emitter);
+
+        listener.onSnapshot(Collections.singletonList(Fixtures.metal("Gold", 10, mint, trader)));
+        listener.onUpdate(update(3));
+
+        assertEquals(Arrays.asList("snapshot 1", "update 3"), emitter.awaitEvents(2));
+    }
+
+    private void start(MetalEventStream.OverflowPolicy policy, int bufferSize) {
+        Fixtures.inject(stream, "overflowPolicy", policy);
+        Fixtures.inject(stream, "bufferSize", bufferSize);
+        Fixtures.inject(stream, "senderThreads", 1);
+        stream.initialiseMetalEventStream();
+    }
+
+    private Vault.Update<MetalState> update(int weight) {
+        return new Vault.Update<>(Collections.emptySet(),
+                Collections.singleton(Fixtures.metal("Gold", weight, mint, trader)));
+    }
+
+    // An emitter whose client does not read anything until released, and which records what it was sent.
+    private static class BlockedEmitter extends SseEmitter {
+        private final CountDownLatch firstSend = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        private volatile int completions;
+
+        @Override
+        public void send(SseEventBuilder event) throws IOException {
+            firstSend.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            events.add(describe(event));
+        }
+
+        @Override
+        public synchronized void complete() {
+            completions++;
+        }
+
+        void awaitFirstSend() throws InterruptedException {
+            assertTrue("Nothing was sent", firstSend.await(5, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        List<String> awaitEvents(int count) throws InterruptedException {
+            for (int i = 0; i < 500 && events.size() < count; i++) Thread.sleep(10);
+            synchronized (events) {
+                return new ArrayList<>(events);
+            }
+        }
+    }
+
+    // Names an event by its type and a number from its data: the first weight produced, the states in a snapshot
+    // or the events dropped.
+    private static String describe(SseEmitter.SseEventBuilder event) {
+        String name = null;
+        Object number = null;
+        for (ResponseBodyEmitter.DataWithMediaType part : event.build()) {
+            Object data = part.getData();
+            if (data instanceof String && ((String) data).startsWith("event:")) {
+                name = ((String) data).substring("event:".length()).split("\n")[0];
+            } else if (data instanceof MetalUpdateView) {
+                number = ((MetalUpdateView) data).getProduced().get(0).getWeight();
+            } else if (data instanceof List) {
+                number = ((List<?>) data).size();
+            } else if (data instanceof Map) {
+                number = ((Map<?, ?>) data).get("dropped");
+            }
+        }
+        return name + " " + number;
+    }
+}
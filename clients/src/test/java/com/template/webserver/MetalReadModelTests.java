@@ -0,0 +1,115 @@
+package com.template.webserver;
+
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetalReadModelTests {
+
+    private final Party mint = Fixtures.party("O=Mint,L=London,C=GB");
+    private final Party traderA = Fixtures.party("O=TraderA,L=New York,C=US");
+    private final Party traderB = Fixtures.party("O=TraderB,L=New York,C=US");
+
+    private final MetalReadModel model = new MetalReadModel(new MetalVaultFeed(null));
+
+    @Before
+    public void setup() {
+        Fixtures.inject(model, "historySize", 2);
+    }
+
+    @Test
+    public void holdingsAreTheTotalsOfTheSnapshotByEachGrouping() {
+        assertFalse(model.isReady());
+        model.onSnapshot(Arrays.asList(
+                Fixtures.metal("Gold", 10, mint, traderA),
+                Fixtures.metal("Gold", 5, mint, traderA),
+                Fixtures.metal("Silver", 20, mint, traderB)));
+
+        assertTrue(model.isReady());
+        assertEquals(15L, weight(MetalReadModel.GroupBy.OWNER, name(traderA), "Gold"));
+        assertEquals(20L, weight(MetalReadModel.GroupBy.OWNER, name(traderB), "Silver"));
+        assertEquals(15L, weight(MetalReadModel.GroupBy.METAL, "Gold", name(traderA)));
+        assertEquals(15L, weight(MetalReadModel.GroupBy.ISSUER, name(mint), "Gold"));
+        assertEquals(20L, weight(MetalReadModel.GroupBy.ISSUER, name(mint), "Silver"));
+
+        // A key restricts the result to one group.
+        assertEquals(Collections.singleton(name(traderB)), model.holdings(MetalReadModel.GroupBy.OWNER, name(traderB)).keySet());
+    }
+
+    @Test
+    public void updatesMoveWeightAndDropGroupsThatReachZero() {
+        StateAndRef<MetalState> gold = Fixtures.metal("Gold", 10, mint, traderA);
+        model.onSnapshot(Collections.singletonList(gold));
+
+        StateAndRef<MetalState> change = Fixtures.metal("Gold", 6, mint, traderA);
+        StateAndRef<MetalState> moved = Fixtures.metal("Gold", 4, mint, traderB);
+        model.onUpdate(update(Collections.singletonList(gold), Arrays.asList(change, moved)));
+
+        assertEquals(6L, weight(MetalReadModel.GroupBy.OWNER, name(traderA), "Gold"));
+        assertEquals(4L, weight(MetalReadModel.GroupBy.OWNER, name(traderB), "Gold"));
+        assertEquals(10L, weight(MetalReadModel.GroupBy.ISSUER, name(mint), "Gold"));
+
+        model.onUpdate(update(Collections.singletonList(change), Collections.emptyList()));
+        assertFalse(model.holdings(MetalReadModel.GroupBy.OWNER, null).containsKey(name(traderA)));
+        assertFalse(model.holdings(MetalReadModel.GroupBy.METAL, null).get("Gold").containsKey(name(traderA)));
+    }
+
+    @Test
+    public void statesSeenTwiceOrConsumedUnseenDoNotChangeTheTotals() {
+        StateAndRef<MetalState> gold = Fixtures.metal("Gold", 10, mint, traderA);
+        model.onSnapshot(Collections.singletonList(gold));
+
+        model.onUpdate(update(Collections.emptyList(), Collections.singletonList(gold)));
+        model.onUpdate(update(Collections.singletonList(Fixtures.metal("Gold", 3, mint, traderA)), Collections.emptyList()));
+
+        assertEquals(10L, weight(MetalReadModel.GroupBy.OWNER, name(traderA), "Gold"));
+        assertTrue(model.recentlyConsumed(10).isEmpty());
+    }
+
+    @Test
+    public void historyKeepsTheNewestConsumedStatesUpToItsSize() {
+        StateAndRef<MetalState> first = Fixtures.metal("Gold", 1, mint, traderA);
+        StateAndRef<MetalState> second = Fixtures.metal("Gold", 2, mint, traderA);
+        StateAndRef<MetalState> third = Fixtures.metal("Gold", 3, mint, traderA);
+        model.onSnapshot(Arrays.asList(first, second, third));
+
+        model.onUpdate(update(Collections.singletonList(first), Collections.emptyList()));
+        model.onUpdate(update(Collections.singletonList(second), Collections.emptyList()));
+        model.onUpdate(update(Collections.singletonList(third), Collections.emptyList()));
+
+        assertEquals(Arrays.asList(third, second), model.recentlyConsumed(10));
+        assertEquals(Collections.singletonList(third), model.recentlyConsumed(1));
+
+        // A new snapshot starts the history again.
+        model.onSnapshot(Collections.emptyList());
+        assertTrue(model.recentlyConsumed(10).isEmpty());
+        assertTrue(model.holdings(MetalReadModel.GroupBy.OWNER, null).isEmpty());
+    }
+
+    private long weight(MetalReadModel.GroupBy groupBy, String key, String subKey) {
+        Map<String, Long> group = model.holdings(groupBy, key).get(key);
+        return group == null ? 0 : group.getOrDefault(subKey, 0L);
+    }
+
+    private static String name(Party party) {
+        return party.getName().toString();
+    }
+
+    private static Vault.Update<MetalState> update(List<StateAndRef<MetalState>> consumed,
+                                                   List<StateAndRef<MetalState>> produced) {
+        return new Vault.Update<>(new HashSet<>(consumed), new HashSet<>(produced));
+    }
+}
@@ -10,7 +10,12 @@ import net.corda.core.transactions.LedgerTransaction;
 import org.jetbrains.annotations.NotNull;
 
 import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 // ************
 // * Contract *
@@ -44,69 +49,100 @@ public class MetalContract implements Contract {
          if (tx.getInputs().size() != 0)
              throw new IllegalArgumentException("Issue cannot have inputs");
 
-         if (tx.getOutputs().size() != 1)
-             throw new IllegalArgumentException("Issue can only have one output");
+         if (tx.getOutputs().isEmpty())
+             throw new IllegalArgumentException("Issue must have at least one output");
 
-         // Content Rules
+         // Content and Signer Rules, checked for every output in a single pass
 
-         ContractState outputState = tx.getOutput(0);
+         Set<PublicKey> signers = new HashSet<>(requiredSigners);
 
-         if (!(outputState instanceof MetalState))
-             throw new IllegalArgumentException("Output must be a metal State");
+         for (ContractState outputState : tx.getOutputStates()) {
 
-         MetalState metalState = (MetalState) outputState;
+             if (!(outputState instanceof MetalState))
+                 throw new IllegalArgumentException("Output must be a metal State");
 
-         if (!metalState.getMetalName().equals("Gold")&&!metalState.getMetalName().equals("Silver")){
-             throw new IllegalArgumentException("Metal is not Gold or Silver");
-         }
+             MetalState metalState = (MetalState) outputState;
+
+             if (!metalState.getMetalName().equals("Gold")&&!metalState.getMetalName().equals("Silver")){
+                 throw new IllegalArgumentException("Metal is not Gold or Silver");
+             }
 
-         // Signer Rules
+             if (metalState.getWeight() <= 0)
+                 throw new IllegalArgumentException("Issued weight must be positive");
 
-         Party issuer = metalState.getIssuer();
-         PublicKey issuersKey = issuer.getOwningKey();
+             Party issuer = metalState.getIssuer();
+             PublicKey issuersKey = issuer.getOwningKey();
 
-         if (!(requiredSigners.contains(issuersKey)))
-             throw new IllegalArgumentException("Issuer has to sign the issuance");
+             if (!(signers.contains(issuersKey)))
+                 throw new IllegalArgumentException("Issuer has to sign the issuance");
+         }
 
      }
 
 
-        // -------------------------------- Transfer Command Contract Rules ------------------------------------------
+        // -------------------------------- Transfer and Settle Command Contract Rules ------------------------------------------
 
 
-       else if (commandType instanceof Transfer) {
-            // Transfer transaction logic
+       else if (commandType instanceof Transfer || commandType instanceof Settle) {
+            // Transfer transaction logic. A settlement of netted transfers moves metal between many owners at once,
+            // and follows the same rules: every owner whose metal is spent signs, and no weight is created or lost.
+
+            String action = commandType instanceof Transfer ? "Transfer" : "Settlement";
 
             // Shape Rules
 
-            if (tx.getInputs().size() != 1)
-                throw new IllegalArgumentException("Transfer needs to have one input");
+            if (tx.getInputs().isEmpty())
+                throw new IllegalArgumentException(action + " needs to have at least one input");
+
+            if (tx.getOutputs().isEmpty())
+                throw new IllegalArgumentException(action + " needs to have at least one output");
+
+            // Content and Signer Rules. Weight is fungible, so bars may be split and merged, but the total weight of
+            // each metal from each issuer has to be the same on both sides of the transaction.
+
+            Set<PublicKey> signers = new HashSet<>(requiredSigners);
+            Map<MetalKey, Long> balances = new HashMap<>();
+
+            for (ContractState inputState : tx.getInputStates()) {
+
+                if (!(inputState instanceof MetalState))
+                    throw new IllegalArgumentException("Input must be a metal State");
+
+                MetalState metalState = (MetalState) inputState;
+
+                Party owner = metalState.getOwner();
+                PublicKey ownersKey = owner.getOwningKey();
 
-            if (tx.getOutputs().size() != 1)
-                throw new IllegalArgumentException("Transfer can only have one output");
+                if (!(signers.contains(ownersKey)))
+                    throw new IllegalArgumentException("Owner has to sign the " + action.toLowerCase());
 
-            // Content Rules
+                balances.merge(new MetalKey(metalState), (long) metalState.getWeight(), Long::sum);
+            }
 
-            ContractState inputState = tx.getInput(0);
-            ContractState outputState = tx.getOutput(0);
+            for (ContractState outputState : tx.getOutputStates()) {
 
+                if (!(outputState instanceof MetalState))
+                    throw new IllegalArgumentException("Output must be a metal State");
 
-            if (!(outputState instanceof MetalState))
-                throw new IllegalArgumentException("Output must be a metal State");
+                MetalState metalState = (MetalState) outputState;
 
-            MetalState metalState = (MetalState) inputState;
+                if (metalState.getWeight() <= 0)
+                    throw new IllegalArgumentException("Transferred weight must be positive");
 
-            if (!metalState.getMetalName().equals("Gold")&&!metalState.getMetalName().equals("Silver")){
-                throw new IllegalArgumentException("Metal is not Gold or Silver");
+                balances.merge(new MetalKey(metalState), (long) -metalState.getWeight(), Long::sum);
             }
 
-            // Signer Rules
+            for (Map.Entry<MetalKey, Long> balance : balances.entrySet()) {
+
+                String metalName = balance.getKey().metalName;
 
-            Party owner = metalState.getOwner();
-            PublicKey ownersKey = owner.getOwningKey();
+                if (!metalName.equals("Gold")&&!metalName.equals("Silver")){
+                    throw new IllegalArgumentException("Metal is not Gold or Silver");
+                }
 
-            if (!(requiredSigners.contains(ownersKey)))
-                throw new IllegalArgumentException("Owner has to sign the transfer");
+                if (balance.getValue() != 0)
+                    throw new IllegalArgumentException(action + " must conserve the weight of " + metalName);
+            }
 
 
 
@@ -122,7 +158,32 @@ public class MetalContract implements Contract {
 
 
 
+    // Metal from different issuers is not interchangeable, so weight is balanced per metal and issuer.
+    private static final class MetalKey {
+        private final String metalName;
+        private final Party issuer;
+
+        private MetalKey(MetalState metalState) {
+            this.metalName = metalState.getMetalName();
+            this.issuer = metalState.getIssuer();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MetalKey)) return false;
+            MetalKey other = (MetalKey) o;
+            return metalName.equals(other.metalName) && issuer.equals(other.issuer);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(metalName, issuer);
+        }
+    }
+
     // Used to indicate the transaction's intent.
     public static class Issue implements CommandData {}
     public static class Transfer implements CommandData {}
+    public static class Settle implements CommandData {}
 }
\ No newline at end of file
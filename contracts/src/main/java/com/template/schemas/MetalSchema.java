@@ -0,0 +1,8 @@
+package com.template.schemas;
+
+/**
+ * The family of schemas for {@link com.template.states.MetalState}.
+ *
+ * Each version of the schema (e.g. {@link MetalSchemaV1}) refers back to this class as its family.
+ */
+public class MetalSchema {}
@@ -0,0 +1,64 @@
+package com.template.schemas;
+
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Collections;
+
+// **********
+// * Schema *
+// **********
+
+/**
+ * Version 1 of the {@link MetalSchema}, mapping each {@link com.template.states.MetalState} to a row of the
+ * "metal_states" table.
+ *
+ * The indexes cover the lookups made by the flows: by owner and metal (selecting inputs for a transfer), by metal
+ * and weight, and by issuer.
+ */
+public class MetalSchemaV1 extends MappedSchema {
+    public MetalSchemaV1() {
+        super(MetalSchema.class, 1, Collections.singletonList(PersistentMetal.class));
+    }
+
+    @Entity
+    @Table(name = "metal_states", indexes = {
+            @Index(name = "metal_owner_idx", columnList = "owner_name, metal_name, weight"),
+            @Index(name = "metal_name_weight_idx", columnList = "metal_name, weight"),
+            @Index(name = "metal_issuer_idx", columnList = "issuer_name")
+    })
+    public static class PersistentMetal extends PersistentState {
+        @Column(name = "metal_name", nullable = false)
+        private final String metalName;
+        @Column(name = "weight", nullable = false)
+        private final int weight;
+        @Column(name = "issuer_name", nullable = false)
+        private final String issuer;
+        @Column(name = "owner_name", nullable = false)
+        private final String owner;
+
+        public PersistentMetal(String metalName, int weight, String issuer, String owner) {
+            this.metalName = metalName;
+            this.weight = weight;
+            this.issuer = issuer;
+            this.owner = owner;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentMetal() {
+            this.metalName = null;
+            this.weight = 0;
+            this.issuer = null;
+            this.owner = null;
+        }
+
+        public String getMetalName() {return metalName;}
+        public int getWeight() {return weight;}
+        public String getIssuer() {return issuer;}
+        public String getOwner() {return owner;}
+    }
+}
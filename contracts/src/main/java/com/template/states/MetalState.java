@@ -1,20 +1,23 @@
 package com.template.states;
 
 import com.template.contracts.MetalContract;
-import com.template.contracts.TemplateContract;
+import com.template.schemas.MetalSchemaV1;
 import net.corda.core.contracts.BelongsToContract;
-import net.corda.core.contracts.ContractState;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 // *********
 // * State *
 // *********
 @BelongsToContract(MetalContract.class)
-public class MetalState implements ContractState {
+public class MetalState implements QueryableState {
 
     private String metalName;
     private int weight;
@@ -38,4 +41,22 @@ public class MetalState implements ContractState {
     public Party getIssuer() {return issuer;}
     public Party getOwner() {return owner;}
 
-}
\ No newline at end of file
+    @Override
+    public PersistentState generateMappedObject(MappedSchema schema) {
+        if (schema instanceof MetalSchemaV1) {
+            return new MetalSchemaV1.PersistentMetal(
+                    metalName,
+                    weight,
+                    issuer.getName().toString(),
+                    owner.getName().toString());
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return Collections.singletonList(new MetalSchemaV1());
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.template.states;
+
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.SerializationCustomSerializer;
+
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.List;
+
+// **************
+// * Serializer *
+// **************
+
+/**
+ * Serialises a {@link MetalState} as a flat {@link Proxy} instead of field by field.
+ *
+ * The default AMQP encoding describes MetalState, Party and CordaX500Name in the schema of every message and stored
+ * transaction, and writes each party's name as six separate fields. The proxy is one type: the metal as a one-byte
+ * code, the weight as an int, and each party as its X.500 name string and key. A Party cannot be rebuilt from less,
+ * as a serializer has no identity service to look one up in.
+ *
+ * Corda finds this class in the CorDapp and uses it on every node that has it installed.
+ */
+public class MetalStateSerializer implements SerializationCustomSerializer<MetalState, MetalStateSerializer.Proxy> {
+
+    // A metal's code is its position in this list plus one. Only ever append to it.
+    static final List<String> METALS = Arrays.asList("Gold", "Silver");
+    // The code of a metal missing from METALS, whose name is then carried in full.
+    static final byte OTHER_METAL = 0;
+
+    @Override
+    public Proxy toProxy(MetalState state) {
+        byte metalCode = (byte) (METALS.indexOf(state.getMetalName()) + 1);
+        return new Proxy(
+                metalCode,
+                metalCode == OTHER_METAL ? state.getMetalName() : null,
+                state.getWeight(),
+                state.getIssuer().getName().toString(),
+                state.getIssuer().getOwningKey(),
+                state.getOwner().getName().toString(),
+                state.getOwner().getOwningKey());
+    }
+
+    @Override
+    public MetalState fromProxy(Proxy proxy) {
+        String metalName = proxy.getMetalCode() == OTHER_METAL
+                ? proxy.getMetalName()
+                : METALS.get(proxy.getMetalCode() - 1);
+        return new MetalState(
+                metalName,
+                proxy.getWeight(),
+                new Party(CordaX500Name.parse(proxy.getIssuerName()), proxy.getIssuerKey()),
+                new Party(CordaX500Name.parse(proxy.getOwnerName()), proxy.getOwnerKey()));
+    }
+
+    public static class Proxy {
+        private final byte metalCode;
+        private final String metalName;
+        private final int weight;
+        private final String issuerName;
+        private final PublicKey issuerKey;
+        private final String ownerName;
+        private final PublicKey ownerKey;
+
+        public Proxy(byte metalCode, String metalName, int weight, String issuerName, PublicKey issuerKey,
+                     String ownerName, PublicKey ownerKey) {
+            this.metalCode = metalCode;
+            this.metalName = metalName;
+            this.weight = weight;
+            this.issuerName = issuerName;
+            this.issuerKey = issuerKey;
+            this.ownerName = ownerName;
+            this.ownerKey = ownerKey;
+        }
+
+        public byte getMetalCode() {return metalCode;}
+        public String getMetalName() {return metalName;}
+        public int getWeight() {return weight;}
+        public String getIssuerName() {return issuerName;}
+        public PublicKey getIssuerKey() {return issuerKey;}
+        public String getOwnerName() {return ownerName;}
+        public PublicKey getOwnerKey() {return ownerKey;}
+    }
+}
@@ -10,6 +10,8 @@ import net.corda.testing.core.TestIdentity;
 import net.corda.testing.node.MockServices;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static net.corda.testing.node.NodeTestUtils.transaction;
 
 public class ContractTests {
@@ -57,12 +59,10 @@ public class ContractTests {
 
 
     @Test
-    public void MetalContractRequiresOneOutputInIssueTransaction() {
+    public void MetalContractRequiresAtLeastOneOutputInIssueTransaction() {
 
         transaction(ledgerServices, tx -> {
-            // Has two outputs, will fail
-            tx.output(MetalContract.CID, metalState);
-            tx.output(MetalContract.CID, metalState);
+            // Has no outputs, will fail
             tx.command(Mint.getPublicKey(), new MetalContract.Issue());
             tx.fails();
             return null;
@@ -76,6 +76,59 @@ public class ContractTests {
             return null;
         });
 
+        transaction(ledgerServices, tx -> {
+            // Has several outputs for several owners, will verify
+            tx.output(MetalContract.CID, metalState);
+            tx.output(MetalContract.CID, metalState);
+            tx.output(MetalContract.CID, new MetalState("Silver", 100, Mint.getParty(), TraderB.getParty()));
+            tx.command(Mint.getPublicKey(), new MetalContract.Issue());
+            tx.verifies();
+            return null;
+        });
+
+    }
+
+
+
+    @Test
+    public void MetalContractRequiresEveryIssuedOutputToBeValid() {
+
+        transaction(ledgerServices, tx -> {
+            // Second output is not a metal state, will fail
+            tx.output(MetalContract.CID, metalState);
+            tx.output(MetalContract.CID, new DummyState());
+            tx.command(Mint.getPublicKey(), new MetalContract.Issue());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Second output is not Gold or Silver, will fail
+            tx.output(MetalContract.CID, metalState);
+            tx.output(MetalContract.CID, new MetalState("Copper", 10, Mint.getParty(), TraderA.getParty()));
+            tx.command(Mint.getPublicKey(), new MetalContract.Issue());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Second output has no weight, will fail
+            tx.output(MetalContract.CID, metalState);
+            tx.output(MetalContract.CID, new MetalState("Gold", 0, Mint.getParty(), TraderA.getParty()));
+            tx.command(Mint.getPublicKey(), new MetalContract.Issue());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Second output has an issuer who did not sign, will fail
+            tx.output(MetalContract.CID, metalState);
+            tx.output(MetalContract.CID, new MetalState("Gold", 10, TraderB.getParty(), TraderA.getParty()));
+            tx.command(Mint.getPublicKey(), new MetalContract.Issue());
+            tx.fails();
+            return null;
+        });
+
     }
 
 
@@ -231,8 +284,110 @@ public class ContractTests {
 
 
 
+    @Test
+    public void MetalContractRequiresTransferToConserveWeightPerMetal() {
+
+        transaction(ledgerServices, tx -> {
+            // Splits a bar with change back to the owner, will verify
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, new MetalState("Gold", 7, Mint.getParty(), TraderB.getParty()));
+            tx.output(MetalContract.CID, new MetalState("Gold", 3, Mint.getParty(), TraderA.getParty()));
+            tx.command(TraderA.getPublicKey(), new MetalContract.Transfer());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Merges two bars into one, will verify
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.input(MetalContract.CID, new MetalState("Gold", 5, Mint.getParty(), TraderA.getParty()));
+            tx.output(MetalContract.CID, new MetalState("Gold", 15, Mint.getParty(), TraderB.getParty()));
+            tx.command(TraderA.getPublicKey(), new MetalContract.Transfer());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Loses weight, will fail
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, new MetalState("Gold", 7, Mint.getParty(), TraderB.getParty()));
+            tx.command(TraderA.getPublicKey(), new MetalContract.Transfer());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Turns Gold into Silver, will fail
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, new MetalState("Silver", 10, Mint.getParty(), TraderB.getParty()));
+            tx.command(TraderA.getPublicKey(), new MetalContract.Transfer());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Changes the issuer of the metal, will fail
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, new MetalState("Gold", 10, TraderA.getParty(), TraderB.getParty()));
+            tx.command(TraderA.getPublicKey(), new MetalContract.Transfer());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            // Spends a second owner's bar without their signature, will fail
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.input(MetalContract.CID, new MetalState("Gold", 5, Mint.getParty(), TraderB.getParty()));
+            tx.output(MetalContract.CID, new MetalState("Gold", 15, Mint.getParty(), TraderB.getParty()));
+            tx.command(TraderA.getPublicKey(), new MetalContract.Transfer());
+            tx.fails();
+            return null;
+        });
+
+    }
+
+
+
+//    ------------------------------------- Settle Command Tests -------------------------------------
+
+
+    @Test
+    public void MetalContractRequiresSettlementToConserveWeightAndBeSignedByEveryPayer() {
+
+        transaction(ledgerServices, tx -> {
+            // A pays B 7 and B pays A 3 Silver, netted into one settlement signed by both, will verify
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.input(MetalContract.CID, new MetalState("Silver", 5, Mint.getParty(), TraderB.getParty()));
+            tx.output(MetalContract.CID, new MetalState("Gold", 7, Mint.getParty(), TraderB.getParty()));
+            tx.output(MetalContract.CID, new MetalState("Gold", 3, Mint.getParty(), TraderA.getParty()));
+            tx.output(MetalContract.CID, new MetalState("Silver", 3, Mint.getParty(), TraderA.getParty()));
+            tx.output(MetalContract.CID, new MetalState("Silver", 2, Mint.getParty(), TraderB.getParty()));
+            tx.command(Arrays.asList(TraderA.getPublicKey(), TraderB.getPublicKey()), new MetalContract.Settle());
+            tx.verifies();
+            return null;
+        });
 
+        transaction(ledgerServices, tx -> {
+            // B's Silver is spent without B's signature, will fail
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.input(MetalContract.CID, new MetalState("Silver", 5, Mint.getParty(), TraderB.getParty()));
+            tx.output(MetalContract.CID, new MetalState("Gold", 10, Mint.getParty(), TraderB.getParty()));
+            tx.output(MetalContract.CID, new MetalState("Silver", 5, Mint.getParty(), TraderA.getParty()));
+            tx.command(TraderA.getPublicKey(), new MetalContract.Settle());
+            tx.fails();
+            return null;
+        });
 
+        transaction(ledgerServices, tx -> {
+            // Creates Silver out of Gold, will fail
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, new MetalState("Gold", 5, Mint.getParty(), TraderB.getParty()));
+            tx.output(MetalContract.CID, new MetalState("Silver", 5, Mint.getParty(), TraderB.getParty()));
+            tx.command(TraderA.getPublicKey(), new MetalContract.Settle());
+            tx.fails();
+            return null;
+        });
 
+    }
 
-}
\ No newline at end of file
+}
@@ -4,9 +4,18 @@ import net.corda.core.contracts.Contract;
 import net.corda.core.contracts.ContractState;
 import net.corda.core.identity.CordaX500Name;
 import net.corda.core.identity.Party;
+import net.corda.core.serialization.SerializationContext;
+import net.corda.core.serialization.SerializedBytes;
+import net.corda.client.rpc.internal.serialization.amqp.AMQPClientSerializationScheme;
+import net.corda.serialization.internal.SharedContexts;
 import net.corda.testing.core.TestIdentity;
 import org.junit.Test;
+import com.template.schemas.MetalSchemaV1;
 import com.template.states.MetalState;
+import com.template.states.MetalStateSerializer;
+
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertTrue;
@@ -42,6 +51,55 @@ public class StateTests {
 
     }
 
+    @Test
+    public void metalStateIsMappedToTheMetalSchemaV1() {
+        MetalState metalState = new MetalState("Gold", 10, Mint, Trader);
+        MetalSchemaV1.PersistentMetal persistentMetal = (MetalSchemaV1.PersistentMetal) metalState.generateMappedObject(new MetalSchemaV1());
+
+        assertEquals("Gold", persistentMetal.getMetalName());
+        assertEquals(10, persistentMetal.getWeight());
+        assertEquals(Mint.getName().toString(), persistentMetal.getIssuer());
+        assertEquals(Trader.getName().toString(), persistentMetal.getOwner());
+    }
+
+    @Test
+    public void metalStateSerializesSmallerThroughItsProxy() throws Exception {
+        Party issuer = new TestIdentity(new CordaX500Name("Mint", "London", "GB")).getParty();
+        Party owner = new TestIdentity(new CordaX500Name("TraderA", "New York", "US")).getParty();
+        MetalState metalState = new MetalState("Gold", 10, issuer, owner);
+
+        SerializationContext context = SharedContexts.getAMQP_P2P_CONTEXT();
+        AMQPClientSerializationScheme plain = new AMQPClientSerializationScheme(
+                Collections.emptySet(), Collections.emptySet(), new ConcurrentHashMap<>());
+        AMQPClientSerializationScheme compact = new AMQPClientSerializationScheme(
+                Collections.singleton(new MetalStateSerializer()), Collections.emptySet(), new ConcurrentHashMap<>());
+
+        SerializedBytes<MetalState> plainBytes = plain.serialize(metalState, context);
+        SerializedBytes<MetalState> compactBytes = compact.serialize(metalState, context);
+        // The proxy drops the schema of Party and CordaX500Name and the six name fields, so it is well under half.
+        assertTrue("Proxy gives " + compactBytes.getSize() + " bytes against " + plainBytes.getSize() + " by default",
+                compactBytes.getSize() * 2 <= plainBytes.getSize());
+
+        MetalState deserialized = compact.deserialize(compactBytes, MetalState.class, context);
+        assertEquals("Gold", deserialized.getMetalName());
+        assertEquals(10, deserialized.getWeight());
+        assertEquals(issuer, deserialized.getIssuer());
+        assertEquals(owner, deserialized.getOwner());
+    }
+
+    @Test
+    public void metalStateProxyCarriesTheNameOfAMetalWithoutACode() {
+        MetalStateSerializer serializer = new MetalStateSerializer();
+
+        MetalStateSerializer.Proxy gold = serializer.toProxy(new MetalState("Gold", 10, Mint, Trader));
+        assertTrue(gold.getMetalCode() > 0);
+        assertEquals(null, gold.getMetalName());
+
+        MetalStateSerializer.Proxy platinum = serializer.toProxy(new MetalState("Platinum", 10, Mint, Trader));
+        assertEquals(0, platinum.getMetalCode());
+        assertEquals("Platinum", serializer.fromProxy(platinum).getMetalName());
+    }
+
 
 
 
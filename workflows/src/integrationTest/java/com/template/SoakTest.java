@@ -0,0 +1,323 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.template.flows.GetCheckpointMetrics;
+import com.template.flows.IssueMetal;
+import com.template.flows.IssueMetalBatch;
+import com.template.flows.MetalIssuance;
+import com.template.flows.SearchVault;
+import com.template.flows.TransferMetal;
+import com.template.metrics.CheckpointMetricsSnapshot;
+import com.template.metrics.LatencyHistogram;
+import com.template.services.FlowMetricsService;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.core.node.services.Vault;
+import net.corda.testing.driver.DriverParameters;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.driver.NodeParameters;
+import net.corda.testing.node.TestCordapp;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import static net.corda.testing.driver.Driver.driver;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs mixed issue, transfer and search traffic against a Mint, TraderA, TraderB and the driver's notary for a set
+ * time. Every window it samples throughput, flow latency, heap after a GC, flows in flight (the rows of the checkpoint
+ * table) and the largest sampled checkpoint, and writes them to a CSV file for trend tracking.
+ *
+ * The run fails if the p99 latency or the heap of the last third of the windows has grown past a limit over the first
+ * third, or if too many flows fail. The first window is a warm-up and is left out. Settings are system properties:
+ * <pre>
+ *     ./gradlew workflows:soakTest -Dsoak.durationSeconds=3600 -Dsoak.rate=50
+ * </pre>
+ */
+public class SoakTest {
+    private static final Logger logger = LoggerFactory.getLogger(SoakTest.class);
+
+    private static final CordaX500Name MINT = new CordaX500Name("Mint", "London", "GB");
+    private static final CordaX500Name TRADER_A = new CordaX500Name("TraderA", "New York", "US");
+    private static final CordaX500Name TRADER_B = new CordaX500Name("TraderB", "New York", "US");
+
+    private final long durationSeconds = Long.getLong("soak.durationSeconds", 300);
+    private final long sampleSeconds = Long.getLong("soak.sampleSeconds", 10);
+    private final double rate = Double.parseDouble(System.getProperty("soak.rate", "20"));
+    private final int concurrency = Integer.getInteger("soak.concurrency", 32);
+    private final int prefund = Integer.getInteger("soak.prefund", 200);
+    // The last third of the run may be this many times the first third, plus some slack for small values.
+    private final double maxLatencyDrift = Double.parseDouble(System.getProperty("soak.maxLatencyDrift", "1.5"));
+    private final long latencySlackMillis = Long.getLong("soak.latencySlackMillis", 50);
+    private final double maxHeapGrowth = Double.parseDouble(System.getProperty("soak.maxHeapGrowth", "1.5"));
+    private final double maxFailureRatio = Double.parseDouble(System.getProperty("soak.maxFailureRatio", "0.01"));
+    private final File outputDir = new File(System.getProperty("soak.outputDir", "build/soak"));
+
+    @Test
+    public void sustainedMixedLoadKeepsLatencyAndHeapFlat() {
+        driver(new DriverParameters()
+                .withStartNodesInProcess(true)
+                .withCordappsForAllNodes(ImmutableList.of(
+                        TestCordapp.findCordapp("com.template.contracts"),
+                        TestCordapp.findCordapp("com.template.flows")
+                                .withConfig(ImmutableMap.of(FlowMetricsService.CHECKPOINT_SAMPLE_RATE_CONFIG, 0.1)))), dsl -> {
+            List<CordaFuture<NodeHandle>> handleFutures = ImmutableList.of(
+                    dsl.startNode(new NodeParameters().withProvidedName(MINT)),
+                    dsl.startNode(new NodeParameters().withProvidedName(TRADER_A)),
+                    dsl.startNode(new NodeParameters().withProvidedName(TRADER_B))
+            );
+
+            try {
+                List<Sample> samples = soak(
+                        handleFutures.get(0).get().getRpc(),
+                        handleFutures.get(1).get().getRpc(),
+                        handleFutures.get(2).get().getRpc());
+                check(samples);
+            } catch (Exception e) {
+                throw new RuntimeException("Caught exception during soak test: ", e);
+            }
+
+            return null;
+        });
+    }
+
+    //    ----------------------------------------------- Traffic -----------------------------------------------
+
+    private List<Sample> soak(CordaRPCOps mint, CordaRPCOps traderA, CordaRPCOps traderB) throws Exception {
+        final Party partyA = traderA.nodeInfo().getLegalIdentities().get(0);
+        final Party partyB = traderB.nodeInfo().getLegalIdentities().get(0);
+        final List<CordaRPCOps> nodes = Arrays.asList(mint, traderA, traderB);
+
+        // Both traders start with enough bars that their first transfers are funded.
+        List<MetalIssuance> issuances = new ArrayList<>(2 * prefund);
+        for (int i = 0; i < prefund; i++) {
+            issuances.add(new MetalIssuance("Gold", 1, partyA));
+            issuances.add(new MetalIssuance("Gold", 1, partyB));
+        }
+        mint.startFlowDynamic(IssueMetalBatch.class, issuances).getReturnValue().get();
+
+        final AtomicReference<Window> window = new AtomicReference<>(new Window());
+        final List<Sample> samples = new ArrayList<>();
+        final long started = System.nanoTime();
+
+        outputDir.mkdirs();
+        final File csv = new File(outputDir, "soak-" + System.currentTimeMillis() + ".csv");
+        final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        try (BufferedWriter writer = Files.newBufferedWriter(csv.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(Sample.HEADER);
+            writer.newLine();
+            sampler.scheduleAtFixedRate(() -> {
+                Sample sample = sample(window.getAndSet(new Window()), started, nodes);
+                synchronized (samples) {
+                    samples.add(sample);
+                    try {
+                        writer.write(sample.toCsv());
+                        writer.newLine();
+                        writer.flush();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Could not write " + csv, e);
+                    }
+                }
+            }, sampleSeconds, sampleSeconds, TimeUnit.SECONDS);
+
+            drive(window, mint, traderA, traderB, partyA, partyB);
+
+            sampler.shutdown();
+            sampler.awaitTermination(sampleSeconds, TimeUnit.SECONDS);
+        } finally {
+            sampler.shutdownNow();
+        }
+        logger.info("Soak results written to {}", csv.getAbsolutePath());
+
+        synchronized (samples) {
+            return new ArrayList<>(samples);
+        }
+    }
+
+    private void drive(AtomicReference<Window> window, CordaRPCOps mint, CordaRPCOps traderA, CordaRPCOps traderB,
+                       Party partyA, Party partyB) throws InterruptedException {
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final Random random = new Random();
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        for (long scheduled = start; scheduled < end; scheduled += interval) {
+            for (long wait = scheduled - System.nanoTime(); wait > 0; wait = scheduled - System.nanoTime()) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            inFlight.acquire();
+
+            final boolean toA = random.nextBoolean();
+            final CordaRPCOps trader = toA ? traderA : traderB;
+            final Party self = toA ? partyA : partyB;
+            final Party other = toA ? partyB : partyA;
+            final double kind = random.nextDouble();
+
+            if (kind < 0.4) {
+                start(window, inFlight, () -> mint.startFlowDynamic(IssueMetal.class, "Gold", 1, self));
+            } else if (kind < 0.8) {
+                start(window, inFlight, () -> trader.startFlowDynamic(TransferMetal.class, "Gold", 1, other));
+            } else {
+                start(window, inFlight, () -> trader.startFlowDynamic(SearchVault.class,
+                        Vault.StateStatus.UNCONSUMED, "Gold", self, 1, 50));
+            }
+        }
+
+        // Let the stragglers finish so that they are counted.
+        inFlight.acquire(concurrency);
+        inFlight.release(concurrency);
+    }
+
+    private static void start(AtomicReference<Window> window, Semaphore inFlight, Supplier<FlowHandle<?>> starter) {
+        final long started = System.nanoTime();
+        final FlowHandle<?> handle;
+        try {
+            handle = starter.get();
+        } catch (RuntimeException e) {
+            window.get().failed.increment();
+            inFlight.release();
+            return;
+        }
+
+        handle.getReturnValue().toCompletableFuture().whenComplete((result, error) -> {
+            final Window current = window.get();
+            if (error == null) current.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+            else current.failed.increment();
+            handle.close();
+            inFlight.release();
+        });
+    }
+
+    //    ----------------------------------------------- Sampling -----------------------------------------------
+
+    private Sample sample(Window window, long started, List<CordaRPCOps> nodes) {
+        // The nodes run in this JVM, so its heap after a collection is theirs.
+        System.gc();
+        long heapBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+        int flowsInFlight = 0;
+        long largestCheckpoint = 0;
+        for (CordaRPCOps node : nodes) {
+            flowsInFlight += node.stateMachinesSnapshot().size();
+            try {
+                List<CheckpointMetricsSnapshot> checkpoints = node.startFlowDynamic(GetCheckpointMetrics.class)
+                        .getReturnValue().get(sampleSeconds, TimeUnit.SECONDS);
+                for (CheckpointMetricsSnapshot checkpoint : checkpoints) {
+                    largestCheckpoint = Math.max(largestCheckpoint, checkpoint.getMaxBytes());
+                }
+            } catch (Exception e) {
+                // A node too busy to answer shows up as a zero in this column.
+            }
+        }
+
+        return new Sample(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started), window, sampleSeconds,
+                heapBytes, flowsInFlight, largestCheckpoint);
+    }
+
+    private void check(List<Sample> samples) {
+        // The first window is a warm-up.
+        List<Sample> measured = samples.subList(Math.min(1, samples.size()), samples.size());
+        assertTrue("The run needs at least three sample windows after the warm-up, got " + measured.size(),
+                measured.size() >= 3);
+
+        int third = measured.size() / 3;
+        List<Sample> first = measured.subList(0, third);
+        List<Sample> last = measured.subList(measured.size() - third, measured.size());
+
+        long firstP99 = median(first, sample -> sample.p99Micros);
+        long lastP99 = median(last, sample -> sample.p99Micros);
+        assertTrue("p99 latency drifted from " + firstP99 / 1000 + " ms to " + lastP99 / 1000 + " ms",
+                lastP99 <= firstP99 * maxLatencyDrift + TimeUnit.MILLISECONDS.toMicros(latencySlackMillis));
+
+        long firstHeap = median(first, sample -> sample.heapBytes);
+        long lastHeap = median(last, sample -> sample.heapBytes);
+        assertTrue("Heap after GC grew from " + (firstHeap >> 20) + " MB to " + (lastHeap >> 20) + " MB",
+                lastHeap <= firstHeap * maxHeapGrowth);
+
+        long completed = 0;
+        long failed = 0;
+        for (Sample sample : measured) {
+            completed += sample.completed;
+            failed += sample.failed;
+        }
+        assertTrue(failed + " of " + (completed + failed) + " flows failed",
+                failed <= (completed + failed) * maxFailureRatio);
+    }
+
+    private static long median(List<Sample> samples, ToLongFunction<Sample> value) {
+        long[] values = samples.stream().mapToLong(value).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private static class Window {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder failed = new LongAdder();
+    }
+
+    private static class Sample {
+        static final String HEADER = "elapsedSeconds,completed,failed,flowsPerSecond,p50Millis,p99Millis,maxMillis,"
+                + "heapMb,flowsInFlight,largestCheckpointBytes";
+
+        final long elapsedSeconds;
+        final long completed;
+        final long failed;
+        final double flowsPerSecond;
+        final long p50Micros;
+        final long p99Micros;
+        final long maxMicros;
+        final long heapBytes;
+        final int flowsInFlight;
+        final long largestCheckpointBytes;
+
+        Sample(long elapsedSeconds, Window window, long windowSeconds, long heapBytes, int flowsInFlight,
+               long largestCheckpointBytes) {
+            this.elapsedSeconds = elapsedSeconds;
+            this.completed = window.latency.getCount();
+            this.failed = window.failed.sum();
+            this.flowsPerSecond = (double) completed / windowSeconds;
+            this.p50Micros = window.latency.valueAtPercentile(50);
+            this.p99Micros = window.latency.valueAtPercentile(99);
+            this.maxMicros = window.latency.getMax();
+            this.heapBytes = heapBytes;
+            this.flowsInFlight = flowsInFlight;
+            this.largestCheckpointBytes = largestCheckpointBytes;
+        }
+
+        String toCsv() {
+            return elapsedSeconds + "," + completed + "," + failed + ","
+                    + String.format(Locale.ROOT, "%.1f", flowsPerSecond) + ","
+                    + millis(p50Micros) + "," + millis(p99Micros) + "," + millis(maxMicros) + ","
+                    + (heapBytes >> 20) + "," + flowsInFlight + "," + largestCheckpointBytes;
+        }
+
+        private static String millis(long micros) {
+            return String.format(Locale.ROOT, "%.2f", micros / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.AbstractStateReplacementFlow;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.NotaryChangeFlow;
+import net.corda.core.identity.Party;
+import net.corda.core.utilities.NonEmptySet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the selected inputs of a transfer onto one notary, as every input of a transaction must share its notary.
+ *
+ * Issuance spreads metal over the notaries, so a transfer can select states that sit on different ones. Unless a
+ * notary is given, the notary already holding the most of the inputs is kept, and the rest are moved to it with
+ * {@link NotaryChangeFlow}, which costs one extra transaction per moved state. The moved states are soft-locked under the calling flow's run id, as
+ * the originals were. Returns the inputs in their original order.
+ */
+public class ChangeInputNotaries extends FlowLogic<List<StateAndRef<MetalState>>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeInputNotaries.class);
+
+    private final List<StateAndRef<MetalState>> inputs;
+    private final Party notary;
+
+    public ChangeInputNotaries(List<StateAndRef<MetalState>> inputs) {
+        this(inputs, preferredNotary(inputs));
+    }
+
+    public ChangeInputNotaries(List<StateAndRef<MetalState>> inputs, Party notary) {
+        this.inputs = inputs;
+        this.notary = notary;
+    }
+
+    static Party preferredNotary(List<StateAndRef<MetalState>> inputs) {
+        Map<Party, Integer> inputsPerNotary = new LinkedHashMap<>();
+        for (StateAndRef<MetalState> input : inputs) {
+            inputsPerNotary.merge(input.getState().getNotary(), 1, Integer::sum);
+        }
+
+        Party preferred = null;
+        int most = 0;
+        for (Map.Entry<Party, Integer> entry : inputsPerNotary.entrySet()) {
+            if (entry.getValue() > most) {
+                preferred = entry.getKey();
+                most = entry.getValue();
+            }
+        }
+        return preferred;
+    }
+
+    @Suspendable
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<StateAndRef<MetalState>> call() throws FlowException {
+        List<StateAndRef<MetalState>> moved = new ArrayList<>(inputs.size());
+        for (StateAndRef<MetalState> input : inputs) {
+            if (input.getState().getNotary().equals(notary)) {
+                moved.add(input);
+                continue;
+            }
+
+            logger.info("Moving input {} from notary {} to {}", input.getRef(), input.getState().getNotary().getName(), notary.getName());
+            StateAndRef<MetalState> replacement = (StateAndRef<MetalState>) subFlow(new NotaryChangeFlow<MetalState>(
+                    input, notary, AbstractStateReplacementFlow.Instigator.Companion.tracker()));
+            getServiceHub().getVaultService().softLockReserve(getRunId().getUuid(), NonEmptySet.of(replacement.getRef()));
+            moved.add(replacement);
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,24 @@
+package com.template.flows;
+
+import net.corda.core.flows.FlowException;
+
+import java.util.UUID;
+
+/**
+ * Thrown when a flow is started with a client request id that another flow, still running, was started with.
+ * {@link #getRunningFlowId()} identifies that flow, so the caller can follow it instead of starting it again.
+ */
+public class DuplicateRequestException extends FlowException {
+
+    private final String clientRequestId;
+    private final UUID runningFlowId;
+
+    public DuplicateRequestException(String clientRequestId, UUID runningFlowId) {
+        super("Request " + clientRequestId + " is already being handled by flow " + runningFlowId + ".");
+        this.clientRequestId = clientRequestId;
+        this.runningFlowId = runningFlowId;
+    }
+
+    public String getClientRequestId() {return clientRequestId;}
+    public UUID getRunningFlowId() {return runningFlowId;}
+}
@@ -0,0 +1,23 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.metrics.CheckpointMetricsSnapshot;
+import com.template.services.FlowMetricsService;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.util.List;
+
+/**
+ * Returns the checkpoint sizes and suspension counts of the flow runs sampled by this node's {@link FlowMetricsService}.
+ */
+@StartableByRPC
+public class GetCheckpointMetrics extends FlowLogic<List<CheckpointMetricsSnapshot>> {
+
+    @Suspendable
+    @Override
+    public List<CheckpointMetricsSnapshot> call() throws FlowException {
+        return getServiceHub().cordaService(FlowMetricsService.class).checkpointSnapshot();
+    }
+}
@@ -0,0 +1,23 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.metrics.StepMetricsSnapshot;
+import com.template.services.FlowMetricsService;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.util.List;
+
+/**
+ * Returns the per-step latency and success/failure counts collected by this node's {@link FlowMetricsService}.
+ */
+@StartableByRPC
+public class GetFlowMetrics extends FlowLogic<List<StepMetricsSnapshot>> {
+
+    @Suspendable
+    @Override
+    public List<StepMetricsSnapshot> call() throws FlowException {
+        return getServiceHub().cordaService(FlowMetricsService.class).snapshot();
+    }
+}
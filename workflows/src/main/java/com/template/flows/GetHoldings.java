@@ -0,0 +1,55 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.FlowMetricsService;
+import com.template.states.MetalState;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.QueryCriteria;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Returns the total unconsumed weight per metal and owner in this node's vault.
+ *
+ * The sum is computed by the database with a grouped aggregate over {@code metal_states}, which the
+ * {@code metal_owner_idx} index covers, so one row per metal and owner is returned however many states there are.
+ */
+@StartableByRPC
+public class GetHoldings extends FlowLogic<List<MetalHolding>> {
+
+    private final String metalName;
+    private final Party owner;
+
+    public GetHoldings() {
+        this(null, null);
+    }
+
+    // Restricts the totals to one metal and/or one owner. Either filter may be null.
+    public GetHoldings(String metalName, Party owner) {
+        this.metalName = metalName;
+        this.owner = owner;
+    }
+
+    @Suspendable
+    @Override
+    public List<MetalHolding> call() throws FlowException {
+        QueryCriteria criteria = MetalQueries.metalStates(Vault.StateStatus.UNCONSUMED, metalName, null, owner, null)
+                .and(MetalQueries.sumOfWeightByMetalAndOwner(Vault.StateStatus.UNCONSUMED));
+
+        // Each group is returned as [sum, metal name, owner name], one after the other.
+        List<Object> rows = getServiceHub().cordaService(FlowMetricsService.class).timeVaultQuery("GetHoldings.sum",
+                () -> getServiceHub().getVaultService().queryBy(MetalState.class, criteria).getOtherResults());
+
+        List<MetalHolding> holdings = new ArrayList<>(rows.size() / 3);
+        for (int i = 0; i + 2 < rows.size(); i += 3) {
+            if (rows.get(i) == null) continue;
+            holdings.add(new MetalHolding((String) rows.get(i + 1), (String) rows.get(i + 2), ((Number) rows.get(i)).longValue()));
+        }
+        return holdings;
+    }
+}
@@ -0,0 +1,21 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.MetalIndexService;
+import com.template.services.MetalIndexStats;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+/**
+ * Returns the size and hit/miss counters of this node's {@link MetalIndexService}.
+ */
+@StartableByRPC
+public class GetMetalIndexStats extends FlowLogic<MetalIndexStats> {
+
+    @Suspendable
+    @Override
+    public MetalIndexStats call() throws FlowException {
+        return getServiceHub().cordaService(MetalIndexService.class).stats();
+    }
+}
@@ -0,0 +1,24 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.IssuerReportService;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByService;
+import net.corda.core.identity.Party;
+
+import java.util.List;
+
+/**
+ * Returns the issuers that transfers of ours still have to be reported to. The {@link IssuerReportService} starts it
+ * before starting {@link ReportToIssuers} for each of them.
+ */
+@StartableByService
+public class GetPendingIssuers extends FlowLogic<List<Party>> {
+
+    @Suspendable
+    @Override
+    public List<Party> call() throws FlowException {
+        return getServiceHub().cordaService(IssuerReportService.class).pendingIssuers();
+    }
+}
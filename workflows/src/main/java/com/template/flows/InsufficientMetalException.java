@@ -0,0 +1,13 @@
+package com.template.flows;
+
+import net.corda.core.flows.FlowException;
+
+/**
+ * Thrown when the states we own cannot cover the weight of metal being transferred.
+ */
+public class InsufficientMetalException extends FlowException {
+
+    public InsufficientMetalException(String metalName, long requested, long available) {
+        super("Insufficient " + metalName + ": requested " + requested + " but only " + available + " is available.");
+    }
+}
@@ -2,8 +2,12 @@ package com.template.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.template.contracts.MetalContract;
+import com.template.metrics.FlowInstrumentation;
+import com.template.services.NotarySelectionService;
+import com.template.services.RequestDedupeService;
 import com.template.states.MetalState;
 import net.corda.core.contracts.Command;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
 import net.corda.core.transactions.SignedTransaction;
@@ -20,11 +24,21 @@ public class IssueMetal extends FlowLogic<SignedTransaction> {
     private String metalName;
     private int weight; 
     private Party owner;
+    private String clientRequestId;
 
     public IssueMetal(String metalName, int weight, Party owner) {
+        this(metalName, weight, owner, null);
+    }
+
+    /**
+     * Issues at most once per {@code clientRequestId}: starting the flow again with the same id returns the
+     * transaction of the first issuance. See {@link RequestDedupeService}.
+     */
+    public IssueMetal(String metalName, int weight, Party owner, String clientRequestId) {
         this.metalName = metalName;
         this.weight = weight;
         this.owner = owner;
+        this.clientRequestId = clientRequestId;
     }
 
     private final ProgressTracker.Step RETRIEVING_NOTARY = new ProgressTracker.Step("Retrieving the Notary.");
@@ -51,37 +65,56 @@ public class IssueMetal extends FlowLogic<SignedTransaction> {
     public SignedTransaction call() throws FlowException {
         // Initiator flow logic goes here.
 
-        // Retrieve Notary Identity
-        progressTracker.setCurrentStep(RETRIEVING_NOTARY);
-        Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+        // A request that was already handled returns what it returned the first time
+        RequestDedupeService dedupe = clientRequestId == null ? null : getServiceHub().cordaService(RequestDedupeService.class);
+        if (dedupe != null) {
+            SecureHash earlierTx = dedupe.begin("IssueMetal", clientRequestId, getRunId().getUuid());
+            if (earlierTx != null) return getServiceHub().getValidatedTransactions().getTransaction(earlierTx);
+        }
+
+        FlowInstrumentation instrumentation = new FlowInstrumentation(this);
 
+        try {
+            // Choose the Notary to issue on
+            instrumentation.step(RETRIEVING_NOTARY);
+            NotarySelectionService notaries = getServiceHub().cordaService(NotarySelectionService.class);
+            Party notary = notaries.select(owner);
 
-        //Create transaction components
-        MetalState outputState = new MetalState(metalName, weight, getOurIdentity(), owner);
-        Command cmd = new Command(new MetalContract.Issue(), getOurIdentity().getOwningKey());
 
+            //Create transaction components
+            MetalState outputState = new MetalState(metalName, weight, getOurIdentity(), owner);
+            Command cmd = new Command(new MetalContract.Issue(), getOurIdentity().getOwningKey());
 
-        // Create transaction builder
-        progressTracker.setCurrentStep(GENERATING_TRANSACTION);
-        TransactionBuilder txB = new TransactionBuilder(notary)
-                .addOutputState(outputState, MetalContract.CID)
-                .addCommand(cmd);
 
+            // Create transaction builder
+            instrumentation.step(GENERATING_TRANSACTION);
+            TransactionBuilder txB = new TransactionBuilder(notary)
+                    .addOutputState(outputState, MetalContract.CID)
+                    .addCommand(cmd);
 
-        // Sign the transaction
-        progressTracker.setCurrentStep(SIGNING_TRANSACTION);
-        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
 
+            // Sign the transaction
+            instrumentation.step(SIGNING_TRANSACTION);
+            SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
 
-        // Create session with CounterParty
-        progressTracker.setCurrentStep(COUNTERPARTY_SESSION);
-        FlowSession otherPartySession = initiateFlow(owner);
 
+            // Create session with CounterParty
+            instrumentation.step(COUNTERPARTY_SESSION);
+            FlowSession otherPartySession = initiateFlow(owner);
 
-        // Finalize and send to CounterParty
-        progressTracker.setCurrentStep(FINALISING_TRANSACTION);
-        return subFlow(new FinalityFlow(signedTx, otherPartySession));
 
+            // Finalize and send to CounterParty
+            instrumentation.step(FINALISING_TRANSACTION);
+            long finalityStarted = System.nanoTime();
+            SignedTransaction finalTx = subFlow(new FinalityFlow(signedTx, otherPartySession));
+            notaries.recordLatency(notary, (System.nanoTime() - finalityStarted) / 1000);
+            if (dedupe != null) dedupe.completed("IssueMetal", clientRequestId, getRunId().getUuid(), finalTx.getId());
 
+            instrumentation.succeeded();
+            return finalTx;
+        } catch (FlowException | RuntimeException e) {
+            instrumentation.failed();
+            throw e;
+        }
     }
 }
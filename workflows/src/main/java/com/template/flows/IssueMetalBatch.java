@@ -0,0 +1,177 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalContract;
+import com.template.services.NotarySelectionService;
+import com.template.states.MetalState;
+import net.corda.core.contracts.Command;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// ******************
+// * Initiator flow *
+// ******************
+
+/**
+ * Mints many {@link MetalState}s at once, putting up to {@code batchSize} of them in each notarised transaction.
+ *
+ * The issuances are grouped by owner before being cut into transactions, so that each transaction involves as few
+ * owners as possible. A single session is opened per distinct owner for the whole batch: the owner is first told how
+ * many transactions to expect and then receives each of them through the same session.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class IssueMetalBatch extends FlowLogic<List<SecureHash>> {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final List<MetalIssuance> issuances;
+    private final int batchSize;
+
+    public IssueMetalBatch(List<MetalIssuance> issuances) {
+        this(issuances, DEFAULT_BATCH_SIZE);
+    }
+
+    public IssueMetalBatch(List<MetalIssuance> issuances, int batchSize) {
+        this.issuances = issuances;
+        this.batchSize = batchSize;
+    }
+
+    private final ProgressTracker.Step RETRIEVING_NOTARY = new ProgressTracker.Step("Retrieving the Notary.");
+    private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
+    private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
+    private final ProgressTracker.Step COUNTERPARTY_SESSION = new ProgressTracker.Step("Sending flow to counterparty.");
+    private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction");
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            COUNTERPARTY_SESSION,
+            RETRIEVING_NOTARY,
+            GENERATING_TRANSACTION,
+            SIGNING_TRANSACTION,
+            FINALISING_TRANSACTION
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    //    ----------------------------------------------- Batching Starts-----------------------------------------------
+
+    List<List<MetalIssuance>> groupIntoTransactions() throws FlowException {
+
+        if (issuances.isEmpty())
+            throw new FlowException("Nothing to issue.");
+
+        if (batchSize < 1)
+            throw new FlowException("Batch size must be at least 1.");
+
+        Map<Party, List<MetalIssuance>> byOwner = new LinkedHashMap<>();
+        for (MetalIssuance issuance : issuances) {
+            byOwner.computeIfAbsent(issuance.getOwner(), owner -> new ArrayList<>()).add(issuance);
+        }
+
+        List<List<MetalIssuance>> batches = new ArrayList<>();
+        List<MetalIssuance> batch = new ArrayList<>(batchSize);
+        for (List<MetalIssuance> ownersIssuances : byOwner.values()) {
+            for (MetalIssuance issuance : ownersIssuances) {
+                batch.add(issuance);
+                if (batch.size() == batchSize) {
+                    batches.add(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        }
+        if (!batch.isEmpty())
+            batches.add(batch);
+
+        return batches;
+    }
+
+    private static Set<Party> ownersOf(List<MetalIssuance> batch) {
+        Set<Party> owners = new LinkedHashSet<>();
+        for (MetalIssuance issuance : batch) {
+            owners.add(issuance.getOwner());
+        }
+        return owners;
+    }
+
+    //    ----------------------------------------------- Batching Ends-----------------------------------------------
+
+    @Suspendable
+    @Override
+    public List<SecureHash> call() throws FlowException {
+        // Initiator flow logic goes here.
+
+        NotarySelectionService notaries = getServiceHub().cordaService(NotarySelectionService.class);
+
+        List<List<MetalIssuance>> batches = groupIntoTransactions();
+
+
+        // Create one session per owner and tell each owner how many transactions it will receive
+        progressTracker.setCurrentStep(COUNTERPARTY_SESSION);
+        Map<Party, Integer> transactionsPerOwner = new LinkedHashMap<>();
+        for (List<MetalIssuance> batch : batches) {
+            for (Party owner : ownersOf(batch)) {
+                transactionsPerOwner.merge(owner, 1, Integer::sum);
+            }
+        }
+
+        Map<Party, FlowSession> sessions = new LinkedHashMap<>();
+        for (Map.Entry<Party, Integer> entry : transactionsPerOwner.entrySet()) {
+            if (getOurIdentity().equals(entry.getKey())) continue;
+            FlowSession session = initiateFlow(entry.getKey());
+            session.send(entry.getValue());
+            sessions.put(entry.getKey(), session);
+        }
+
+
+        List<SecureHash> transactionIds = new ArrayList<>(batches.size());
+        for (List<MetalIssuance> batch : batches) {
+
+            // Choose the Notary for this transaction, by the owner of its first bar when hashing by owner
+            progressTracker.setCurrentStep(RETRIEVING_NOTARY);
+            Party notary = notaries.select(batch.get(0).getOwner());
+
+            // Create transaction builder
+            progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+            TransactionBuilder txB = new TransactionBuilder(notary)
+                    .addCommand(new Command<>(new MetalContract.Issue(), getOurIdentity().getOwningKey()));
+
+            for (MetalIssuance issuance : batch) {
+                txB.addOutputState(new MetalState(issuance.getMetalName(), issuance.getWeight(), getOurIdentity(), issuance.getOwner()), MetalContract.CID);
+            }
+
+
+            // Sign the transaction
+            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
+
+
+            // Finalize and send to the owners in this batch
+            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            List<FlowSession> batchSessions = new ArrayList<>();
+            for (Party owner : ownersOf(batch)) {
+                FlowSession session = sessions.get(owner);
+                if (session != null) batchSessions.add(session);
+            }
+
+            long finalityStarted = System.nanoTime();
+            transactionIds.add(subFlow(new FinalityFlow(signedTx, batchSessions)).getId());
+            notaries.recordLatency(notary, (System.nanoTime() - finalityStarted) / 1000);
+        }
+
+        return transactionIds;
+    }
+}
@@ -0,0 +1,39 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(IssueMetalBatch.class)
+public class IssueMetalBatchResponder extends FlowLogic<Void> {
+    private static final Logger logger = LoggerFactory.getLogger(IssueMetalBatchResponder.class);
+
+    private FlowSession otherPartySession;
+
+    public IssueMetalBatchResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public Void call() throws FlowException {
+        // Responder flow logic goes here.
+
+        int transactions = otherPartySession.receive(Integer.class).unwrap(count -> {
+            if (count < 1) throw new IllegalArgumentException("Expected at least one transaction");
+            return count;
+        });
+
+        for (int i = 0; i < transactions; i++) {
+            subFlow(new ReceiveFinalityFlow(otherPartySession));
+        }
+
+        logger.info("Received {} precious Metal transactions.", transactions);
+
+        return null;
+    }
+}
@@ -0,0 +1,15 @@
+package com.template.flows;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * How {@link TransferMetal} tells the issuers of the metal about the transfer.
+ */
+@CordaSerializable
+public enum IssuerNotification {
+    // The issuers take part in finality, so the transfer waits for them.
+    SYNCHRONOUS,
+    // Finality involves only the receiver and the notary; the issuers are sent the transaction later, in batches,
+    // by ReportToIssuers.
+    ASYNCHRONOUS
+}
@@ -0,0 +1,30 @@
+package com.template.flows;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * The total weight of one metal held by one owner, as summed by the database for {@link GetHoldings}.
+ */
+@CordaSerializable
+public class MetalHolding {
+
+    private final String metalName;
+    private final String owner;
+    private final long weight;
+
+    public MetalHolding(String metalName, String owner, long weight) {
+        this.metalName = metalName;
+        this.owner = owner;
+        this.weight = weight;
+    }
+
+    public String getMetalName() {return metalName;}
+    // The owner's X.500 name, as stored in MetalSchemaV1.
+    public String getOwner() {return owner;}
+    public long getWeight() {return weight;}
+
+    @Override
+    public String toString() {
+        return "MetalHolding(metalName=" + metalName + ", owner=" + owner + ", weight=" + weight + ")";
+    }
+}
@@ -0,0 +1,25 @@
+package com.template.flows;
+
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * One bar to be minted by {@link IssueMetalBatch}.
+ */
+@CordaSerializable
+public class MetalIssuance {
+
+    private final String metalName;
+    private final int weight;
+    private final Party owner;
+
+    public MetalIssuance(String metalName, int weight, Party owner) {
+        this.metalName = metalName;
+        this.weight = weight;
+        this.owner = owner;
+    }
+
+    public String getMetalName() {return metalName;}
+    public int getWeight() {return weight;}
+    public Party getOwner() {return owner;}
+}
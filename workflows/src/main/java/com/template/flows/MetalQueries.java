@@ -0,0 +1,109 @@
+package com.template.flows;
+
+import com.template.schemas.MetalSchemaV1;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.CriteriaExpression;
+import net.corda.core.node.services.vault.FieldInfo;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.QueryCriteriaUtils;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Builds vault query criteria over the {@link MetalSchemaV1} columns, so that filtering on metal name, weight,
+ * issuer and owner is done by the database instead of in the flow.
+ *
+ * A null filter matches every state.
+ */
+public final class MetalQueries {
+
+    private MetalQueries() {}
+
+    public static QueryCriteria metalStates(Vault.StateStatus status, String metalName, Integer weight, Party owner, Party issuer) {
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(status);
+
+        if (metalName != null)
+            criteria = criteria.and(custom(Builder.equal(field("metalName"), metalName), status));
+        if (weight != null)
+            criteria = criteria.and(custom(Builder.equal(field("weight"), weight), status));
+        if (owner != null)
+            criteria = criteria.and(custom(Builder.equal(field("owner"), owner.getName().toString()), status));
+        if (issuer != null)
+            criteria = criteria.and(custom(Builder.equal(field("issuer"), issuer.getName().toString()), status));
+
+        return criteria;
+    }
+
+    // Matches states whose weight is at least the given weight.
+    public static QueryCriteria minimumWeight(int weight, Vault.StateStatus status) {
+        return custom(Builder.greaterThanOrEqual(field("weight"), weight), status);
+    }
+
+    // Sums the weight of the matching states in the database. The total is the first of the page's other results.
+    public static QueryCriteria sumOfWeight(Vault.StateStatus status) {
+        return custom(Builder.sum(field("weight")), status);
+    }
+
+    // Sums the weight of the matching states per metal and owner. Each group adds [sum, metal name, owner name] to the
+    // page's other results.
+    public static QueryCriteria sumOfWeightByMetalAndOwner(Vault.StateStatus status) {
+        return custom(Builder.sum(field("weight"), Arrays.asList(field("metalName"), field("owner"))), status);
+    }
+
+    // Orders states by weight.
+    public static Sort byWeight(Sort.Direction direction) {
+        return new Sort(Collections.singletonList(
+                new Sort.SortColumn(new SortAttribute.Custom(MetalSchemaV1.PersistentMetal.class, "weight"), direction)));
+    }
+
+    // Orders states by the time they were recorded, then by state ref, which is stable while new states arrive.
+    public static Sort byRecordedTime() {
+        return new Sort(Arrays.asList(
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)));
+    }
+
+    // Matches the states consumed at or after the given time, or every consumed state if it is null.
+    public static QueryCriteria consumedSince(Instant since) {
+        QueryCriteria.VaultQueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED);
+        if (since == null) return criteria;
+        return criteria.withTimeCondition(new QueryCriteria.TimeCondition(
+                QueryCriteria.TimeInstantType.CONSUMED, Builder.INSTANCE.greaterThanOrEqual(since)));
+    }
+
+    // Matches the states of the given status recorded at or after the given time, or all of them if it is null.
+    public static QueryCriteria recordedSince(Vault.StateStatus status, Instant since) {
+        QueryCriteria.VaultQueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(status);
+        if (since == null) return criteria;
+        return criteria.withTimeCondition(new QueryCriteria.TimeCondition(
+                QueryCriteria.TimeInstantType.RECORDED, Builder.INSTANCE.greaterThanOrEqual(since)));
+    }
+
+    // Orders states by the time they were consumed, then by state ref. History only grows at the end of this order.
+    public static Sort byConsumedTime() {
+        return new Sort(Arrays.asList(
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.VaultStateAttribute.CONSUMED_TIME), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_TXN_ID), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF_INDEX), Sort.Direction.ASC)));
+    }
+
+    static FieldInfo field(String name) {
+        try {
+            return QueryCriteriaUtils.getField(name, MetalSchemaV1.PersistentMetal.class);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("MetalSchemaV1 has no column " + name, e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static QueryCriteria custom(CriteriaExpression expression, Vault.StateStatus status) {
+        return new QueryCriteria.VaultCustomQueryCriteria(expression, status);
+    }
+}
@@ -0,0 +1,289 @@
+package com.template.flows;
+
+import com.template.services.FlowMetricsService;
+import com.template.services.MetalIndexService;
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.utilities.NonEmptySet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Treats the weight of a metal as fungible: picks the states that pay for a transfer, and splits them into the
+ * outputs going to the receivers and the change going back to the sender.
+ *
+ * Selection runs as bounded queries against the MetalSchemaV1 indexes, and only considers states that are not
+ * soft-locked by another flow:
+ * <ol>
+ *     <li>The database sums the weight we own, so a transfer we cannot afford fails straight away.</li>
+ *     <li>If a single state covers the weight, the lightest such state is used.</li>
+ *     <li>Otherwise states are read heaviest first, a page at a time, until their running total covers the weight.</li>
+ * </ol>
+ * Before any of this, {@link MetalIndexService} is asked for states of exactly the requested weight. When one of them
+ * can be soft-locked, no vault query is needed at all.
+ *
+ * The chosen states are then soft-locked under {@code lockId} (the flow's run id), so that concurrent flows on this
+ * node skip them instead of racing for them at the notary. If another flow locks one of them first, selection is
+ * run again.
+ */
+public class MetalSelector {
+
+    static final int SELECTION_PAGE_SIZE = 50;
+    static final int MAX_RESERVE_ATTEMPTS = 5;
+    static final int MAX_INDEX_CANDIDATES = 3;
+
+    private final ServiceHub serviceHub;
+    private final UUID lockId;
+    private final SelectionOrder order;
+    private final Set<StateRef> excluded = new HashSet<>();
+
+    public MetalSelector(ServiceHub serviceHub, UUID lockId, SelectionOrder order) {
+        this.serviceHub = serviceHub;
+        this.lockId = lockId;
+        this.order = order;
+    }
+
+    /**
+     * Never selects the given states, even though the vault still has them as unconsumed. Used for states a notary
+     * has reported as spent before our vault has heard about it.
+     */
+    public MetalSelector exclude(Collection<StateRef> refs) {
+        excluded.addAll(refs);
+        return this;
+    }
+
+    //    ----------------------------------------------- Input Selection -----------------------------------------------
+
+    public List<StateAndRef<MetalState>> select(Party owner, String metalName, int weight) throws FlowException {
+
+        if (weight <= 0)
+            throw new FlowException("Weight to transfer must be positive.");
+
+        StateAndRef<MetalState> exactMatch = reserveFromIndex(owner, metalName, weight);
+        if (exactMatch != null)
+            return Collections.singletonList(exactMatch);
+
+        for (int attempt = 1; ; attempt++) {
+            List<StateAndRef<MetalState>> selected = selectUnlocked(owner, metalName, weight);
+
+            List<StateRef> refs = new ArrayList<>(selected.size());
+            for (StateAndRef<MetalState> state : selected) {
+                refs.add(state.getRef());
+            }
+
+            try {
+                serviceHub.getVaultService().softLockReserve(lockId, NonEmptySet.copyOf(refs));
+                return selected;
+            } catch (StatesNotAvailableException e) {
+                // Another flow locked some of these states after our query. The next query will skip them.
+                if (attempt == MAX_RESERVE_ATTEMPTS) throw e;
+            }
+        }
+    }
+
+    private StateAndRef<MetalState> reserveFromIndex(Party owner, String metalName, int weight) {
+        List<StateAndRef<MetalState>> candidates = serviceHub.cordaService(MetalIndexService.class).candidates(metalName, weight, owner);
+
+        List<StateAndRef<MetalState>> arranged = arrange(candidates);
+        for (int i = 0; i < Math.min(arranged.size(), MAX_INDEX_CANDIDATES); i++) {
+            StateAndRef<MetalState> candidate = arranged.get(i);
+            if (excluded.contains(candidate.getRef())) continue;
+            try {
+                serviceHub.getVaultService().softLockReserve(lockId, NonEmptySet.of(candidate.getRef()));
+                return candidate;
+            } catch (StatesNotAvailableException e) {
+                // Locked by another flow, or consumed since the index last saw it.
+            }
+        }
+        return null;
+    }
+
+    private List<StateAndRef<MetalState>> selectUnlocked(Party owner, String metalName, int weight) throws FlowException {
+
+        QueryCriteria owned = MetalQueries.metalStates(Vault.StateStatus.UNCONSUMED, metalName, null, owner, null)
+                .and(new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                        .withSoftLockingCondition(new QueryCriteria.SoftLockingCondition(
+                                QueryCriteria.SoftLockingType.UNLOCKED_AND_SPECIFIED, Collections.singletonList(lockId))));
+
+        long available = totalWeight(owned);
+        if (available < weight)
+            throw new InsufficientMetalException(metalName, weight, available);
+
+        // The lightest single state that covers the weight needs no merging and leaves the least change.
+        List<StateAndRef<MetalState>> covering = metrics().timeVaultQuery("MetalSelector.covering",
+                () -> serviceHub.getVaultService().queryBy(
+                        MetalState.class,
+                        owned.and(MetalQueries.minimumWeight(weight, Vault.StateStatus.UNCONSUMED)),
+                        new PageSpecification(1, SELECTION_PAGE_SIZE),
+                        MetalQueries.byWeight(Sort.Direction.ASC)).getStates());
+        covering = withoutExcluded(covering);
+
+        if (!covering.isEmpty())
+            return Collections.singletonList(arrange(covering).get(0));
+
+        // Every state is lighter than the weight: take the heaviest first to keep the number of inputs down.
+        List<StateAndRef<MetalState>> selected = new ArrayList<>();
+        long runningTotal = 0;
+        int pageNumber = 1;
+
+        while (runningTotal < weight) {
+            PageSpecification pageSpecification = new PageSpecification(pageNumber++, SELECTION_PAGE_SIZE);
+            List<StateAndRef<MetalState>> page = metrics().timeVaultQuery("MetalSelector.heaviestFirst",
+                    () -> serviceHub.getVaultService().queryBy(
+                            MetalState.class,
+                            owned,
+                            pageSpecification,
+                            MetalQueries.byWeight(Sort.Direction.DESC)).getStates());
+
+            if (page.isEmpty())
+                throw new InsufficientMetalException(metalName, weight, runningTotal);
+
+            for (StateAndRef<MetalState> state : arrange(withoutExcluded(page))) {
+                selected.add(state);
+                runningTotal += state.getState().getData().getWeight();
+                if (runningTotal >= weight) break;
+            }
+        }
+
+        return selected;
+    }
+
+    private List<StateAndRef<MetalState>> withoutExcluded(List<StateAndRef<MetalState>> states) {
+        if (excluded.isEmpty()) return states;
+        List<StateAndRef<MetalState>> kept = new ArrayList<>(states.size());
+        for (StateAndRef<MetalState> state : states) {
+            if (!excluded.contains(state.getRef())) kept.add(state);
+        }
+        return kept;
+    }
+
+    // Reorders each run of equal-weight candidates in a page, which is ordered by weight, according to the selection order.
+    private List<StateAndRef<MetalState>> arrange(List<StateAndRef<MetalState>> page) {
+        if (order == SelectionOrder.FIRST || page.size() < 2)
+            return page;
+
+        List<StateAndRef<MetalState>> arranged = new ArrayList<>(page.size());
+        int runStart = 0;
+        while (runStart < page.size()) {
+            int runWeight = page.get(runStart).getState().getData().getWeight();
+            int runEnd = runStart + 1;
+            while (runEnd < page.size() && page.get(runEnd).getState().getData().getWeight() == runWeight) runEnd++;
+
+            List<StateAndRef<MetalState>> run = new ArrayList<>(page.subList(runStart, runEnd));
+            if (order == SelectionOrder.RANDOM) {
+                Collections.shuffle(run, ThreadLocalRandom.current());
+            } else {
+                Collections.rotate(run, -Math.floorMod(lockId.hashCode(), run.size()));
+            }
+            arranged.addAll(run);
+            runStart = runEnd;
+        }
+        return arranged;
+    }
+
+    private FlowMetricsService metrics() {
+        return serviceHub.cordaService(FlowMetricsService.class);
+    }
+
+    private long totalWeight(QueryCriteria owned) {
+        List<Object> sums = metrics().timeVaultQuery("MetalSelector.totalWeight", () -> serviceHub.getVaultService()
+                .queryBy(MetalState.class, owned.and(MetalQueries.sumOfWeight(Vault.StateStatus.UNCONSUMED)))
+                .getOtherResults());
+
+        if (sums.isEmpty() || sums.get(0) == null) return 0;
+        return ((Number) sums.get(0)).longValue();
+    }
+
+    //    ----------------------------------------------- Output Generation -----------------------------------------------
+
+    /**
+     * Pays each receiver its weight out of the inputs, in order, and returns what is left of the inputs to
+     * {@code changeOwner}. The inputs must all be of the same metal and cover the payments.
+     *
+     * One output is created per (issuer, owner) pair, so the weight of each issuer's metal is conserved.
+     */
+    public static List<MetalState> generateOutputs(List<StateAndRef<MetalState>> inputs, Map<Party, Integer> payments, Party changeOwner) {
+
+        Map<IssuerAndOwner, Integer> amounts = new LinkedHashMap<>();
+
+        int inputIndex = 0;
+        MetalState current = null;
+        int remaining = 0;
+
+        for (Map.Entry<Party, Integer> payment : payments.entrySet()) {
+            int toPay = payment.getValue();
+
+            while (toPay > 0) {
+                if (remaining == 0) {
+                    if (inputIndex == inputs.size())
+                        throw new IllegalArgumentException("Inputs do not cover the payments");
+                    current = inputs.get(inputIndex++).getState().getData();
+                    remaining = current.getWeight();
+                }
+
+                int paid = Math.min(toPay, remaining);
+                amounts.merge(new IssuerAndOwner(current.getIssuer(), payment.getKey()), paid, Integer::sum);
+                toPay -= paid;
+                remaining -= paid;
+            }
+        }
+
+        // Whatever is left of the inputs is change.
+        if (remaining > 0)
+            amounts.merge(new IssuerAndOwner(current.getIssuer(), changeOwner), remaining, Integer::sum);
+
+        while (inputIndex < inputs.size()) {
+            MetalState unused = inputs.get(inputIndex++).getState().getData();
+            amounts.merge(new IssuerAndOwner(unused.getIssuer(), changeOwner), unused.getWeight(), Integer::sum);
+        }
+
+        String metalName = inputs.get(0).getState().getData().getMetalName();
+        List<MetalState> outputs = new ArrayList<>(amounts.size());
+        for (Map.Entry<IssuerAndOwner, Integer> amount : amounts.entrySet()) {
+            outputs.add(new MetalState(metalName, amount.getValue(), amount.getKey().issuer, amount.getKey().owner));
+        }
+        return outputs;
+    }
+
+    private static final class IssuerAndOwner {
+        private final Party issuer;
+        private final Party owner;
+
+        private IssuerAndOwner(Party issuer, Party owner) {
+            this.issuer = issuer;
+            this.owner = owner;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof IssuerAndOwner)) return false;
+            IssuerAndOwner other = (IssuerAndOwner) o;
+            return issuer.equals(other.issuer) && owner.equals(other.owner);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(issuer, owner);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.template.flows;
+
+import com.template.states.MetalState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.List;
+
+/**
+ * One page of {@link MetalState}s returned by {@link SearchVault}.
+ *
+ * Callers iterate the vault by starting {@link SearchVault} again with {@link #nextPageNumber()} for as long as
+ * {@link #hasNextPage()} is true, so only one page is ever held in memory.
+ */
+@CordaSerializable
+public class MetalStatePage {
+
+    private final List<StateAndRef<MetalState>> states;
+    private final long totalStatesAvailable;
+    private final int pageNumber;
+    private final int pageSize;
+
+    public MetalStatePage(List<StateAndRef<MetalState>> states, long totalStatesAvailable, int pageNumber, int pageSize) {
+        this.states = states;
+        this.totalStatesAvailable = totalStatesAvailable;
+        this.pageNumber = pageNumber;
+        this.pageSize = pageSize;
+    }
+
+    public List<StateAndRef<MetalState>> getStates() {return states;}
+    public long getTotalStatesAvailable() {return totalStatesAvailable;}
+    public int getPageNumber() {return pageNumber;}
+    public int getPageSize() {return pageSize;}
+
+    public boolean hasNextPage() {
+        return (long) pageNumber * pageSize < totalStatesAvailable;
+    }
+
+    public int nextPageNumber() {
+        return pageNumber + 1;
+    }
+}
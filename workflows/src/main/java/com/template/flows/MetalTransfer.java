@@ -0,0 +1,25 @@
+package com.template.flows;
+
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * One payment to be made by {@link TransferMetalBatch}: a weight of a metal out of our vault to a new owner.
+ */
+@CordaSerializable
+public class MetalTransfer {
+
+    private final String metalName;
+    private final int weight;
+    private final Party newOwner;
+
+    public MetalTransfer(String metalName, int weight, Party newOwner) {
+        this.metalName = metalName;
+        this.weight = weight;
+        this.newOwner = newOwner;
+    }
+
+    public String getMetalName() {return metalName;}
+    public int getWeight() {return weight;}
+    public Party getNewOwner() {return newOwner;}
+}
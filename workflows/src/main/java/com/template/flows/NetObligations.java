@@ -0,0 +1,103 @@
+package com.template.flows;
+
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a set of transfer intents into the payments that settle them, per metal.
+ *
+ * The result maps each metal to its payers, and each payer to the weight it pays each receiver, which is the shape
+ * {@link MetalSelector#generateOutputs} takes. Every party ends up with the same net position per metal as if each
+ * intent had been a transfer of its own.
+ */
+public class NetObligations {
+
+    private NetObligations() {}
+
+    public static Map<String, Map<Party, Map<Party, Integer>>> payments(List<TransferIntent> intents, NettingMode mode) throws FlowException {
+        return mode == NettingMode.BILATERAL ? bilateral(intents) : multilateral(intents);
+    }
+
+    /** Nets the intents between each pair of parties: whoever owes the other more pays the difference. */
+    static Map<String, Map<Party, Map<Party, Integer>>> bilateral(List<TransferIntent> intents) throws FlowException {
+        // Per metal, what each payer owes each receiver before netting.
+        Map<String, Map<Party, Map<Party, Long>>> owed = new LinkedHashMap<>();
+        for (TransferIntent intent : intents) {
+            if (intent.getPayer().equals(intent.getReceiver())) continue;
+            owed.computeIfAbsent(intent.getMetalName(), metal -> new LinkedHashMap<>())
+                    .computeIfAbsent(intent.getPayer(), payer -> new LinkedHashMap<>())
+                    .merge(intent.getReceiver(), (long) intent.getWeight(), Long::sum);
+        }
+
+        Map<String, Map<Party, Map<Party, Integer>>> payments = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<Party, Map<Party, Long>>> metal : owed.entrySet()) {
+            Map<Party, Map<Party, Long>> metalOwed = metal.getValue();
+            for (Map.Entry<Party, Map<Party, Long>> payer : metalOwed.entrySet()) {
+                for (Map.Entry<Party, Long> receiver : payer.getValue().entrySet()) {
+                    long owedBack = metalOwed.getOrDefault(receiver.getKey(), new LinkedHashMap<>())
+                            .getOrDefault(payer.getKey(), 0L);
+                    long net = receiver.getValue() - owedBack;
+                    if (net > 0)
+                        pay(payments, metal.getKey(), payer.getKey(), receiver.getKey(), net);
+                }
+            }
+        }
+        return payments;
+    }
+
+    /**
+     * Nets each party's intents against everyone's, then pays the largest credits out of the largest debts first.
+     * Each payment clears a debt or a credit, so a metal with n parties out of balance settles in at most n - 1
+     * payments.
+     */
+    static Map<String, Map<Party, Map<Party, Integer>>> multilateral(List<TransferIntent> intents) throws FlowException {
+        Map<String, Map<Party, Long>> positions = new LinkedHashMap<>();
+        for (TransferIntent intent : intents) {
+            Map<Party, Long> metalPositions = positions.computeIfAbsent(intent.getMetalName(), metal -> new LinkedHashMap<>());
+            metalPositions.merge(intent.getPayer(), (long) -intent.getWeight(), Long::sum);
+            metalPositions.merge(intent.getReceiver(), (long) intent.getWeight(), Long::sum);
+        }
+
+        Map<String, Map<Party, Map<Party, Integer>>> payments = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<Party, Long>> metal : positions.entrySet()) {
+            List<Map.Entry<Party, Long>> debtors = new ArrayList<>();
+            List<Map.Entry<Party, Long>> creditors = new ArrayList<>();
+            for (Map.Entry<Party, Long> position : metal.getValue().entrySet()) {
+                if (position.getValue() < 0) debtors.add(position);
+                else if (position.getValue() > 0) creditors.add(position);
+            }
+            debtors.sort(Comparator.comparing(Map.Entry::getValue));
+            creditors.sort(Comparator.comparing(Map.Entry<Party, Long>::getValue).reversed());
+
+            int d = 0;
+            int c = 0;
+            long debt = debtors.isEmpty() ? 0 : -debtors.get(0).getValue();
+            long credit = creditors.isEmpty() ? 0 : creditors.get(0).getValue();
+            while (d < debtors.size() && c < creditors.size()) {
+                long amount = Math.min(debt, credit);
+                pay(payments, metal.getKey(), debtors.get(d).getKey(), creditors.get(c).getKey(), amount);
+
+                debt -= amount;
+                credit -= amount;
+                if (debt == 0 && ++d < debtors.size()) debt = -debtors.get(d).getValue();
+                if (credit == 0 && ++c < creditors.size()) credit = creditors.get(c).getValue();
+            }
+        }
+        return payments;
+    }
+
+    private static void pay(Map<String, Map<Party, Map<Party, Integer>>> payments, String metalName, Party payer, Party receiver, long weight) throws FlowException {
+        if (weight > Integer.MAX_VALUE)
+            throw new FlowException("Too much " + metalName + " owed by " + payer.getName() + " to settle in one payment.");
+
+        payments.computeIfAbsent(metalName, metal -> new LinkedHashMap<>())
+                .computeIfAbsent(payer, party -> new LinkedHashMap<>())
+                .put(receiver, (int) weight);
+    }
+}
@@ -0,0 +1,29 @@
+package com.template.flows;
+
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.Map;
+
+/**
+ * What the netting agent asks of one party in a settlement: the weight of each metal it has to put in, and its net
+ * position per metal (what it receives less what it pays), which the settlement transaction must match before the
+ * party signs it. Parties that only receive, or only issued the metal being moved, are sent empty maps.
+ */
+@CordaSerializable
+public class NettingInstruction {
+
+    private final Party notary;
+    private final Map<String, Integer> payments;
+    private final Map<String, Long> positions;
+
+    public NettingInstruction(Party notary, Map<String, Integer> payments, Map<String, Long> positions) {
+        this.notary = notary;
+        this.payments = payments;
+        this.positions = positions;
+    }
+
+    public Party getNotary() {return notary;}
+    public Map<String, Integer> getPayments() {return payments;}
+    public Map<String, Long> getPositions() {return positions;}
+}
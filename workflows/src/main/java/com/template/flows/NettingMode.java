@@ -0,0 +1,14 @@
+package com.template.flows;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * How {@link SettleNetting} offsets the pending transfers against each other before settling them.
+ */
+@CordaSerializable
+public enum NettingMode {
+    // Net the transfers between each pair of parties, so each pair settles at most one payment per metal.
+    BILATERAL,
+    // Net each party's transfers against everyone, so each metal settles in at most one payment fewer than there are parties.
+    MULTILATERAL
+}
@@ -0,0 +1,86 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.schemas.IssuerReportSchemaV1.PendingIssuerReport;
+import com.template.services.IssuerReportService;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+
+/**
+ * Sends one batch of the transfers recorded by the {@link IssuerReportService} to an issuer, or to each issuer in
+ * turn, and deletes the ones each issuer acknowledges. Returns the number of acknowledged reports.
+ *
+ * The service periodically starts this flow once per issuer, so that an issuer that does not answer only holds up
+ * its own reports. It can also be started by hand for every issuer.
+ */
+@InitiatingFlow
+@StartableByRPC
+@StartableByService
+public class ReportToIssuers extends FlowLogic<Integer> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportToIssuers.class);
+
+    private final Party onlyIssuer;
+
+    public ReportToIssuers() {
+        this(null);
+    }
+
+    /** Reports only to {@code issuer}, or to every issuer if it is null. */
+    public ReportToIssuers(Party issuer) {
+        this.onlyIssuer = issuer;
+    }
+
+    @Suspendable
+    @Override
+    public Integer call() throws FlowException {
+        // Initiator flow logic goes here.
+
+        IssuerReportService reports = getServiceHub().cordaService(IssuerReportService.class);
+        int acknowledged = 0;
+
+        List<Party> issuers = onlyIssuer == null ? reports.pendingIssuers() : Collections.singletonList(onlyIssuer);
+        for (Party issuer : issuers) {
+            List<PendingIssuerReport> pending = reports.pending(issuer);
+            if (pending.isEmpty()) continue;
+
+            List<SignedTransaction> transactions = new ArrayList<>(pending.size());
+            for (PendingIssuerReport report : pending) {
+                SignedTransaction transaction = getServiceHub().getValidatedTransactions().getTransaction(SecureHash.parse(report.getTxId()));
+                if (transaction == null) throw new FlowException("Transaction " + report.getTxId() + " is not recorded");
+                transactions.add(transaction);
+            }
+
+            // Tell the issuer how many transactions to expect, send them, and wait for its acknowledgement
+            FlowSession session = initiateFlow(issuer);
+            session.send(transactions.size());
+            for (SignedTransaction transaction : transactions) {
+                subFlow(new SendTransactionFlow(session, transaction));
+            }
+            List<SecureHash> received = session.receive(List.class).unwrap(ids -> {
+                List<SecureHash> txIds = new ArrayList<>(ids.size());
+                for (Object id : ids) txIds.add((SecureHash) id);
+                return txIds;
+            });
+
+            reports.acknowledged(issuer, received);
+            acknowledged += received.size();
+        }
+
+        logger.info("Reported {} transfers to {} issuers", acknowledged, issuers.size());
+
+        return acknowledged;
+    }
+}
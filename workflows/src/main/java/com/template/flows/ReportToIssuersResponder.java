@@ -0,0 +1,49 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.transactions.SignedTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(ReportToIssuers.class)
+public class ReportToIssuersResponder extends FlowLogic<Void> {
+    private static final Logger logger = LoggerFactory.getLogger(ReportToIssuersResponder.class);
+
+    private FlowSession otherPartySession;
+
+    public ReportToIssuersResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public Void call() throws FlowException {
+        // Responder flow logic goes here.
+
+        int transactions = otherPartySession.receive(Integer.class).unwrap(count -> {
+            if (count < 1) throw new IllegalArgumentException("Expected at least one transaction");
+            return count;
+        });
+
+        // Transactions already recorded, because an earlier report was not acknowledged, are simply acknowledged again.
+        List<SecureHash> received = new ArrayList<>(transactions);
+        for (int i = 0; i < transactions; i++) {
+            SignedTransaction transaction = subFlow(new ReceiveTransactionFlow(otherPartySession, true, StatesToRecord.ONLY_RELEVANT));
+            received.add(transaction.getId());
+        }
+        otherPartySession.send(received);
+
+        logger.info("Received {} reported Metal transfers.", transactions);
+
+        return null;
+    }
+}
@@ -1,85 +1,91 @@
 package com.template.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.FlowMetricsService;
 import com.template.states.MetalState;
-import net.corda.core.contracts.StateAndRef;
 import net.corda.core.flows.FlowException;
 import net.corda.core.flows.FlowLogic;
 import net.corda.core.flows.InitiatingFlow;
 import net.corda.core.flows.StartableByRPC;
+import net.corda.core.identity.Party;
 import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
 import net.corda.core.node.services.vault.QueryCriteria;
-import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.node.services.vault.Sort;
 
-import java.util.List;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.MAX_PAGE_SIZE;
 
 // ******************
 // * Initiator flow *
 // ******************
+
+/**
+ * Returns one page of the {@link MetalState}s in the vault.
+ *
+ * The states are ordered by the time they were recorded (then by state ref), so pages are stable while new states
+ * arrive and a caller can walk the whole vault with a bounded amount of memory on both sides.
+ */
 @InitiatingFlow
 @StartableByRPC
-public class SearchVault extends FlowLogic<Void> {
-
-
-    void searchForAllState () {
+public class SearchVault extends FlowLogic<MetalStatePage> {
 
-        //    ----------------------------------------------- Search for CONSUMED States-----------------------------------------------
+    public static final int DEFAULT_PAGE_SIZE = 200;
 
+    private final Vault.StateStatus status;
+    private final String metalName;
+    private final Party owner;
+    private final int pageNumber;
+    private final int pageSize;
 
-        QueryCriteria consumedCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED);
-        List<StateAndRef<MetalState>> consumedMetalStates = getServiceHub().getVaultService().queryBy(MetalState.class, consumedCriteria).getStates();
-
-        if (consumedMetalStates.size() < 1) {
-            System.out.println("\n No CONSUMED Metal States found.");
-        } else {
-            System.out.println("\n Total CONSUMED Metal States found = " + consumedMetalStates.size());
-        }
-
-        int c = consumedMetalStates.size();
-        for (int i=0; i<c; i++) {
-            System.out.println("\n Name: " + consumedMetalStates.get(i).getState().getData().getMetalName());
-            System.out.println(" Owner: " + consumedMetalStates.get(i).getState().getData().getOwner());
-            System.out.println(" Weight: " + consumedMetalStates.get(i).getState().getData().getWeight());
-            System.out.println(" Issuer: " + consumedMetalStates.get(i).getState().getData().getIssuer());
-        }
+    public SearchVault() {
+        this(Vault.StateStatus.UNCONSUMED, null, null, DEFAULT_PAGE_NUM, DEFAULT_PAGE_SIZE);
+    }
 
+    // Restricts the search to one metal and/or one owner. Either filter may be null.
+    public SearchVault(String metalName, Party owner) {
+        this(Vault.StateStatus.UNCONSUMED, metalName, owner, DEFAULT_PAGE_NUM, DEFAULT_PAGE_SIZE);
+    }
 
+    public SearchVault(Vault.StateStatus status, int pageNumber, int pageSize) {
+        this(status, null, null, pageNumber, pageSize);
+    }
 
+    public SearchVault(Vault.StateStatus status, String metalName, Party owner, int pageNumber, int pageSize) {
+        this.status = status;
+        this.metalName = metalName;
+        this.owner = owner;
+        this.pageNumber = pageNumber;
+        this.pageSize = pageSize;
+    }
 
-        //    ----------------------------------------------- Search for UNCONSUMED States-----------------------------------------------
+    //    ----------------------------------------------- Search for one page of States-----------------------------------------------
 
+    MetalStatePage searchForPage() throws FlowException {
 
+        if (pageNumber < DEFAULT_PAGE_NUM)
+            throw new FlowException("Page numbers start at " + DEFAULT_PAGE_NUM);
 
-        QueryCriteria unConsumedCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
-        List<StateAndRef<MetalState>> unConsumedMetalStates = getServiceHub().getVaultService().queryBy(MetalState.class, unConsumedCriteria).getStates();
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE)
+            throw new FlowException("Page size must be between 1 and " + MAX_PAGE_SIZE);
 
-        if (unConsumedMetalStates.size() < 1) {
-            System.out.println("\n No UNCONSUMED Metal States found.");
-        } else {
-            System.out.println("\n Total UNCONSUMED Metal States found = " + unConsumedMetalStates.size());
-        }
+        QueryCriteria criteria = MetalQueries.metalStates(status, metalName, null, owner, null);
 
-        int u = unConsumedMetalStates.size();
-        for (int i=0; i<u; i++) {
-            System.out.println("\n Name: " + unConsumedMetalStates.get(i).getState().getData().getMetalName());
-            System.out.println(" Owner: " + unConsumedMetalStates.get(i).getState().getData().getOwner());
-            System.out.println(" Weight: " + unConsumedMetalStates.get(i).getState().getData().getWeight());
-            System.out.println(" Issuer: " + unConsumedMetalStates.get(i).getState().getData().getIssuer());
-        }
+        Sort sort = MetalQueries.byRecordedTime();
 
+        Vault.Page<MetalState> page = getServiceHub().cordaService(FlowMetricsService.class).timeVaultQuery("SearchVault.page",
+                () -> getServiceHub().getVaultService().queryBy(MetalState.class, criteria, new PageSpecification(pageNumber, pageSize), sort));
 
+        return new MetalStatePage(page.getStates(), page.getTotalStatesAvailable(), pageNumber, pageSize);
     }
 
 
 
     @Suspendable
     @Override
-    public Void call() throws FlowException {
+    public MetalStatePage call() throws FlowException {
         // Initiator flow logic goes here.
 
-        searchForAllState();
-
-
-        return null;
+        return searchForPage();
     }
 }
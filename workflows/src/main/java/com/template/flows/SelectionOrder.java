@@ -0,0 +1,19 @@
+package com.template.flows;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * How {@link MetalSelector} chooses between candidate states of equal weight.
+ *
+ * Flows running concurrently on the same node see the same candidates. Spreading their choices over the equal
+ * candidates means they rarely reach for the same state, and so rarely have to retry their soft-lock reservation.
+ */
+@CordaSerializable
+public enum SelectionOrder {
+    // Always take the first candidate in database order.
+    FIRST,
+    // Take a random candidate.
+    RANDOM,
+    // Start from an offset derived from the flow's lock id, so concurrent flows are striped over the candidates.
+    STRIPED
+}
@@ -0,0 +1,278 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalContract;
+import com.template.metrics.FlowInstrumentation;
+import com.template.services.NettingService;
+import com.template.services.NotarySelectionService;
+import com.template.states.MetalState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// ******************
+// * Initiator flow *
+// ******************
+
+/**
+ * Settles the transfer intents held by this node's {@link NettingService} in a single transaction.
+ *
+ * The intents are netted per metal with {@link NetObligations}, so a day of offsetting transfers between traders
+ * becomes one notarised transaction with at most one payment per pair of parties (BILATERAL) or per party out of
+ * balance (MULTILATERAL). Each party is sent a {@link NettingInstruction}; the payers send back the metal they put
+ * in, check that the transaction moves exactly their net position, and sign it under the Settle command. The
+ * receivers and the issuers of the metal that moves receive the transaction through finality.
+ *
+ * If a payer, the netting agent included, cannot cover its net position, its intents are rejected (see
+ * {@link NettingService#reject}) and the flow fails with an {@link InsufficientMetalException}. Starting it again
+ * settles the remaining intents without them. A flow that fails releases the intents it claimed; one that resumes
+ * from its checkpoint after a restart still holds them, so no other settlement pays them in the meantime.
+ *
+ * Returns the settlement transaction, or <b>null</b> if there was nothing to settle or the intents cancelled out, as
+ * there is then no transaction to return.
+ */
+@InitiatingFlow
+@StartableByRPC
+@StartableByService
+public class SettleNetting extends FlowLogic<SignedTransaction> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SettleNetting.class);
+
+    private final NettingMode mode;
+
+    public SettleNetting() {
+        this(NettingMode.MULTILATERAL);
+    }
+
+    public SettleNetting(NettingMode mode) {
+        this.mode = mode;
+    }
+
+    private final ProgressTracker.Step CLAIMING_INTENTS = new ProgressTracker.Step("Claiming and netting pending transfer intents.");
+    private final ProgressTracker.Step RETRIEVING_NOTARY = new ProgressTracker.Step("Retrieving the Notary.");
+    private final ProgressTracker.Step COUNTERPARTY_SESSION = new ProgressTracker.Step("Sending flow to counterparty.");
+    private final ProgressTracker.Step COLLECTING_INPUTS = new ProgressTracker.Step("Collecting the metal the payers put in.");
+    private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
+    private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
+    private final ProgressTracker.Step COLLECTING_SIGNATURES = new ProgressTracker.Step("Collecting the payers' signatures.");
+    private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction");
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            CLAIMING_INTENTS,
+            RETRIEVING_NOTARY,
+            COUNTERPARTY_SESSION,
+            COLLECTING_INPUTS,
+            GENERATING_TRANSACTION,
+            SIGNING_TRANSACTION,
+            COLLECTING_SIGNATURES,
+            FINALISING_TRANSACTION
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    //    ----------------------------------------------- Collect Inputs Starts-----------------------------------------------
+
+    // The metal a payer puts in, checked against what it has to pay before any outputs are generated from it.
+    @Suspendable
+    private List<StateAndRef<MetalState>> receiveInputs(FlowSession session, Party payer, Map<String, Integer> payments, Party notary) throws FlowException {
+        List<StateAndRef<MetalState>> inputs = subFlow(new ReceiveStateAndRefFlow<MetalState>(session));
+
+        Map<String, Long> weights = new LinkedHashMap<>();
+        for (StateAndRef<MetalState> input : inputs) {
+            MetalState metalState = input.getState().getData();
+            if (!metalState.getOwner().equals(payer))
+                throw new FlowException(payer.getName() + " put in metal it does not own.");
+            if (!input.getState().getNotary().equals(notary))
+                throw new FlowException(payer.getName() + " put in metal on another notary.");
+            weights.merge(metalState.getMetalName(), (long) metalState.getWeight(), Long::sum);
+        }
+
+        for (Map.Entry<String, Integer> payment : payments.entrySet()) {
+            long putIn = weights.getOrDefault(payment.getKey(), 0L);
+            if (putIn < payment.getValue())
+                throw new InsufficientMetalException(payment.getKey(), payment.getValue(), putIn);
+        }
+        return inputs;
+    }
+
+    // Our own share, when the netting agent owes metal too.
+    @Suspendable
+    private List<StateAndRef<MetalState>> selectOwnInputs(Map<String, Integer> payments, Party notary) throws FlowException {
+        MetalSelector selector = new MetalSelector(getServiceHub(), getRunId().getUuid(), SelectionOrder.STRIPED);
+        List<StateAndRef<MetalState>> inputs = new ArrayList<>();
+        for (Map.Entry<String, Integer> payment : payments.entrySet()) {
+            inputs.addAll(selector.select(getOurIdentity(), payment.getKey(), payment.getValue()));
+        }
+        return subFlow(new ChangeInputNotaries(inputs, notary));
+    }
+
+    //    ----------------------------------------------- Collect Inputs Ends-----------------------------------------------
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        // Initiator flow logic goes here.
+        FlowInstrumentation instrumentation = new FlowInstrumentation(this);
+        NettingService netting = getServiceHub().cordaService(NettingService.class);
+        UUID settlementId = getRunId().getUuid();
+
+        try {
+            // Claim the pending intents and net them
+            instrumentation.step(CLAIMING_INTENTS);
+            List<TransferIntent> intents = netting.claim(settlementId);
+            Map<String, Map<Party, Map<Party, Integer>>> payments = NetObligations.payments(intents, mode);
+
+            // What each party pays per metal, and what it receives less what it pays
+            Map<Party, Map<String, Integer>> paid = new LinkedHashMap<>();
+            Map<Party, Map<String, Long>> positions = new LinkedHashMap<>();
+            int paymentCount = 0;
+            for (Map.Entry<String, Map<Party, Map<Party, Integer>>> metal : payments.entrySet()) {
+                for (Map.Entry<Party, Map<Party, Integer>> payer : metal.getValue().entrySet()) {
+                    for (Map.Entry<Party, Integer> receiver : payer.getValue().entrySet()) {
+                        paid.computeIfAbsent(payer.getKey(), party -> new LinkedHashMap<>())
+                                .merge(metal.getKey(), receiver.getValue(), Math::addExact);
+                        positions.computeIfAbsent(payer.getKey(), party -> new LinkedHashMap<>())
+                                .merge(metal.getKey(), (long) -receiver.getValue(), Long::sum);
+                        positions.computeIfAbsent(receiver.getKey(), party -> new LinkedHashMap<>())
+                                .merge(metal.getKey(), (long) receiver.getValue(), Long::sum);
+                        paymentCount++;
+                    }
+                }
+            }
+
+            logger.info("Netted {} transfer intents into {} payments", intents.size(), paymentCount);
+
+            if (paymentCount == 0) {
+                netting.settled(settlementId);
+                instrumentation.succeeded();
+                return null;
+            }
+
+
+            // Choose the Notary the settlement goes through
+            instrumentation.step(RETRIEVING_NOTARY);
+            NotarySelectionService notaries = getServiceHub().cordaService(NotarySelectionService.class);
+            Party notary = notaries.select(getOurIdentity());
+
+
+            // Send every party its part of the settlement
+            instrumentation.step(COUNTERPARTY_SESSION);
+            Map<Party, FlowSession> sessions = new LinkedHashMap<>();
+            for (Map.Entry<Party, Map<String, Long>> position : positions.entrySet()) {
+                if (position.getKey().equals(getOurIdentity())) continue;
+                FlowSession session = initiateFlow(position.getKey());
+                session.send(new NettingInstruction(notary,
+                        paid.getOrDefault(position.getKey(), Collections.emptyMap()), position.getValue()));
+                sessions.put(position.getKey(), session);
+            }
+
+
+            // Collect the metal each payer puts in, setting aside the intents of a payer that cannot cover them
+            instrumentation.step(COLLECTING_INPUTS);
+            Map<Party, List<StateAndRef<MetalState>>> inputsByPayer = new LinkedHashMap<>();
+            for (Map.Entry<Party, Map<String, Integer>> payer : paid.entrySet()) {
+                try {
+                    inputsByPayer.put(payer.getKey(), payer.getKey().equals(getOurIdentity())
+                            ? selectOwnInputs(payer.getValue(), notary)
+                            : receiveInputs(sessions.get(payer.getKey()), payer.getKey(), payer.getValue(), notary));
+                } catch (InsufficientMetalException e) {
+                    int rejected = netting.reject(settlementId, payer.getKey(), e.getMessage());
+                    logger.warn("Rejected {} transfer intents of {}, which cannot cover its net position: {}",
+                            rejected, payer.getKey().getName(), e.getMessage());
+                    throw e;
+                }
+            }
+
+
+            // Create transaction builder, paying each payer's receivers out of its own inputs, one metal at a time
+            instrumentation.step(GENERATING_TRANSACTION);
+            List<PublicKey> signers = new ArrayList<>();
+            signers.add(getOurIdentity().getOwningKey());
+            for (Party payer : paid.keySet()) {
+                if (!payer.equals(getOurIdentity())) signers.add(payer.getOwningKey());
+            }
+            TransactionBuilder txB = new TransactionBuilder(notary)
+                    .addCommand(new Command<>(new MetalContract.Settle(), signers));
+
+            Set<Party> issuers = new LinkedHashSet<>();
+            for (Map.Entry<Party, List<StateAndRef<MetalState>>> payer : inputsByPayer.entrySet()) {
+                for (Map.Entry<String, Integer> payment : paid.get(payer.getKey()).entrySet()) {
+                    List<StateAndRef<MetalState>> metalInputs = new ArrayList<>();
+                    for (StateAndRef<MetalState> input : payer.getValue()) {
+                        if (input.getState().getData().getMetalName().equals(payment.getKey())) metalInputs.add(input);
+                    }
+
+                    for (StateAndRef<MetalState> input : metalInputs) {
+                        txB.addInputState(input);
+                        issuers.add(input.getState().getData().getIssuer());
+                    }
+                    for (MetalState output : MetalSelector.generateOutputs(
+                            metalInputs, payments.get(payment.getKey()).get(payer.getKey()), payer.getKey())) {
+                        txB.addOutputState(output, MetalContract.CID);
+                    }
+                }
+            }
+
+            // The issuers of the metal that moves are participants too
+            for (Party issuer : issuers) {
+                if (issuer.equals(getOurIdentity()) || sessions.containsKey(issuer)) continue;
+                FlowSession session = initiateFlow(issuer);
+                session.send(new NettingInstruction(notary, Collections.emptyMap(), Collections.emptyMap()));
+                sessions.put(issuer, session);
+            }
+
+
+            // Sign the transaction
+            instrumentation.step(SIGNING_TRANSACTION);
+            SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
+
+
+            // Collect the payers' signatures
+            instrumentation.step(COLLECTING_SIGNATURES);
+            List<FlowSession> payerSessions = new ArrayList<>();
+            for (Party payer : paid.keySet()) {
+                if (!payer.equals(getOurIdentity())) payerSessions.add(sessions.get(payer));
+            }
+            if (!payerSessions.isEmpty())
+                signedTx = subFlow(new CollectSignaturesFlow(signedTx, payerSessions));
+
+
+            // Finalize and send to every party involved
+            instrumentation.step(FINALISING_TRANSACTION);
+            long finalityStarted = System.nanoTime();
+            SignedTransaction finalTx = subFlow(new FinalityFlow(signedTx, new ArrayList<>(sessions.values())));
+            notaries.recordLatency(notary, (System.nanoTime() - finalityStarted) / 1000);
+
+            netting.settled(settlementId);
+            instrumentation.succeeded();
+            return finalTx;
+        } catch (FlowException | RuntimeException e) {
+            netting.release(settlementId);
+            // The node rolls back the database transaction of a failing flow, so commit the release and any
+            // rejections by checkpointing first.
+            sleep(Duration.ZERO);
+            instrumentation.failed();
+            throw e;
+        }
+    }
+}
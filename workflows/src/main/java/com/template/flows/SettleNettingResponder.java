@@ -0,0 +1,125 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalContract;
+import com.template.states.MetalState;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.flows.*;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(SettleNetting.class)
+public class SettleNettingResponder extends FlowLogic<SignedTransaction> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SettleNettingResponder.class);
+
+    private FlowSession otherPartySession;
+
+    public SettleNettingResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        // Responder flow logic goes here.
+
+        NettingInstruction instruction = otherPartySession.receive(NettingInstruction.class).unwrap(received -> received);
+
+        // Parties that only receive metal, or only issued it, just record the settlement
+        if (instruction.getPayments().isEmpty()) {
+            logger.info("Received netted Metal settlement.");
+            return subFlow(new ReceiveFinalityFlow(otherPartySession));
+        }
+
+        // Select what we owe, on the notary the settlement goes through, and send it to the netting agent
+        MetalSelector selector = new MetalSelector(getServiceHub(), getRunId().getUuid(), SelectionOrder.STRIPED);
+        List<StateAndRef<MetalState>> inputs = new ArrayList<>();
+        try {
+            for (Map.Entry<String, Integer> payment : instruction.getPayments().entrySet()) {
+                inputs.addAll(selector.select(getOurIdentity(), payment.getKey(), payment.getValue()));
+            }
+        } catch (InsufficientMetalException e) {
+            // Putting in nothing tells the netting agent we are short, and it sets our intents aside
+            logger.warn("Cannot cover our netted payments: {}", e.getMessage());
+            subFlow(new SendStateAndRefFlow(otherPartySession, Collections.emptyList()));
+            return null;
+        }
+        inputs = subFlow(new ChangeInputNotaries(inputs, instruction.getNotary()));
+        subFlow(new SendStateAndRefFlow(otherPartySession, inputs));
+
+        // Sign only if the settlement moves exactly our net position
+        Set<StateRef> ourInputs = new HashSet<>();
+        for (StateAndRef<MetalState> input : inputs) {
+            ourInputs.add(input.getRef());
+        }
+        SignedTransaction signedTx = subFlow(new CheckSettlement(otherPartySession, ourInputs, instruction.getPositions()));
+
+        logger.info("Settled netted Metal transfers.");
+
+        return subFlow(new ReceiveFinalityFlow(otherPartySession, signedTx.getId()));
+    }
+
+    private static class CheckSettlement extends SignTransactionFlow {
+        private final Set<StateRef> ourInputs;
+        private final Map<String, Long> positions;
+
+        CheckSettlement(FlowSession otherPartySession, Set<StateRef> ourInputs, Map<String, Long> positions) {
+            super(otherPartySession);
+            this.ourInputs = ourInputs;
+            this.positions = positions;
+        }
+
+        @Override
+        protected void checkTransaction(SignedTransaction stx) throws FlowException {
+            if (!(stx.getTx().getCommands().get(0).getValue() instanceof MetalContract.Settle))
+                throw new FlowException("Expected a settlement.");
+
+            LedgerTransaction ltx;
+            try {
+                ltx = stx.toLedgerTransaction(getServiceHub(), false);
+            } catch (SignatureException e) {
+                throw new FlowException("Settlement " + stx.getId() + " has an invalid signature", e);
+            }
+
+            // Our net change per metal: what we get out of the settlement less what we put in
+            Map<String, Long> received = new LinkedHashMap<>();
+            for (StateAndRef<ContractState> input : ltx.getInputs()) {
+                if (!(input.getState().getData() instanceof MetalState)) continue;
+                MetalState metalState = (MetalState) input.getState().getData();
+                if (!metalState.getOwner().equals(getOurIdentity())) continue;
+                if (!ourInputs.contains(input.getRef()))
+                    throw new FlowException("Settlement spends metal of ours that we did not put in.");
+                received.merge(metalState.getMetalName(), (long) -metalState.getWeight(), Long::sum);
+            }
+            for (MetalState output : ltx.outputsOfType(MetalState.class)) {
+                if (output.getOwner().equals(getOurIdentity()))
+                    received.merge(output.getMetalName(), (long) output.getWeight(), Long::sum);
+            }
+
+            Set<String> metals = new LinkedHashSet<>(received.keySet());
+            metals.addAll(positions.keySet());
+            for (String metalName : metals) {
+                if (received.getOrDefault(metalName, 0L).longValue() != positions.getOrDefault(metalName, 0L).longValue())
+                    throw new FlowException("Settlement does not match our net position in " + metalName + ".");
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.NettingService;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+
+import java.util.UUID;
+
+// ******************
+// * Initiator flow *
+// ******************
+
+/**
+ * Asks the netting agent to transfer metal of ours to a new owner at its next {@link SettleNetting}, instead of
+ * transferring it now. Nothing moves on the ledger until then; the weight only has to be in our vault at settlement,
+ * after the intent has been offset against the transfers made to us. Returns the id the agent gave the intent.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class SubmitTransferIntent extends FlowLogic<UUID> {
+
+    private final String metalName;
+    private final int weight;
+    private final Party newOwner;
+    private final Party nettingAgent;
+
+    public SubmitTransferIntent(String metalName, int weight, Party newOwner, Party nettingAgent) {
+        this.metalName = metalName;
+        this.weight = weight;
+        this.newOwner = newOwner;
+        this.nettingAgent = nettingAgent;
+    }
+
+    @Suspendable
+    @Override
+    public UUID call() throws FlowException {
+        // Initiator flow logic goes here.
+
+        if (weight <= 0)
+            throw new FlowException("Transferred weight must be positive.");
+
+        TransferIntent intent = new TransferIntent(metalName, weight, getOurIdentity(), newOwner);
+        if (nettingAgent.equals(getOurIdentity()))
+            return getServiceHub().cordaService(NettingService.class).submit(intent);
+
+        FlowSession session = initiateFlow(nettingAgent);
+        return session.sendAndReceive(UUID.class, intent).unwrap(intentId -> intentId);
+    }
+}
@@ -0,0 +1,46 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.services.NettingService;
+import net.corda.core.flows.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(SubmitTransferIntent.class)
+public class SubmitTransferIntentResponder extends FlowLogic<Void> {
+    private static final Logger logger = LoggerFactory.getLogger(SubmitTransferIntentResponder.class);
+
+    private FlowSession otherPartySession;
+
+    public SubmitTransferIntentResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public Void call() throws FlowException {
+        // Responder flow logic goes here.
+
+        TransferIntent intent = otherPartySession.receive(TransferIntent.class).unwrap(received -> {
+            if (!received.getPayer().equals(otherPartySession.getCounterparty()))
+                throw new FlowException("Only the payer can submit a transfer intent.");
+            if (!received.getMetalName().equals("Gold") && !received.getMetalName().equals("Silver"))
+                throw new FlowException("Metal is not Gold or Silver.");
+            if (received.getWeight() <= 0)
+                throw new FlowException("Transferred weight must be positive.");
+            return received;
+        });
+
+        UUID intentId = getServiceHub().cordaService(NettingService.class).submit(intent);
+        otherPartySession.send(intentId);
+
+        logger.debug("Received transfer intent {} from {}", intentId, intent.getPayer().getName());
+
+        return null;
+    }
+}
@@ -0,0 +1,29 @@
+package com.template.flows;
+
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * A transfer a trader wants made, held by the netting agent until {@link SettleNetting} settles it together with
+ * every other pending transfer.
+ */
+@CordaSerializable
+public class TransferIntent {
+
+    private final String metalName;
+    private final int weight;
+    private final Party payer;
+    private final Party receiver;
+
+    public TransferIntent(String metalName, int weight, Party payer, Party receiver) {
+        this.metalName = metalName;
+        this.weight = weight;
+        this.payer = payer;
+        this.receiver = receiver;
+    }
+
+    public String getMetalName() {return metalName;}
+    public int getWeight() {return weight;}
+    public Party getPayer() {return payer;}
+    public Party getReceiver() {return receiver;}
+}
@@ -2,18 +2,34 @@ package com.template.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.template.contracts.MetalContract;
+import com.template.metrics.FlowInstrumentation;
+import com.template.services.IssuerReportService;
+import com.template.services.NotarySelectionService;
+import com.template.services.RequestDedupeService;
 import com.template.states.MetalState;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.crypto.TransactionSignature;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.NonEmptySet;
 import net.corda.core.utilities.ProgressTracker;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.SignatureException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 // ******************
 // * Initiator flow *
@@ -22,29 +38,66 @@ import java.util.List;
 @StartableByRPC
 public class TransferMetal extends FlowLogic<SignedTransaction> {
 
+    private static final Logger logger = LoggerFactory.getLogger(TransferMetal.class);
+
+    // A transfer whose inputs a notary reports as already spent is retried with other inputs this many times.
+    static final int MAX_CONFLICT_RETRIES = 3;
+    static final long BASE_BACKOFF_MILLIS = 50;
+    static final long MAX_BACKOFF_MILLIS = 1000;
+
     private String metalName;
     private int weight;
     private Party newOwner;
-    private int input = 0;
+    private SelectionOrder selectionOrder;
+    private IssuerNotification issuerNotification;
+    private String clientRequestId;
+    private final Set<StateRef> spentElsewhere = new HashSet<>();
 
     public TransferMetal(String metalName, int weight, Party newOwner) {
+        this(metalName, weight, newOwner, SelectionOrder.STRIPED);
+    }
+
+    public TransferMetal(String metalName, int weight, Party newOwner, SelectionOrder selectionOrder) {
+        this(metalName, weight, newOwner, selectionOrder, IssuerNotification.SYNCHRONOUS);
+    }
+
+    public TransferMetal(String metalName, int weight, Party newOwner, SelectionOrder selectionOrder, IssuerNotification issuerNotification) {
+        this(metalName, weight, newOwner, selectionOrder, issuerNotification, null);
+    }
+
+    public TransferMetal(String metalName, int weight, Party newOwner, String clientRequestId) {
+        this(metalName, weight, newOwner, SelectionOrder.STRIPED, IssuerNotification.SYNCHRONOUS, clientRequestId);
+    }
+
+    /**
+     * Transfers at most once per {@code clientRequestId}: starting the flow again with the same id returns the
+     * transaction of the first transfer. See {@link RequestDedupeService}.
+     */
+    public TransferMetal(String metalName, int weight, Party newOwner, SelectionOrder selectionOrder, IssuerNotification issuerNotification, String clientRequestId) {
         this.metalName = metalName;
         this.weight = weight;
         this.newOwner = newOwner;
+        this.selectionOrder = selectionOrder;
+        this.issuerNotification = issuerNotification;
+        this.clientRequestId = clientRequestId;
     }
 
     private final ProgressTracker.Step RETRIEVING_NOTARY = new ProgressTracker.Step("Retrieving the Notary.");
+    private final ProgressTracker.Step SELECTING_INPUTS = new ProgressTracker.Step("Selecting metal states to spend.");
     private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
     private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
     private final ProgressTracker.Step COUNTERPARTY_SESSION = new ProgressTracker.Step("Sending flow to counterparty.");
     private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction");
+    private final ProgressTracker.Step RETRYING_AFTER_CONFLICT = new ProgressTracker.Step("Retrying with other inputs after a notary conflict.");
 
     private final ProgressTracker progressTracker = new ProgressTracker(
+            SELECTING_INPUTS,
             RETRIEVING_NOTARY,
             GENERATING_TRANSACTION,
             SIGNING_TRANSACTION,
             COUNTERPARTY_SESSION,
-            FINALISING_TRANSACTION
+            FINALISING_TRANSACTION,
+            RETRYING_AFTER_CONFLICT
     );
 
     @Override
@@ -52,85 +105,188 @@ public class TransferMetal extends FlowLogic<SignedTransaction> {
         return progressTracker;
     }
 
-    //    ----------------------------------------------- Check for Metal States Starts-----------------------------------------------
-
-    StateAndRef<MetalState> checkForMetalStates() throws FlowException {
+    //    ----------------------------------------------- Select Metal States Starts-----------------------------------------------
 
+    List<StateAndRef<MetalState>> selectInputs() throws FlowException {
 
-        QueryCriteria generalCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        // The inputs are soft-locked under our run id until this flow ends, so concurrent transfers pick other states.
+        List<StateAndRef<MetalState>> inputs = new MetalSelector(getServiceHub(), getRunId().getUuid(), selectionOrder)
+                .exclude(spentElsewhere)
+                .select(getOurIdentity(), metalName, weight);
 
-        List<StateAndRef<MetalState>> MetalStates = getServiceHub().getVaultService().queryBy(MetalState.class, generalCriteria).getStates();
+        logger.debug("Selected {} {} inputs for a transfer of {}", inputs.size(), metalName, weight);
 
-        boolean inputFound = false;
-        int t = MetalStates.size();
+        return inputs;
+    }
 
-        for (int x = 0; x < t; x++) {
-            if (MetalStates.get(x).getState().getData().getMetalName().equals(metalName)
-            && MetalStates.get(x).getState().getData().getWeight() == weight) {
-                input = x;
-                inputFound = true;
-            }
-        }
+    //    ----------------------------------------------- Select Metal States Ends-----------------------------------------------
 
+    //    ----------------------------------------------- Notary Conflict Retry Starts-----------------------------------------------
 
-        if (inputFound) {
-            System.out.println("\n Input Found");
-        } else {
-            System.out.println("\n Input not found");
-            throw new FlowException();
+    /**
+     * Releases our soft locks on the inputs the notary did not report as spent, so they can be selected again. The
+     * spent ones stay locked, so other flows do not pick them either until the vault sees them consumed.
+     */
+    private void releaseUnspent(List<StateAndRef<MetalState>> inputStates, Set<StateRef> spent) {
+        List<StateRef> unspent = new ArrayList<>(inputStates.size());
+        for (StateAndRef<MetalState> inputState : inputStates) {
+            if (!spent.contains(inputState.getRef())) unspent.add(inputState.getRef());
         }
-
-        return MetalStates.get(input);
+        if (!unspent.isEmpty())
+            getServiceHub().getVaultService().softLockRelease(getRunId().getUuid(), NonEmptySet.copyOf(unspent));
     }
 
+    // Full jitter: a random wait up to an exponentially growing cap, so that flows that collided do not collide again.
+    private static Duration backoff(int retries) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << retries);
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
 
+    //    ----------------------------------------------- Notary Conflict Retry Ends-----------------------------------------------
 
-    //    ----------------------------------------------- Check for Metal States Ends-----------------------------------------------
+    //    ----------------------------------------------- Asynchronous Issuer Notification Starts-----------------------------------------------
 
+    /**
+     * Does what {@link FinalityFlow} does for the given sessions only. FinalityFlow insists on a session for every
+     * participant, and the issuers are participants of every MetalState; here they are queued for
+     * {@link ReportToIssuers} instead. The receiver's {@link ReceiveFinalityFlow} accepts the transaction as usual.
+     */
     @Suspendable
-    @Override
-    public SignedTransaction call() throws FlowException {
-        // Initiator flow logic goes here.
+    private SignedTransaction finaliseWithoutIssuers(SignedTransaction signedTx, List<FlowSession> sessions, Set<Party> issuers) throws FlowException {
+        try {
+            signedTx.verify(getServiceHub(), false);
+        } catch (SignatureException e) {
+            throw new FlowException("Transaction " + signedTx.getId() + " has an invalid signature", e);
+        }
 
-        // Retrieve Notary Identity
-        progressTracker.setCurrentStep(RETRIEVING_NOTARY);
-        Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+        List<? extends TransactionSignature> notarySignatures = subFlow(new NotaryFlow.Client(signedTx));
+        SignedTransaction notarisedTx = signedTx.withAdditionalSignatures(new ArrayList<TransactionSignature>(notarySignatures));
 
-        StateAndRef<MetalState> inputState = null;
+        getServiceHub().recordTransactions(notarisedTx);
+        if (!issuers.isEmpty())
+            getServiceHub().cordaService(IssuerReportService.class).enqueue(notarisedTx.getId(), issuers);
+
+        for (FlowSession session : sessions) {
+            subFlow(new SendTransactionFlow(session, notarisedTx));
+        }
+        return notarisedTx;
+    }
 
-        inputState = checkForMetalStates();
+    //    ----------------------------------------------- Asynchronous Issuer Notification Ends-----------------------------------------------
 
-        Party issuer = inputState.getState().getData().getIssuer();
+    /** Builds, signs and finalises one attempt at the transfer from the given inputs. */
+    @Suspendable
+    private SignedTransaction transfer(FlowInstrumentation instrumentation, List<StateAndRef<MetalState>> inputStates) throws FlowException {
+        Party notary = inputStates.get(0).getState().getNotary();
 
         //Create transaction components
-        MetalState outputState = new MetalState(metalName, weight, issuer, newOwner);
+        List<MetalState> outputStates = MetalSelector.generateOutputs(
+                inputStates, Collections.singletonMap(newOwner, weight), getOurIdentity());
         Command cmd = new Command(new MetalContract.Transfer(), getOurIdentity().getOwningKey());
 
 
         // Create transaction builder
-        progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+        instrumentation.step(GENERATING_TRANSACTION);
         TransactionBuilder txB = new TransactionBuilder(notary)
-                .addOutputState(outputState, MetalContract.CID)
                 .addCommand(cmd);
 
-        txB.addInputState(inputState);
+        for (StateAndRef<MetalState> inputState : inputStates) {
+            txB.addInputState(inputState);
+        }
+        for (MetalState outputState : outputStates) {
+            txB.addOutputState(outputState, MetalContract.CID);
+        }
 
 
         // Sign the transaction
-        progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+        instrumentation.step(SIGNING_TRANSACTION);
         SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
 
 
-        // Create session with CounterParty
-        progressTracker.setCurrentStep(COUNTERPARTY_SESSION);
-        FlowSession otherPartySession = initiateFlow(newOwner);
-        FlowSession mintPartySession = initiateFlow(issuer);
+        // Create sessions with the new owner and, unless they are told later, with the issuers of the metal
+        instrumentation.step(COUNTERPARTY_SESSION);
+        Set<Party> issuers = new LinkedHashSet<>();
+        for (StateAndRef<MetalState> inputState : inputStates) {
+            issuers.add(inputState.getState().getData().getIssuer());
+        }
+        issuers.remove(getOurIdentity());
+
+        Set<Party> counterparties = new LinkedHashSet<>();
+        counterparties.add(newOwner);
+        if (issuerNotification == IssuerNotification.SYNCHRONOUS) counterparties.addAll(issuers);
+        counterparties.remove(getOurIdentity());
+
+        List<FlowSession> sessions = new ArrayList<>(counterparties.size());
+        for (Party counterparty : counterparties) {
+            sessions.add(initiateFlow(counterparty));
+        }
 
 
         // Finalize and send to CounterParty
-        progressTracker.setCurrentStep(FINALISING_TRANSACTION);
-        return subFlow(new FinalityFlow(signedTx, otherPartySession, mintPartySession));
+        instrumentation.step(FINALISING_TRANSACTION);
+        long finalityStarted = System.nanoTime();
+        SignedTransaction finalTx = issuerNotification == IssuerNotification.SYNCHRONOUS
+                ? subFlow(new FinalityFlow(signedTx, sessions))
+                : finaliseWithoutIssuers(signedTx, sessions, issuers);
+        getServiceHub().cordaService(NotarySelectionService.class)
+                .recordLatency(notary, (System.nanoTime() - finalityStarted) / 1000);
+        return finalTx;
+    }
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        // Initiator flow logic goes here.
+
+        // A request that was already handled returns what it returned the first time
+        RequestDedupeService dedupe = clientRequestId == null ? null : getServiceHub().cordaService(RequestDedupeService.class);
+        if (dedupe != null) {
+            SecureHash earlierTx = dedupe.begin("TransferMetal", clientRequestId, getRunId().getUuid());
+            if (earlierTx != null) return getServiceHub().getValidatedTransactions().getTransaction(earlierTx);
+        }
+
+        FlowInstrumentation instrumentation = new FlowInstrumentation(this);
+
+        try {
+            // Select and soft-lock the states to spend
+            instrumentation.step(SELECTING_INPUTS);
+            List<StateAndRef<MetalState>> inputStates = selectInputs();
+
+            // Retry with other inputs while the notary reports some of ours as spent by someone else
+            for (int retries = 0; ; retries++) {
+                // Use the Notary most of the inputs sit on, moving any others onto it
+                instrumentation.step(RETRIEVING_NOTARY);
+                inputStates = subFlow(new ChangeInputNotaries(inputStates));
 
+                try {
+                    SignedTransaction finalTx = transfer(instrumentation, inputStates);
+                    if (dedupe != null) dedupe.completed("TransferMetal", clientRequestId, getRunId().getUuid(), finalTx.getId());
 
+                    instrumentation.succeeded();
+                    return finalTx;
+                } catch (NotaryException e) {
+                    if (!(e.getError() instanceof NotaryError.Conflict)) throw e;
+
+                    // Giving up is recorded as a failure of this step, so its counts show retries and exhaustion
+                    instrumentation.step(RETRYING_AFTER_CONFLICT);
+                    if (retries == MAX_CONFLICT_RETRIES) throw e;
+
+                    NotaryError.Conflict conflict = (NotaryError.Conflict) e.getError();
+                    Set<StateRef> spent = conflict.getConsumedStates().keySet();
+                    releaseUnspent(inputStates, spent);
+                    logger.warn("Notary conflict on transaction {}: inputs {} already spent, retry {} of {}",
+                            conflict.getTxId(), spent, retries + 1, MAX_CONFLICT_RETRIES);
+
+                    spentElsewhere.addAll(spent);
+                    sleep(backoff(retries));
+
+                    instrumentation.step(SELECTING_INPUTS);
+                    inputStates = selectInputs();
+                }
+            }
+        } catch (FlowException | RuntimeException e) {
+            instrumentation.failed();
+            throw e;
+        }
     }
 }
@@ -0,0 +1,210 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalContract;
+import com.template.metrics.FlowInstrumentation;
+import com.template.services.NotarySelectionService;
+import com.template.states.MetalState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// ******************
+// * Initiator flow *
+// ******************
+
+/**
+ * Makes many transfers out of our vault, putting up to {@code batchSize} of them in each notarised transaction.
+ *
+ * Within a transaction the payments are grouped per metal: one input selection covers all the payments of a metal,
+ * and each new owner gets one output per issuer however many payments it receives. The transactions are built and
+ * finalised one after the other, so the change of one can fund the next. A single session is opened per distinct
+ * counterparty for the whole batch; before each transaction the counterparties in it are told that another one
+ * follows, and at the end every counterparty is told that there are no more.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class TransferMetalBatch extends FlowLogic<List<SecureHash>> {
+
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private final List<MetalTransfer> transfers;
+    private final int batchSize;
+
+    public TransferMetalBatch(List<MetalTransfer> transfers) {
+        this(transfers, DEFAULT_BATCH_SIZE);
+    }
+
+    public TransferMetalBatch(List<MetalTransfer> transfers, int batchSize) {
+        this.transfers = transfers;
+        this.batchSize = batchSize;
+    }
+
+    private final ProgressTracker.Step RETRIEVING_NOTARY = new ProgressTracker.Step("Retrieving the Notary.");
+    private final ProgressTracker.Step SELECTING_INPUTS = new ProgressTracker.Step("Selecting metal states to spend.");
+    private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
+    private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
+    private final ProgressTracker.Step COUNTERPARTY_SESSION = new ProgressTracker.Step("Sending flow to counterparty.");
+    private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction");
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            SELECTING_INPUTS,
+            RETRIEVING_NOTARY,
+            GENERATING_TRANSACTION,
+            SIGNING_TRANSACTION,
+            COUNTERPARTY_SESSION,
+            FINALISING_TRANSACTION
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    //    ----------------------------------------------- Batching Starts-----------------------------------------------
+
+    List<List<MetalTransfer>> groupIntoTransactions() throws FlowException {
+
+        if (transfers.isEmpty())
+            throw new FlowException("Nothing to transfer.");
+
+        if (batchSize < 1)
+            throw new FlowException("Batch size must be at least 1.");
+
+        List<List<MetalTransfer>> batches = new ArrayList<>();
+        List<MetalTransfer> batch = new ArrayList<>(batchSize);
+        for (MetalTransfer transfer : transfers) {
+            if (transfer.getWeight() <= 0)
+                throw new FlowException("Transferred weight must be positive.");
+
+            batch.add(transfer);
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty())
+            batches.add(batch);
+
+        return batches;
+    }
+
+    // The payments of a batch, per metal and then per new owner.
+    private static Map<String, Map<Party, Integer>> paymentsByMetal(List<MetalTransfer> batch) throws FlowException {
+        Map<String, Map<Party, Integer>> payments = new LinkedHashMap<>();
+        for (MetalTransfer transfer : batch) {
+            Map<Party, Integer> metalPayments = payments.computeIfAbsent(transfer.getMetalName(), metal -> new LinkedHashMap<>());
+            long total = (long) metalPayments.getOrDefault(transfer.getNewOwner(), 0) + transfer.getWeight();
+            if (total > Integer.MAX_VALUE)
+                throw new FlowException("Too much " + transfer.getMetalName() + " for one transaction.");
+            metalPayments.put(transfer.getNewOwner(), (int) total);
+        }
+        return payments;
+    }
+
+    //    ----------------------------------------------- Batching Ends-----------------------------------------------
+
+    @Suspendable
+    @Override
+    public List<SecureHash> call() throws FlowException {
+        // Initiator flow logic goes here.
+        FlowInstrumentation instrumentation = new FlowInstrumentation(this);
+
+        try {
+            NotarySelectionService notaries = getServiceHub().cordaService(NotarySelectionService.class);
+            List<List<MetalTransfer>> batches = groupIntoTransactions();
+            MetalSelector selector = new MetalSelector(getServiceHub(), getRunId().getUuid(), SelectionOrder.STRIPED);
+            Map<Party, FlowSession> sessions = new LinkedHashMap<>();
+
+            List<SecureHash> transactionIds = new ArrayList<>(batches.size());
+            for (List<MetalTransfer> batch : batches) {
+
+                // Select the inputs and work out the outputs, one metal at a time
+                instrumentation.step(SELECTING_INPUTS);
+                List<StateAndRef<MetalState>> inputStates = new ArrayList<>();
+                List<MetalState> outputStates = new ArrayList<>();
+                Set<Party> counterparties = new LinkedHashSet<>();
+
+                for (Map.Entry<String, Map<Party, Integer>> metalPayments : paymentsByMetal(batch).entrySet()) {
+                    int total = 0;
+                    for (int weight : metalPayments.getValue().values()) total = Math.addExact(total, weight);
+
+                    List<StateAndRef<MetalState>> metalInputs = selector.select(getOurIdentity(), metalPayments.getKey(), total);
+                    inputStates.addAll(metalInputs);
+                    outputStates.addAll(MetalSelector.generateOutputs(metalInputs, metalPayments.getValue(), getOurIdentity()));
+
+                    counterparties.addAll(metalPayments.getValue().keySet());
+                    for (StateAndRef<MetalState> input : metalInputs) {
+                        counterparties.add(input.getState().getData().getIssuer());
+                    }
+                }
+                counterparties.remove(getOurIdentity());
+
+                // Use the Notary most of the inputs sit on, moving any others onto it
+                instrumentation.step(RETRIEVING_NOTARY);
+                inputStates = subFlow(new ChangeInputNotaries(inputStates));
+                Party notary = inputStates.get(0).getState().getNotary();
+
+                // Create transaction builder
+                instrumentation.step(GENERATING_TRANSACTION);
+                TransactionBuilder txB = new TransactionBuilder(notary)
+                        .addCommand(new Command<>(new MetalContract.Transfer(), getOurIdentity().getOwningKey()));
+
+                for (StateAndRef<MetalState> inputState : inputStates) {
+                    txB.addInputState(inputState);
+                }
+                for (MetalState outputState : outputStates) {
+                    txB.addOutputState(outputState, MetalContract.CID);
+                }
+
+
+                // Sign the transaction
+                instrumentation.step(SIGNING_TRANSACTION);
+                SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
+
+
+                // Open a session with each counterparty seen for the first time and tell those in this batch to expect it
+                instrumentation.step(COUNTERPARTY_SESSION);
+                List<FlowSession> batchSessions = new ArrayList<>(counterparties.size());
+                for (Party counterparty : counterparties) {
+                    FlowSession session = sessions.get(counterparty);
+                    if (session == null) {
+                        session = initiateFlow(counterparty);
+                        sessions.put(counterparty, session);
+                    }
+                    session.send(true);
+                    batchSessions.add(session);
+                }
+
+
+                // Finalize and send to the counterparties in this batch
+                instrumentation.step(FINALISING_TRANSACTION);
+                long finalityStarted = System.nanoTime();
+                transactionIds.add(subFlow(new FinalityFlow(signedTx, batchSessions)).getId());
+                notaries.recordLatency(notary, (System.nanoTime() - finalityStarted) / 1000);
+            }
+
+            for (FlowSession session : sessions.values()) {
+                session.send(false);
+            }
+
+            instrumentation.succeeded();
+            return transactionIds;
+        } catch (FlowException | RuntimeException e) {
+            instrumentation.failed();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(TransferMetalBatch.class)
+public class TransferMetalBatchResponder extends FlowLogic<Void> {
+    private static final Logger logger = LoggerFactory.getLogger(TransferMetalBatchResponder.class);
+
+    private FlowSession otherPartySession;
+
+    public TransferMetalBatchResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public Void call() throws FlowException {
+        // Responder flow logic goes here.
+
+        int transactions = 0;
+        while (otherPartySession.receive(Boolean.class).unwrap(more -> more)) {
+            subFlow(new ReceiveFinalityFlow(otherPartySession));
+            transactions++;
+        }
+
+        logger.info("Received {} transferred Metal transactions.", transactions);
+
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package com.template.metrics;
+
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.node.ServiceHub;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads what the node has checkpointed for a running flow. Must be called from inside the flow.
+ *
+ * The size is read through the public {@link ServiceHub#jdbcSession()}, as the length of the flow's row in the node's
+ * {@code node_checkpoints} table, i.e. of the checkpoint written at its last suspension. The CorDapp API has no way to
+ * count suspensions, so that count is read from the node's state machine by reflection. Either read throws when the
+ * node does not look as expected, and {@link FlowInstrumentation} then stops taking that measurement on the node.
+ */
+final class CheckpointInspector {
+
+    private static final String SIZE_QUERY =
+            "SELECT LENGTH(checkpoint_value) FROM node_checkpoints WHERE checkpoint_id = ?";
+
+    private CheckpointInspector() {}
+
+    /** Returns the size in bytes of the flow's last checkpoint, or -1 if it has none yet. */
+    static long checkpointBytes(FlowLogic<?> flow) throws SQLException {
+        // The session belongs to the flow's database transaction and must not be closed.
+        Connection session = flow.getServiceHub().jdbcSession();
+        try (PreparedStatement statement = session.prepareStatement(SIZE_QUERY)) {
+            statement.setString(1, flow.getRunId().getUuid().toString());
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next() ? rows.getLong(1) : -1;
+            }
+        }
+    }
+
+    /** Returns how many times the flow has suspended so far. */
+    static int suspensions(FlowLogic<?> flow) throws ReflectiveOperationException {
+        Object transientState = field(flow.getStateMachine(), "transientState");
+        Object state = field(transientState, "value");
+        Object checkpoint = field(state, "checkpoint");
+        Object numberOfSuspends = field(checkpoint, "numberOfSuspends");
+        if (!(numberOfSuspends instanceof Integer)) throw new NoSuchFieldException("numberOfSuspends");
+        return (Integer) numberOfSuspends;
+    }
+
+    private static Object field(Object target, String name) throws ReflectiveOperationException {
+        if (target == null) throw new NoSuchFieldException(name);
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(target);
+            } catch (NoSuchFieldException e) {
+                // Declared further up.
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+}
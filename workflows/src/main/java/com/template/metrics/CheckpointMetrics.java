@@ -0,0 +1,37 @@
+package com.template.metrics;
+
+/**
+ * The checkpoint sizes and suspension counts of the sampled runs of one flow. Each run contributes the largest
+ * checkpoint seen by its {@link FlowInstrumentation} and the number of times it suspended.
+ */
+public final class CheckpointMetrics implements CheckpointMetricsMXBean {
+
+    private final String flow;
+    private final LatencyHistogram bytes = new LatencyHistogram();
+    private final LatencyHistogram suspensions = new LatencyHistogram();
+
+    public CheckpointMetrics(String flow) {
+        this.flow = flow;
+    }
+
+    /** Records one run. A negative suspension count means it could not be read and is left out. */
+    public void record(long checkpointBytes, int suspensionCount) {
+        bytes.record(checkpointBytes);
+        if (suspensionCount >= 0) suspensions.record(suspensionCount);
+    }
+
+    public CheckpointMetricsSnapshot snapshot() {
+        return new CheckpointMetricsSnapshot(flow, getSampledRuns(), getMeanBytes(), getP50Bytes(), getP99Bytes(),
+                getMaxBytes(), getSuspensionSamples(), getMeanSuspensions(), getMaxSuspensions());
+    }
+
+    @Override public String getFlow() {return flow;}
+    @Override public long getSampledRuns() {return bytes.getCount();}
+    @Override public double getMeanBytes() {return bytes.getMean();}
+    @Override public long getP50Bytes() {return bytes.valueAtPercentile(50);}
+    @Override public long getP99Bytes() {return bytes.valueAtPercentile(99);}
+    @Override public long getMaxBytes() {return bytes.getMax();}
+    @Override public long getSuspensionSamples() {return suspensions.getCount();}
+    @Override public double getMeanSuspensions() {return suspensions.getMean();}
+    @Override public long getMaxSuspensions() {return suspensions.getMax();}
+}
@@ -0,0 +1,18 @@
+package com.template.metrics;
+
+/**
+ * The JMX view of one {@link CheckpointMetrics}.
+ */
+public interface CheckpointMetricsMXBean {
+
+    String getFlow();
+    long getSampledRuns();
+    double getMeanBytes();
+    long getP50Bytes();
+    long getP99Bytes();
+    long getMaxBytes();
+    /** The sampled runs whose suspensions were counted; the suspension figures mean nothing while this is zero. */
+    long getSuspensionSamples();
+    double getMeanSuspensions();
+    long getMaxSuspensions();
+}
@@ -0,0 +1,50 @@
+package com.template.metrics;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * A point-in-time copy of a {@link CheckpointMetrics}, small enough to return over RPC.
+ */
+@CordaSerializable
+public class CheckpointMetricsSnapshot {
+
+    private final String flow;
+    private final long sampledRuns;
+    private final double meanBytes;
+    private final long p50Bytes;
+    private final long p99Bytes;
+    private final long maxBytes;
+    private final long suspensionSamples;
+    private final double meanSuspensions;
+    private final long maxSuspensions;
+
+    public CheckpointMetricsSnapshot(String flow, long sampledRuns, double meanBytes, long p50Bytes, long p99Bytes,
+                                     long maxBytes, long suspensionSamples, double meanSuspensions, long maxSuspensions) {
+        this.flow = flow;
+        this.sampledRuns = sampledRuns;
+        this.meanBytes = meanBytes;
+        this.p50Bytes = p50Bytes;
+        this.p99Bytes = p99Bytes;
+        this.maxBytes = maxBytes;
+        this.suspensionSamples = suspensionSamples;
+        this.meanSuspensions = meanSuspensions;
+        this.maxSuspensions = maxSuspensions;
+    }
+
+    public String getFlow() {return flow;}
+    public long getSampledRuns() {return sampledRuns;}
+    public double getMeanBytes() {return meanBytes;}
+    public long getP50Bytes() {return p50Bytes;}
+    public long getP99Bytes() {return p99Bytes;}
+    public long getMaxBytes() {return maxBytes;}
+    public long getSuspensionSamples() {return suspensionSamples;}
+    public double getMeanSuspensions() {return meanSuspensions;}
+    public long getMaxSuspensions() {return maxSuspensions;}
+
+    @Override
+    public String toString() {
+        return "CheckpointMetricsSnapshot(flow=" + flow + ", sampledRuns=" + sampledRuns + ", p50Bytes=" + p50Bytes
+                + ", p99Bytes=" + p99Bytes + ", maxBytes=" + maxBytes + ", suspensionSamples=" + suspensionSamples
+                + ", maxSuspensions=" + maxSuspensions + ")";
+    }
+}
@@ -0,0 +1,95 @@
+package com.template.metrics;
+
+import com.template.services.FlowMetricsService;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.utilities.ProgressTracker;
+import java.sql.SQLException;
+
+/**
+ * Times the {@link ProgressTracker} steps of one run of a flow and reports them to the {@link FlowMetricsService}.
+ *
+ * A flow creates one at the start of {@code call()}, calls {@link #step} in place of
+ * {@code progressTracker.setCurrentStep}, and ends with {@link #succeeded()} or {@link #failed()}. A step lasts until
+ * the next one starts, so it includes any suspension in between. The instance travels with the flow's checkpoint.
+ *
+ * In a sampled run (see {@link FlowMetricsService#sampleCheckpoints()}) it also reads the flow's checkpoint at every
+ * step, and at the end records the largest one seen and the number of suspensions. Checkpoints written inside a
+ * sub-flow and replaced before the next step are not seen. A measurement that cannot be taken on this node is turned
+ * off for the node, with a warning, rather than recorded as zero.
+ */
+public final class FlowInstrumentation {
+
+    private final FlowMetricsService metrics;
+    private final FlowLogic<?> flow;
+    private final String flowName;
+    private final ProgressTracker progressTracker;
+    private final long flowStarted;
+    private String currentStep;
+    private long stepStarted;
+    private boolean sampled;
+    private long largestCheckpoint = -1;
+
+    public FlowInstrumentation(FlowLogic<?> flow) {
+        this.metrics = flow.getServiceHub().cordaService(FlowMetricsService.class);
+        this.flow = flow;
+        this.flowName = flow.getClass().getSimpleName();
+        this.progressTracker = flow.getProgressTracker();
+        this.flowStarted = System.nanoTime();
+        this.sampled = metrics.sampleCheckpoints();
+    }
+
+    public void step(ProgressTracker.Step step) {
+        endStep(true);
+        sampleCheckpoint();
+        if (progressTracker != null) progressTracker.setCurrentStep(step);
+        currentStep = step.getLabel();
+        stepStarted = System.nanoTime();
+    }
+
+    public void succeeded() {
+        endStep(true);
+        metrics.record(flowName, FlowMetricsService.WHOLE_FLOW, flowStarted, true);
+        recordCheckpoints();
+    }
+
+    public void failed() {
+        endStep(false);
+        metrics.record(flowName, FlowMetricsService.WHOLE_FLOW, flowStarted, false);
+        recordCheckpoints();
+    }
+
+    private void sampleCheckpoint() {
+        if (!sampled) return;
+        try {
+            largestCheckpoint = Math.max(largestCheckpoint, CheckpointInspector.checkpointBytes(flow));
+        } catch (SQLException | RuntimeException e) {
+            // Probably a database whose LENGTH does not take a blob.
+            metrics.checkpointSizesUnreadable(e);
+            sampled = false;
+        }
+    }
+
+    private void recordCheckpoints() {
+        sampleCheckpoint();
+        if (!sampled || largestCheckpoint < 0) return;
+        metrics.recordCheckpoint(flowName, largestCheckpoint, suspensions());
+        sampled = false;
+    }
+
+    // -1, which the metrics leave out, once the node's suspension counts have turned out to be unreadable.
+    private int suspensions() {
+        if (!metrics.countSuspensions()) return -1;
+        try {
+            return CheckpointInspector.suspensions(flow);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            metrics.suspensionsUncountable(e);
+            return -1;
+        }
+    }
+
+    private void endStep(boolean succeeded) {
+        if (currentStep == null) return;
+        metrics.record(flowName, currentStep, stepStarted, succeeded);
+        currentStep = null;
+    }
+}
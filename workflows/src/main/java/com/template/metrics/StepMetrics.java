@@ -0,0 +1,41 @@
+package com.template.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latency histogram and success/failure counters of one step of one flow, or of one kind of vault query.
+ */
+public final class StepMetrics implements StepMetricsMXBean {
+
+    private final String flow;
+    private final String step;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public StepMetrics(String flow, String step) {
+        this.flow = flow;
+        this.step = step;
+    }
+
+    public void record(long micros, boolean succeeded) {
+        latency.record(micros);
+        if (succeeded) successes.increment();
+        else failures.increment();
+    }
+
+    public StepMetricsSnapshot snapshot() {
+        return new StepMetricsSnapshot(flow, step, getSuccesses(), getFailures(), getMeanMicros(),
+                getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros());
+    }
+
+    @Override public String getFlow() {return flow;}
+    @Override public String getStep() {return step;}
+    @Override public long getSuccesses() {return successes.sum();}
+    @Override public long getFailures() {return failures.sum();}
+    @Override public double getMeanMicros() {return latency.getMean();}
+    @Override public long getP50Micros() {return latency.valueAtPercentile(50);}
+    @Override public long getP99Micros() {return latency.valueAtPercentile(99);}
+    @Override public long getP999Micros() {return latency.valueAtPercentile(99.9);}
+    @Override public long getMaxMicros() {return latency.getMax();}
+}
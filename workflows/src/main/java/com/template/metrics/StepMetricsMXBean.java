@@ -0,0 +1,17 @@
+package com.template.metrics;
+
+/**
+ * The JMX view of one {@link StepMetrics}. Latencies are in microseconds.
+ */
+public interface StepMetricsMXBean {
+
+    String getFlow();
+    String getStep();
+    long getSuccesses();
+    long getFailures();
+    double getMeanMicros();
+    long getP50Micros();
+    long getP99Micros();
+    long getP999Micros();
+    long getMaxMicros();
+}
@@ -0,0 +1,49 @@
+package com.template.metrics;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * A point-in-time copy of a {@link StepMetrics}, small enough to return over RPC. Latencies are in microseconds.
+ */
+@CordaSerializable
+public class StepMetricsSnapshot {
+
+    private final String flow;
+    private final String step;
+    private final long successes;
+    private final long failures;
+    private final double meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long p999Micros;
+    private final long maxMicros;
+
+    public StepMetricsSnapshot(String flow, String step, long successes, long failures, double meanMicros,
+                               long p50Micros, long p99Micros, long p999Micros, long maxMicros) {
+        this.flow = flow;
+        this.step = step;
+        this.successes = successes;
+        this.failures = failures;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public String getFlow() {return flow;}
+    public String getStep() {return step;}
+    public long getSuccesses() {return successes;}
+    public long getFailures() {return failures;}
+    public double getMeanMicros() {return meanMicros;}
+    public long getP50Micros() {return p50Micros;}
+    public long getP99Micros() {return p99Micros;}
+    public long getP999Micros() {return p999Micros;}
+    public long getMaxMicros() {return maxMicros;}
+
+    @Override
+    public String toString() {
+        return "StepMetricsSnapshot(flow=" + flow + ", step=" + step + ", successes=" + successes + ", failures=" + failures
+                + ", p50Micros=" + p50Micros + ", p99Micros=" + p99Micros + ", p999Micros=" + p999Micros + ", maxMicros=" + maxMicros + ")";
+    }
+}
@@ -0,0 +1,9 @@
+package com.template.schemas;
+
+/**
+ * The family of schemas for the client request ids remembered by
+ * {@link com.template.services.RequestDedupeService}.
+ *
+ * Each version of the schema (e.g. {@link FlowRequestSchemaV1}) refers back to this class as its family.
+ */
+public class FlowRequestSchema {}
@@ -0,0 +1,70 @@
+package com.template.schemas;
+
+import net.corda.core.schemas.MappedSchema;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.Collections;
+
+// **********
+// * Schema *
+// **********
+
+/**
+ * Version 1 of the {@link FlowRequestSchema}: one row of the "flow_requests" table per flow that was started with a
+ * client request id. The row names the flow handling the request while it runs, and the transaction it produced once
+ * it has completed. Rows older than the dedupe TTL are deleted.
+ */
+public class FlowRequestSchemaV1 extends MappedSchema {
+    public FlowRequestSchemaV1() {
+        super(FlowRequestSchema.class, 1, Collections.singletonList(FlowRequest.class));
+    }
+
+    @Entity
+    @Table(name = "flow_requests", indexes = {
+            @Index(name = "flow_requests_idx", columnList = "started_at")
+    })
+    public static class FlowRequest {
+        @Id
+        @Column(name = "request_key", nullable = false)
+        private final String requestKey;
+        @Column(name = "run_id", nullable = false)
+        private final String runId;
+        @Column(name = "started_at", nullable = false)
+        private final Instant startedAt;
+        // Null while the request is in progress.
+        @Column(name = "tx_id")
+        private final String txId;
+        @Column(name = "completed_at")
+        private final Instant completedAt;
+
+        public FlowRequest(String requestKey, String runId, Instant startedAt, String txId, Instant completedAt) {
+            this.requestKey = requestKey;
+            this.runId = runId;
+            this.startedAt = startedAt;
+            this.txId = txId;
+            this.completedAt = completedAt;
+        }
+
+        // Default constructor required by hibernate.
+        public FlowRequest() {
+            this.requestKey = null;
+            this.runId = null;
+            this.startedAt = null;
+            this.txId = null;
+            this.completedAt = null;
+        }
+
+        public String getRequestKey() {return requestKey;}
+        public String getRunId() {return runId;}
+        public Instant getStartedAt() {return startedAt;}
+        public String getTxId() {return txId;}
+        public Instant getCompletedAt() {return completedAt;}
+
+        public boolean isCompleted() {return txId != null;}
+    }
+}
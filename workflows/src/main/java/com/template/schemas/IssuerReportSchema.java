@@ -0,0 +1,9 @@
+package com.template.schemas;
+
+/**
+ * The family of schemas for the transfers still to be reported to their issuers by
+ * {@link com.template.services.IssuerReportService}.
+ *
+ * Each version of the schema (e.g. {@link IssuerReportSchemaV1}) refers back to this class as its family.
+ */
+public class IssuerReportSchema {}
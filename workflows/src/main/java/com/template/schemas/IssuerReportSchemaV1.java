@@ -0,0 +1,65 @@
+package com.template.schemas;
+
+import net.corda.core.schemas.MappedSchema;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.Collections;
+
+// **********
+// * Schema *
+// **********
+
+/**
+ * Version 1 of the {@link IssuerReportSchema}: one row of the "pending_issuer_reports" table per transaction and
+ * issuer that has not yet acknowledged it. Rows are deleted once the issuer has acknowledged the transaction.
+ */
+public class IssuerReportSchemaV1 extends MappedSchema {
+    public IssuerReportSchemaV1() {
+        super(IssuerReportSchema.class, 1, Collections.singletonList(PendingIssuerReport.class));
+    }
+
+    @Entity
+    @Table(name = "pending_issuer_reports", indexes = {
+            @Index(name = "pending_issuer_reports_idx", columnList = "issuer_name, finalised_at")
+    })
+    public static class PendingIssuerReport {
+        @Id
+        @Column(name = "report_id", nullable = false)
+        private final String reportId;
+        @Column(name = "tx_id", nullable = false)
+        private final String txId;
+        @Column(name = "issuer_name", nullable = false)
+        private final String issuer;
+        @Column(name = "finalised_at", nullable = false)
+        private final Instant finalisedAt;
+
+        public PendingIssuerReport(String txId, String issuer, Instant finalisedAt) {
+            this.reportId = reportId(txId, issuer);
+            this.txId = txId;
+            this.issuer = issuer;
+            this.finalisedAt = finalisedAt;
+        }
+
+        // Default constructor required by hibernate.
+        public PendingIssuerReport() {
+            this.reportId = null;
+            this.txId = null;
+            this.issuer = null;
+            this.finalisedAt = null;
+        }
+
+        public static String reportId(String txId, String issuer) {
+            return txId + "|" + issuer;
+        }
+
+        public String getReportId() {return reportId;}
+        public String getTxId() {return txId;}
+        public String getIssuer() {return issuer;}
+        public Instant getFinalisedAt() {return finalisedAt;}
+    }
+}
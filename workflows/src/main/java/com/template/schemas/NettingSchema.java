@@ -0,0 +1,9 @@
+package com.template.schemas;
+
+/**
+ * The family of schemas for the transfer intents waiting to be netted and settled by
+ * {@link com.template.services.NettingService}.
+ *
+ * Each version of the schema (e.g. {@link NettingSchemaV1}) refers back to this class as its family.
+ */
+public class NettingSchema {}
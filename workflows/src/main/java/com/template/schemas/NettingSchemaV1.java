@@ -0,0 +1,90 @@
+package com.template.schemas;
+
+import net.corda.core.schemas.MappedSchema;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.Collections;
+
+// **********
+// * Schema *
+// **********
+
+/**
+ * Version 1 of the {@link NettingSchema}: one row of the "pending_transfer_intents" table per transfer a trader has
+ * asked the netting agent to settle. A settlement claims rows by writing its run id to "settlement_id" and deletes
+ * them once its transaction has been finalised.
+ * Intents that cannot be settled, because their payer could not cover its net position or a party is unknown, stay
+ * behind with "rejected_at" and "rejection_reason" set and are never claimed again.
+ */
+public class NettingSchemaV1 extends MappedSchema {
+    public NettingSchemaV1() {
+        super(NettingSchema.class, 1, Collections.singletonList(PendingTransferIntent.class));
+    }
+
+    @Entity
+    @Table(name = "pending_transfer_intents", indexes = {
+            @Index(name = "pending_transfer_intents_idx", columnList = "submitted_at"),
+            @Index(name = "pending_transfer_intents_settlement_idx", columnList = "settlement_id")
+    })
+    public static class PendingTransferIntent {
+        @Id
+        @Column(name = "intent_id", nullable = false)
+        private final String intentId;
+        @Column(name = "metal_name", nullable = false)
+        private final String metalName;
+        @Column(name = "weight", nullable = false)
+        private final int weight;
+        @Column(name = "payer_name", nullable = false)
+        private final String payer;
+        @Column(name = "receiver_name", nullable = false)
+        private final String receiver;
+        @Column(name = "submitted_at", nullable = false)
+        private final Instant submittedAt;
+        @Column(name = "rejected_at")
+        private final Instant rejectedAt;
+        @Column(name = "rejection_reason")
+        private final String rejectionReason;
+        @Column(name = "settlement_id")
+        private final String settlementId;
+
+        public PendingTransferIntent(String intentId, String metalName, int weight, String payer, String receiver, Instant submittedAt) {
+            this.intentId = intentId;
+            this.metalName = metalName;
+            this.weight = weight;
+            this.payer = payer;
+            this.receiver = receiver;
+            this.submittedAt = submittedAt;
+            this.rejectedAt = null;
+            this.rejectionReason = null;
+            this.settlementId = null;
+        }
+
+        // Default constructor required by hibernate.
+        public PendingTransferIntent() {
+            this.intentId = null;
+            this.metalName = null;
+            this.weight = 0;
+            this.payer = null;
+            this.receiver = null;
+            this.submittedAt = null;
+            this.rejectedAt = null;
+            this.rejectionReason = null;
+            this.settlementId = null;
+        }
+
+        public String getIntentId() {return intentId;}
+        public String getMetalName() {return metalName;}
+        public int getWeight() {return weight;}
+        public String getPayer() {return payer;}
+        public String getReceiver() {return receiver;}
+        public Instant getSubmittedAt() {return submittedAt;}
+        public Instant getRejectedAt() {return rejectedAt;}
+        public String getRejectionReason() {return rejectionReason;}
+        public String getSettlementId() {return settlementId;}
+    }
+}
@@ -0,0 +1,42 @@
+package com.template.services;
+
+import net.corda.core.node.ServiceHub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * Tells whether a flow is still running from the checkpoints the node keeps for its flows.
+ *
+ * The node keeps a flow's checkpoint until the flow ends, fails or is killed, including across restarts, so state a
+ * flow has written under its run id can be taken over once its checkpoint is gone.
+ */
+final class FlowCheckpoints {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowCheckpoints.class);
+
+    private static final String CHECKPOINT_QUERY = "SELECT 1 FROM node_checkpoints WHERE checkpoint_id = ?";
+
+    private FlowCheckpoints() {}
+
+    /** Must be called from inside a flow. Answers true if the checkpoints cannot be read. */
+    static boolean isRunning(ServiceHub serviceHub, UUID runId) {
+        // The session belongs to the calling flow's database transaction and must not be closed.
+        Connection session = serviceHub.jdbcSession();
+        try (PreparedStatement statement = session.prepareStatement(CHECKPOINT_QUERY)) {
+            statement.setString(1, runId.toString());
+            try (ResultSet rows = statement.executeQuery()) {
+                return rows.next();
+            }
+        } catch (SQLException e) {
+            // Taking over the state of a running flow is worse than leaving that of a finished one
+            logger.warn("Could not look up the checkpoint of flow {}, assuming it is still running", runId, e);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.template.services;
+
+import com.template.metrics.CheckpointMetrics;
+import com.template.metrics.CheckpointMetricsSnapshot;
+import com.template.metrics.FlowInstrumentation;
+import com.template.metrics.StepMetrics;
+import com.template.metrics.StepMetricsSnapshot;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// ****************
+// * Corda Service *
+// ****************
+
+/**
+ * Collects latency histograms and success/failure counters per flow and step, and per kind of vault query.
+ *
+ * Flows report their steps through a {@link FlowInstrumentation}; vault queries are timed with
+ * {@link #timeVaultQuery}. Every metric is also registered as an MXBean named
+ * {@code com.template:type=FlowMetrics,node=...,flow=...,step=...}, so several nodes in one JVM do not collide.
+ *
+ * A fraction of flow runs, set by the CorDapp config key {@value #CHECKPOINT_SAMPLE_RATE_CONFIG} (0.01 by default),
+ * also have their checkpoint size and suspension count recorded per flow, published as
+ * {@code com.template:type=CheckpointMetrics,node=...,flow=...}. Sampling costs one small query per step. If this
+ * node's checkpoints cannot be measured, sampling turns itself off and says so once in the log; if only suspensions
+ * cannot be counted, sizes are still recorded and each flow's suspension sample count stays at zero.
+ */
+@CordaService
+public class FlowMetricsService extends SingletonSerializeAsToken {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowMetricsService.class);
+
+    // The step under which the duration of a whole flow is recorded.
+    public static final String WHOLE_FLOW = "(whole flow)";
+    // The flow under which vault queries are recorded, one step per kind of query.
+    public static final String VAULT_QUERY = "VaultQuery";
+
+    public static final String CHECKPOINT_SAMPLE_RATE_CONFIG = "checkpointSampleRate";
+    private static final double DEFAULT_CHECKPOINT_SAMPLE_RATE = 0.01;
+
+    private final String nodeName;
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    private final ConcurrentMap<String, StepMetrics> metrics = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CheckpointMetrics> checkpointMetrics = new ConcurrentHashMap<>();
+    private final double checkpointSampleRate;
+    private final AtomicBoolean checkpointSizesReadable = new AtomicBoolean(true);
+    private final AtomicBoolean suspensionsCountable = new AtomicBoolean(true);
+
+    public FlowMetricsService(AppServiceHub serviceHub) {
+        this.nodeName = serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString();
+
+        double sampleRate = DEFAULT_CHECKPOINT_SAMPLE_RATE;
+        try {
+            if (serviceHub.getAppContext().getConfig().exists(CHECKPOINT_SAMPLE_RATE_CONFIG))
+                sampleRate = serviceHub.getAppContext().getConfig().getDouble(CHECKPOINT_SAMPLE_RATE_CONFIG);
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the checkpoint sample rate, using the default", e);
+        }
+        this.checkpointSampleRate = sampleRate;
+    }
+
+    /**
+     * Records the time since {@code startedNanos}. Durations that come out negative, which happens when a flow is
+     * restored from a checkpoint written by an earlier run of the node, are dropped.
+     */
+    public void record(String flow, String step, long startedNanos, boolean succeeded) {
+        long elapsed = System.nanoTime() - startedNanos;
+        if (elapsed < 0) return;
+        recordMicros(flow, step, TimeUnit.NANOSECONDS.toMicros(elapsed), succeeded);
+    }
+
+    public void recordMicros(String flow, String step, long micros, boolean succeeded) {
+        metric(flow, step).record(micros, succeeded);
+    }
+
+    /** Decides whether a starting flow run should have its checkpoints measured. */
+    public boolean sampleCheckpoints() {
+        return checkpointSampleRate > 0 && checkpointSizesReadable.get()
+                && ThreadLocalRandom.current().nextDouble() < checkpointSampleRate;
+    }
+
+    /** Whether sampled runs should also count their suspensions. */
+    public boolean countSuspensions() {
+        return suspensionsCountable.get();
+    }
+
+    /** Turns checkpoint sampling off for good, as this node's checkpoints cannot be measured. */
+    public void checkpointSizesUnreadable(Exception cause) {
+        if (checkpointSizesReadable.compareAndSet(true, false))
+            logger.warn("Cannot read the size of checkpoints on this node, so checkpoint sampling is now off."
+                    + " Set {} to 0 to skip trying.", CHECKPOINT_SAMPLE_RATE_CONFIG, cause);
+    }
+
+    /** Stops counting suspensions, as this node's state machine does not expose them as expected. */
+    public void suspensionsUncountable(Exception cause) {
+        if (suspensionsCountable.compareAndSet(true, false))
+            logger.warn("Cannot count flow suspensions on this node, so checkpoint metrics now record sizes only.", cause);
+    }
+
+    public void recordCheckpoint(String flow, long checkpointBytes, int suspensions) {
+        CheckpointMetrics existing = checkpointMetrics.get(flow);
+        if (existing == null) {
+            existing = checkpointMetrics.computeIfAbsent(flow, key -> register(new CheckpointMetrics(flow),
+                    "com.template:type=CheckpointMetrics,node=" + ObjectName.quote(nodeName)
+                            + ",flow=" + ObjectName.quote(flow)));
+        }
+        existing.record(checkpointBytes, suspensions);
+    }
+
+    public <T> T timeVaultQuery(String queryName, Supplier<T> query) {
+        long started = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            T result = query.get();
+            succeeded = true;
+            return result;
+        } finally {
+            record(VAULT_QUERY, queryName, started, succeeded);
+        }
+    }
+
+    public List<StepMetricsSnapshot> snapshot() {
+        List<StepMetricsSnapshot> snapshots = new ArrayList<>(metrics.size());
+        for (StepMetrics stepMetrics : metrics.values()) {
+            snapshots.add(stepMetrics.snapshot());
+        }
+        snapshots.sort((a, b) -> a.getFlow().equals(b.getFlow())
+                ? a.getStep().compareTo(b.getStep())
+                : a.getFlow().compareTo(b.getFlow()));
+        return snapshots;
+    }
+
+    public List<CheckpointMetricsSnapshot> checkpointSnapshot() {
+        List<CheckpointMetricsSnapshot> snapshots = new ArrayList<>(checkpointMetrics.size());
+        for (CheckpointMetrics metric : checkpointMetrics.values()) {
+            snapshots.add(metric.snapshot());
+        }
+        snapshots.sort((a, b) -> a.getFlow().compareTo(b.getFlow()));
+        return snapshots;
+    }
+
+    private StepMetrics metric(String flow, String step) {
+        StepMetrics existing = metrics.get(flow + '\n' + step);
+        if (existing != null) return existing;
+        return metrics.computeIfAbsent(flow + '\n' + step, key -> register(new StepMetrics(flow, step),
+                "com.template:type=FlowMetrics"
+                        + ",node=" + ObjectName.quote(nodeName)
+                        + ",flow=" + ObjectName.quote(flow)
+                        + ",step=" + ObjectName.quote(step)));
+    }
+
+    private <M> M register(M mBean, String objectName) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            try {
+                mBeanServer.registerMBean(mBean, name);
+            } catch (InstanceAlreadyExistsException e) {
+                // Left behind by an earlier node of the same name in this JVM, as happens between mock network tests.
+                mBeanServer.unregisterMBean(name);
+                mBeanServer.registerMBean(mBean, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register JMX metrics as {}", objectName, e);
+        }
+        return mBean;
+    }
+}
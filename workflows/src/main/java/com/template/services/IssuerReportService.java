@@ -0,0 +1,204 @@
+package com.template.services;
+
+import com.template.flows.GetPendingIssuers;
+import com.template.flows.ReportToIssuers;
+import com.template.schemas.IssuerReportSchemaV1.PendingIssuerReport;
+import kotlin.Unit;
+import kotlin.jvm.functions.Function1;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// ****************
+// * Corda Service *
+// ****************
+
+/**
+ * Keeps track of transfers whose issuers have not yet been sent the transaction, and periodically starts
+ * {@link ReportToIssuers} to send them.
+ *
+ * A transfer made with {@code IssuerNotification.ASYNCHRONOUS} is finalised with its receiver only and leaves a
+ * {@link PendingIssuerReport} row per issuer, written in the same database transaction as the flow's checkpoint. A
+ * row is only deleted once the issuer has acknowledged the transaction, so every issuer receives every transaction
+ * at least once, including across restarts. The interval and batch size come from the CorDapp config keys
+ * {@value #INTERVAL_CONFIG} and {@value #BATCH_SIZE_CONFIG}.
+ *
+ * Each issuer is reported to by its own flow, and an issuer is not reported to again until its last report has been
+ * acknowledged. An issuer that is down or does not answer therefore holds up its own reports only, which are sent
+ * once it comes back.
+ */
+@CordaService
+public class IssuerReportService extends SingletonSerializeAsToken {
+
+    private static final Logger logger = LoggerFactory.getLogger(IssuerReportService.class);
+
+    public static final String INTERVAL_CONFIG = "issuerReportIntervalSeconds";
+    public static final String BATCH_SIZE_CONFIG = "issuerReportBatchSize";
+    private static final long DEFAULT_INTERVAL_SECONDS = 5;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    // The flow and step under which the delay from finality to the issuer's acknowledgement is recorded.
+    public static final String LAG_FLOW = "ReportToIssuers";
+    public static final String LAG_STEP = "Finality to issuer acknowledgement";
+
+    private final AppServiceHub serviceHub;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "issuer-reports");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean lookingUp = new AtomicBoolean();
+    // The issuers a ReportToIssuers flow started by us is running for.
+    private final Set<Party> reporting = ConcurrentHashMap.newKeySet();
+    // True at start-up so that reports left over from before a restart are picked up.
+    private volatile boolean maybePending = true;
+
+    public IssuerReportService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+
+        long intervalSeconds = DEFAULT_INTERVAL_SECONDS;
+        int configuredBatchSize = DEFAULT_BATCH_SIZE;
+        try {
+            if (serviceHub.getAppContext().getConfig().exists(INTERVAL_CONFIG))
+                intervalSeconds = serviceHub.getAppContext().getConfig().getLong(INTERVAL_CONFIG);
+            if (serviceHub.getAppContext().getConfig().exists(BATCH_SIZE_CONFIG))
+                configuredBatchSize = serviceHub.getAppContext().getConfig().getInt(BATCH_SIZE_CONFIG);
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the issuer report config, using the defaults", e);
+        }
+        this.batchSize = configuredBatchSize;
+
+        scheduler.scheduleWithFixedDelay(this::startReporting, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        serviceHub.registerUnloadHandler(() -> {
+            scheduler.shutdownNow();
+            return Unit.INSTANCE;
+        });
+    }
+
+    //    ----------------------------------------------- Called from flows -----------------------------------------------
+
+    /** Records that the issuers still need to be sent the transaction. Must be called from inside a flow. */
+    public void enqueue(SecureHash txId, Collection<Party> issuers) {
+        Instant now = serviceHub.getClock().instant();
+        serviceHub.withEntityManager(em -> {
+            for (Party issuer : issuers) {
+                em.persist(new PendingIssuerReport(txId.toString(), issuer.getName().toString(), now));
+            }
+        });
+        maybePending = true;
+    }
+
+    /** Returns the issuers with pending reports. Must be called from inside a flow. */
+    public List<Party> pendingIssuers() {
+        List<String> names = serviceHub.withEntityManager((Function1<EntityManager, List<String>>) em ->
+                em.createQuery("SELECT DISTINCT r.issuer FROM PendingIssuerReport r", String.class)
+                        .getResultList());
+
+        List<Party> issuers = new ArrayList<>(names.size());
+        for (String name : names) {
+            Party issuer = serviceHub.getIdentityService().wellKnownPartyFromX500Name(CordaX500Name.parse(name));
+            if (issuer == null) {
+                logger.warn("Cannot report transactions to unknown issuer {}", name);
+                continue;
+            }
+            issuers.add(issuer);
+        }
+        return issuers;
+    }
+
+    /** Returns up to one batch of the oldest reports pending for the issuer. Must be called from inside a flow. */
+    public List<PendingIssuerReport> pending(Party issuer) {
+        return serviceHub.withEntityManager((Function1<EntityManager, List<PendingIssuerReport>>) em ->
+                em.createQuery("SELECT r FROM PendingIssuerReport r WHERE r.issuer = :issuer ORDER BY r.finalisedAt", PendingIssuerReport.class)
+                        .setParameter("issuer", issuer.getName().toString())
+                        .setMaxResults(batchSize)
+                        .getResultList());
+    }
+
+    /** Deletes the reports the issuer has acknowledged and records how long each one took. */
+    public void acknowledged(Party issuer, List<SecureHash> txIds) {
+        Instant now = serviceHub.getClock().instant();
+        FlowMetricsService metrics = serviceHub.cordaService(FlowMetricsService.class);
+        serviceHub.withEntityManager(em -> {
+            for (SecureHash txId : txIds) {
+                PendingIssuerReport report = em.find(PendingIssuerReport.class,
+                        PendingIssuerReport.reportId(txId.toString(), issuer.getName().toString()));
+                if (report == null) continue;
+                metrics.recordMicros(LAG_FLOW, LAG_STEP,
+                        Math.max(0, Duration.between(report.getFinalisedAt(), now).toNanos() / 1000), true);
+                em.remove(report);
+            }
+        });
+    }
+
+    //    ----------------------------------------------- Scheduling -----------------------------------------------
+
+    private void startReporting() {
+        if (!maybePending || !lookingUp.compareAndSet(false, true)) return;
+        maybePending = false;
+        try {
+            serviceHub.startFlow(new GetPendingIssuers()).getReturnValue().toCompletableFuture()
+                    .whenComplete((issuers, error) -> {
+                        lookingUp.set(false);
+                        if (error != null) {
+                            logger.warn("Could not look up the issuers to report transfers to", error);
+                            maybePending = true;
+                            return;
+                        }
+                        // Look again next time while any issuer, answering or not, still has reports pending
+                        if (!issuers.isEmpty()) maybePending = true;
+                        report(issuers);
+                    });
+        } catch (RuntimeException e) {
+            logger.warn("Could not look up the issuers to report transfers to", e);
+            maybePending = true;
+            lookingUp.set(false);
+        }
+    }
+
+    /**
+     * Starts {@link ReportToIssuers} for each of the issuers that is not being reported to already, and returns the
+     * started flows' results by issuer.
+     */
+    public Map<Party, CordaFuture<Integer>> report(Collection<Party> issuers) {
+        Map<Party, CordaFuture<Integer>> started = new LinkedHashMap<>();
+        for (Party issuer : issuers) {
+            if (!reporting.add(issuer)) continue;
+            try {
+                CordaFuture<Integer> acknowledged = serviceHub.startFlow(new ReportToIssuers(issuer)).getReturnValue();
+                acknowledged.toCompletableFuture().whenComplete((sent, error) -> {
+                    if (error != null) logger.warn("Reporting transfers to issuer {} failed", issuer.getName(), error);
+                    reporting.remove(issuer);
+                    maybePending = true;
+                });
+                started.put(issuer, acknowledged);
+            } catch (RuntimeException e) {
+                logger.warn("Could not start reporting transfers to issuer {}", issuer.getName(), e);
+                reporting.remove(issuer);
+            }
+        }
+        return started;
+    }
+}
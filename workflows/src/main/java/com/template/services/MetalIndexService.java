@@ -0,0 +1,202 @@
+package com.template.services;
+
+import com.template.states.MetalState;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// ****************
+// * Corda Service *
+// ****************
+
+/**
+ * Keeps an in-memory index of the unconsumed {@link MetalState}s in the vault, keyed by metal, owner and weight, so
+ * that flows can find candidate states without a vault query.
+ *
+ * Metal names and owners are interned to small ids and packed with the weight into a single {@code long} key of a
+ * {@link LongObjectMap}. The index follows the vault through {@code updates}, which are only published once the
+ * transaction that made them has committed, so a flow that fails and rolls back never leaves states in the index that
+ * the vault does not have. It is seeded from a paged vault snapshot the first time it is used, because that happens
+ * inside a flow and so inside a database transaction.
+ *
+ * The index is only a hint: a flow must still soft-lock a candidate before spending it, which also fails for a
+ * state consumed since the index last saw it.
+ */
+@CordaService
+public class MetalIndexService extends SingletonSerializeAsToken {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetalIndexService.class);
+
+    private static final int SEED_PAGE_SIZE = 500;
+    // Metal and owner ids each get 16 bits of the key, the weight gets the low 32 bits.
+    private static final int MAX_ID = 0xFFFF;
+
+    private final AppServiceHub serviceHub;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongObjectMap<List<StateAndRef<MetalState>>> index = new LongObjectMap<>();
+    private final Map<String, Integer> metalIds = new HashMap<>();
+    private final Map<CordaX500Name, Integer> ownerIds = new HashMap<>();
+    private int states = 0;
+    private volatile boolean seeded = false;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MetalIndexService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        serviceHub.getVaultService().getUpdates().subscribe(this::apply);
+    }
+
+    //    ----------------------------------------------- Lookups -----------------------------------------------
+
+    /**
+     * Returns the unconsumed states of exactly this metal, weight and owner known to the index.
+     */
+    public List<StateAndRef<MetalState>> candidates(String metalName, int weight, Party owner) {
+        ensureSeeded();
+
+        lock.readLock().lock();
+        try {
+            Integer metalId = metalIds.get(metalName);
+            Integer ownerId = ownerIds.get(owner.getName());
+            List<StateAndRef<MetalState>> bucket = (metalId == null || ownerId == null) ? null : index.get(key(metalId, ownerId, weight));
+
+            if (bucket == null || bucket.isEmpty()) {
+                misses.incrementAndGet();
+                return Collections.emptyList();
+            }
+            hits.incrementAndGet();
+            return new ArrayList<>(bucket);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public MetalIndexStats stats() {
+        lock.readLock().lock();
+        try {
+            return new MetalIndexStats(seeded, states, index.size(), hits.get(), misses.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //    ----------------------------------------------- Maintenance -----------------------------------------------
+
+    private void ensureSeeded() {
+        if (seeded) return;
+
+        lock.writeLock().lock();
+        try {
+            if (seeded) return;
+
+            // An update may be committed before the snapshot is read but only published after it, so it can be
+            // applied to states the snapshot already reflects; adding or removing a state twice is harmless.
+            QueryCriteria unconsumed = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+            Sort byRef = new Sort(Collections.singletonList(
+                    new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF), Sort.Direction.ASC)));
+
+            int pageNumber = 1;
+            List<StateAndRef<MetalState>> page;
+            do {
+                page = serviceHub.getVaultService()
+                        .queryBy(MetalState.class, unconsumed, new PageSpecification(pageNumber++, SEED_PAGE_SIZE), byRef)
+                        .getStates();
+                for (StateAndRef<MetalState> state : page) {
+                    add(state);
+                }
+            } while (page.size() == SEED_PAGE_SIZE);
+
+            seeded = true;
+            logger.info("Seeded metal index with {} states under {} keys", states, index.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void apply(Vault.Update<ContractState> update) {
+        lock.writeLock().lock();
+        try {
+            for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+                if (consumed.getState().getData() instanceof MetalState)
+                    remove((StateAndRef<MetalState>) (StateAndRef<?>) consumed);
+            }
+            for (StateAndRef<ContractState> produced : update.getProduced()) {
+                if (produced.getState().getData() instanceof MetalState)
+                    add((StateAndRef<MetalState>) (StateAndRef<?>) produced);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(StateAndRef<MetalState> state) {
+        MetalState metal = state.getState().getData();
+        Integer metalId = intern(metalIds, metal.getMetalName());
+        Integer ownerId = intern(ownerIds, metal.getOwner().getName());
+        if (metalId == null || ownerId == null) {
+            logger.warn("Metal index is full, {} will only be found by vault queries", state.getRef());
+            return;
+        }
+
+        long key = key(metalId, ownerId, metal.getWeight());
+        List<StateAndRef<MetalState>> bucket = index.get(key);
+        if (bucket == null) {
+            bucket = new ArrayList<>(1);
+            index.put(key, bucket);
+        }
+        if (!bucket.contains(state)) {
+            bucket.add(state);
+            states++;
+        }
+    }
+
+    private void remove(StateAndRef<MetalState> state) {
+        MetalState metal = state.getState().getData();
+        Integer metalId = metalIds.get(metal.getMetalName());
+        Integer ownerId = ownerIds.get(metal.getOwner().getName());
+        if (metalId == null || ownerId == null) return;
+
+        long key = key(metalId, ownerId, metal.getWeight());
+        List<StateAndRef<MetalState>> bucket = index.get(key);
+        if (bucket != null && bucket.remove(state)) {
+            states--;
+            if (bucket.isEmpty()) index.remove(key);
+        }
+    }
+
+    private static <T> Integer intern(Map<T, Integer> ids, T value) {
+        Integer id = ids.get(value);
+        if (id == null && ids.size() <= MAX_ID) {
+            id = ids.size();
+            ids.put(value, id);
+        }
+        return id;
+    }
+
+    private static long key(int metalId, int ownerId, int weight) {
+        return ((long) metalId << 48) | ((long) ownerId << 32) | (weight & 0xFFFFFFFFL);
+    }
+}
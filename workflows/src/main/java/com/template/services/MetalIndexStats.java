@@ -0,0 +1,35 @@
+package com.template.services;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * A snapshot of the {@link MetalIndexService} counters.
+ */
+@CordaSerializable
+public class MetalIndexStats {
+
+    private final boolean seeded;
+    private final int states;
+    private final int keys;
+    private final long hits;
+    private final long misses;
+
+    public MetalIndexStats(boolean seeded, int states, int keys, long hits, long misses) {
+        this.seeded = seeded;
+        this.states = states;
+        this.keys = keys;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    public boolean isSeeded() {return seeded;}
+    public int getStates() {return states;}
+    public int getKeys() {return keys;}
+    public long getHits() {return hits;}
+    public long getMisses() {return misses;}
+
+    @Override
+    public String toString() {
+        return "MetalIndexStats(seeded=" + seeded + ", states=" + states + ", keys=" + keys + ", hits=" + hits + ", misses=" + misses + ")";
+    }
+}
@@ -0,0 +1,181 @@
+package com.template.services;
+
+import com.template.flows.SettleNetting;
+import com.template.flows.TransferIntent;
+import com.template.schemas.NettingSchemaV1.PendingTransferIntent;
+import kotlin.jvm.functions.Function1;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// ****************
+// * Corda Service *
+// ****************
+
+/**
+ * Holds the transfer intents traders have sent this node, the netting agent, until {@link SettleNetting} settles
+ * them.
+ *
+ * Intents are kept in the "pending_transfer_intents" table, so they survive a restart. A settlement claims up to
+ * {@value #BATCH_SIZE_CONFIG} of the oldest unclaimed intents (1000 by default) so that a concurrent settlement does
+ * not pick them too, deletes them once its transaction is final, and releases them if it fails. The claim is the
+ * settlement's run id in the intents' rows, written in the flow's own database transaction, so a settlement that
+ * resumes from its checkpoint after a restart still holds its intents. A settlement that ended without releasing
+ * them, because it was killed, loses its claim once the node no longer holds its checkpoint.
+ *
+ * An intent that can never settle would otherwise fail every settlement that claims it. The intents of a payer that
+ * cannot cover its net position are {@link #reject rejected} by the failing settlement, and so are intents between
+ * parties this node does not know. Rejected intents stay in the table with the reason, but are not claimed again.
+ */
+@CordaService
+public class NettingService extends SingletonSerializeAsToken {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettingService.class);
+
+    public static final String BATCH_SIZE_CONFIG = "nettingBatchSize";
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    // The length of the rejection_reason column.
+    private static final int MAX_REASON_LENGTH = 255;
+
+    private final AppServiceHub serviceHub;
+    private final int batchSize;
+
+    public NettingService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+
+        int configuredBatchSize = DEFAULT_BATCH_SIZE;
+        try {
+            if (serviceHub.getAppContext().getConfig().exists(BATCH_SIZE_CONFIG))
+                configuredBatchSize = serviceHub.getAppContext().getConfig().getInt(BATCH_SIZE_CONFIG);
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the netting config, using the defaults", e);
+        }
+        this.batchSize = configuredBatchSize;
+    }
+
+    //    ----------------------------------------------- Called from flows -----------------------------------------------
+
+    /** Records a transfer to be settled later and returns its id. Must be called from inside a flow. */
+    public UUID submit(TransferIntent intent) {
+        UUID intentId = UUID.randomUUID();
+        serviceHub.withEntityManager(em -> {
+            em.persist(new PendingTransferIntent(intentId.toString(), intent.getMetalName(), intent.getWeight(),
+                    intent.getPayer().getName().toString(), intent.getReceiver().getName().toString(),
+                    serviceHub.getClock().instant()));
+        });
+        return intentId;
+    }
+
+    /**
+     * Claims up to one batch of the oldest unclaimed intents for the settlement {@code settlementId}. Must be called
+     * from inside a flow.
+     */
+    public List<TransferIntent> claim(UUID settlementId) {
+        releaseAbandoned();
+
+        List<PendingTransferIntent> candidates = serviceHub.withEntityManager((Function1<EntityManager, List<PendingTransferIntent>>) em ->
+                em.createQuery("SELECT i FROM PendingTransferIntent i WHERE i.rejectedAt IS NULL AND i.settlementId IS NULL"
+                        + " ORDER BY i.submittedAt", PendingTransferIntent.class)
+                        .setMaxResults(batchSize)
+                        .getResultList());
+
+        List<String> ids = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (PendingTransferIntent row : candidates) {
+            if (party(row.getPayer()) == null || party(row.getReceiver()) == null) {
+                logger.warn("Rejecting intent {} between unknown parties {} and {}", row.getIntentId(), row.getPayer(), row.getReceiver());
+                unknown.add(row.getIntentId());
+            } else {
+                ids.add(row.getIntentId());
+            }
+        }
+        if (!unknown.isEmpty()) {
+            serviceHub.withEntityManager((Function1<EntityManager, Integer>) em ->
+                    reject(em.createQuery("UPDATE PendingTransferIntent i SET i.rejectedAt = :now, i.rejectionReason = :reason"
+                            + " WHERE i.intentId IN :ids")
+                            .setParameter("ids", unknown), "Unknown payer or receiver"));
+        }
+        if (ids.isEmpty()) return new ArrayList<>();
+
+        // A concurrent settlement may have claimed some of them since; the update only takes those it has not.
+        List<PendingTransferIntent> rows = serviceHub.withEntityManager((Function1<EntityManager, List<PendingTransferIntent>>) em -> {
+            em.createQuery("UPDATE PendingTransferIntent i SET i.settlementId = :settlementId"
+                    + " WHERE i.intentId IN :ids AND i.settlementId IS NULL")
+                    .setParameter("settlementId", settlementId.toString())
+                    .setParameter("ids", ids)
+                    .executeUpdate();
+            return em.createQuery("SELECT i FROM PendingTransferIntent i WHERE i.settlementId = :settlementId"
+                    + " ORDER BY i.submittedAt", PendingTransferIntent.class)
+                    .setParameter("settlementId", settlementId.toString())
+                    .getResultList();
+        });
+
+        List<TransferIntent> intents = new ArrayList<>();
+        for (PendingTransferIntent row : rows) {
+            intents.add(new TransferIntent(row.getMetalName(), row.getWeight(), party(row.getPayer()), party(row.getReceiver())));
+        }
+        return intents;
+    }
+
+    /**
+     * Rejects the intents paid by {@code payer} among those claimed by the settlement {@code settlementId}, so that
+     * the next settlement nets the rest without them, and returns how many there were. Must be called from inside a
+     * flow.
+     */
+    public int reject(UUID settlementId, Party payer, String reason) {
+        return serviceHub.withEntityManager((Function1<EntityManager, Integer>) em ->
+                reject(em.createQuery("UPDATE PendingTransferIntent i SET i.rejectedAt = :now, i.rejectionReason = :reason,"
+                        + " i.settlementId = NULL WHERE i.settlementId = :settlementId AND i.payer = :payer")
+                        .setParameter("settlementId", settlementId.toString())
+                        .setParameter("payer", payer.getName().toString()), reason));
+    }
+
+    private int reject(Query update, String reason) {
+        String truncatedReason = reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason;
+        return update.setParameter("now", serviceHub.getClock().instant())
+                .setParameter("reason", truncatedReason)
+                .executeUpdate();
+    }
+
+    /** Deletes the intents claimed by a settlement that has been finalised. Must be called from inside a flow. */
+    public void settled(UUID settlementId) {
+        serviceHub.withEntityManager((Function1<EntityManager, Integer>) em ->
+                em.createQuery("DELETE FROM PendingTransferIntent i WHERE i.settlementId = :settlementId")
+                        .setParameter("settlementId", settlementId.toString())
+                        .executeUpdate());
+    }
+
+    /** Makes the intents claimed by a settlement available to the next one. Must be called from inside a flow. */
+    public void release(UUID settlementId) {
+        serviceHub.withEntityManager((Function1<EntityManager, Integer>) em ->
+                em.createQuery("UPDATE PendingTransferIntent i SET i.settlementId = NULL WHERE i.settlementId = :settlementId")
+                        .setParameter("settlementId", settlementId.toString())
+                        .executeUpdate());
+    }
+
+    // Releases the intents of settlements that are no longer running but did not release them.
+    private void releaseAbandoned() {
+        List<String> settlementIds = serviceHub.withEntityManager((Function1<EntityManager, List<String>>) em ->
+                em.createQuery("SELECT DISTINCT i.settlementId FROM PendingTransferIntent i WHERE i.settlementId IS NOT NULL", String.class)
+                        .getResultList());
+        for (String settlementId : settlementIds) {
+            if (FlowCheckpoints.isRunning(serviceHub, UUID.fromString(settlementId))) continue;
+            logger.info("Releasing the transfer intents of settlement {}, which is no longer running", settlementId);
+            release(UUID.fromString(settlementId));
+        }
+    }
+
+    private Party party(String name) {
+        return serviceHub.getIdentityService().wellKnownPartyFromX500Name(CordaX500Name.parse(name));
+    }
+}
@@ -0,0 +1,93 @@
+package com.template.services;
+
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// ****************
+// * Corda Service *
+// ****************
+
+/**
+ * Spreads issuance over the notaries in the network map, so that a single notary is not the ceiling on throughput.
+ *
+ * The strategy comes from the CorDapp config key {@value #STRATEGY_CONFIG} and is one of the {@link NotaryStrategy}
+ * names, {@code ROUND_ROBIN} by default. The notaries are taken in order of name, so every node sees the same list.
+ * Flows report how long finality took through a notary with {@link #recordLatency}; the latest reports are kept as a
+ * moving average for {@code LEAST_RECENT_LATENCY}.
+ */
+@CordaService
+public class NotarySelectionService extends SingletonSerializeAsToken {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotarySelectionService.class);
+
+    public static final String STRATEGY_CONFIG = "notarySelection";
+    // Weight of the newest report in the moving average.
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final AppServiceHub serviceHub;
+    private final NotaryStrategy strategy;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<Party, Double> recentLatencyMicros = new ConcurrentHashMap<>();
+
+    public NotarySelectionService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+
+        NotaryStrategy configured = NotaryStrategy.ROUND_ROBIN;
+        try {
+            if (serviceHub.getAppContext().getConfig().exists(STRATEGY_CONFIG))
+                configured = NotaryStrategy.valueOf(serviceHub.getAppContext().getConfig().getString(STRATEGY_CONFIG));
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the notary selection config, using round robin", e);
+        }
+        this.strategy = configured;
+    }
+
+    public NotaryStrategy getStrategy() {
+        return strategy;
+    }
+
+    /** Returns the notary to issue metal owned by {@code owner} on. */
+    public Party select(Party owner) {
+        List<Party> notaries = new ArrayList<>(serviceHub.getNetworkMapCache().getNotaryIdentities());
+        if (notaries.isEmpty()) throw new IllegalStateException("There are no notaries in the network map.");
+        if (notaries.size() == 1) return notaries.get(0);
+        notaries.sort(Comparator.comparing(notary -> notary.getName().toString()));
+
+        switch (strategy) {
+            case LEAST_RECENT_LATENCY:
+                Party fastest = null;
+                double fastestLatency = Double.MAX_VALUE;
+                for (Party notary : notaries) {
+                    double latency = recentLatencyMicros.getOrDefault(notary, 0.0);
+                    if (latency < fastestLatency) {
+                        fastest = notary;
+                        fastestLatency = latency;
+                    }
+                }
+                return fastest;
+            case HASH_BY_OWNER:
+                return notaries.get(Math.floorMod(owner.getName().toString().hashCode(), notaries.size()));
+            case ROUND_ROBIN:
+            default:
+                return notaries.get(Math.floorMod(next.getAndIncrement(), notaries.size()));
+        }
+    }
+
+    /** Records how long a transaction took to be finalised through {@code notary}. */
+    public void recordLatency(Party notary, long micros) {
+        if (micros < 0) return;
+        recentLatencyMicros.merge(notary, (double) micros,
+                (average, latest) -> average + LATENCY_SMOOTHING * (latest - average));
+    }
+}
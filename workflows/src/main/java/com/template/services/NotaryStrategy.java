@@ -0,0 +1,13 @@
+package com.template.services;
+
+/**
+ * How {@link NotarySelectionService} chooses the notary for newly issued metal.
+ */
+public enum NotaryStrategy {
+    // Take the notaries in turn.
+    ROUND_ROBIN,
+    // Take the notary whose recent finality latency is lowest, trying each notary at least once.
+    LEAST_RECENT_LATENCY,
+    // Always use the same notary for the same owner, so an owner's metal never needs a notary change to be spent together.
+    HASH_BY_OWNER
+}
@@ -0,0 +1,179 @@
+package com.template.services;
+
+import com.template.flows.DuplicateRequestException;
+import com.template.schemas.FlowRequestSchemaV1.FlowRequest;
+import kotlin.Unit;
+import kotlin.jvm.functions.Function1;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ****************
+// * Corda Service *
+// ****************
+
+/**
+ * Makes flows started with a client request id idempotent: a retried request gets the transaction the first one
+ * produced instead of running again.
+ *
+ * A flow calls {@link #begin} before doing anything and {@link #completed} once its transaction is final. Both write
+ * the request's row of the "flow_requests" table in the flow's own database transaction: begin records the run id of
+ * the flow handling it, and completed the transaction it produced. Completed requests are also kept in a hot cache.
+ *
+ * A retry that arrives while the first flow runs fails with {@link DuplicateRequestException} instead of starting a
+ * second one. A flow counts as running while the node holds a checkpoint for it, including across restarts, so a
+ * request whose flow failed or was killed is handled by the next flow started with it. A row is only committed when
+ * its flow first suspends; a retry that begins before then fails to insert its own row, and the flow hospital
+ * retries it once the first row is visible.
+ *
+ * Entries expire after the CorDapp config key {@value #TTL_CONFIG} (one day by default): the cache is swept every
+ * minute, and rows started before that are deleted by the flows that complete requests.
+ */
+@CordaService
+public class RequestDedupeService extends SingletonSerializeAsToken {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestDedupeService.class);
+
+    public static final String TTL_CONFIG = "requestDedupeTtlSeconds";
+    private static final long DEFAULT_TTL_SECONDS = TimeUnit.DAYS.toSeconds(1);
+    // Expired rows are deleted by one in this many completed requests.
+    private static final int PURGE_EVERY = 1000;
+
+    private final AppServiceHub serviceHub;
+    private final Duration ttl;
+    private final Map<String, Completed> hot = new ConcurrentHashMap<>();
+    private final AtomicLong completions = new AtomicLong();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "request-dedupe-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RequestDedupeService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+
+        long ttlSeconds = DEFAULT_TTL_SECONDS;
+        try {
+            if (serviceHub.getAppContext().getConfig().exists(TTL_CONFIG))
+                ttlSeconds = serviceHub.getAppContext().getConfig().getLong(TTL_CONFIG);
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the request dedupe config, using the defaults", e);
+        }
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+        serviceHub.registerUnloadHandler(() -> {
+            sweeper.shutdownNow();
+            return Unit.INSTANCE;
+        });
+    }
+
+    //    ----------------------------------------------- Called from flows -----------------------------------------------
+
+    /**
+     * Returns the transaction an earlier flow completed for this request, or null if the calling flow should handle
+     * it, in which case the request is marked as running under {@code runId}. Must be called from inside a flow.
+     *
+     * @throws DuplicateRequestException if another flow is handling the request right now.
+     */
+    public SecureHash begin(String flowName, String clientRequestId, UUID runId) throws DuplicateRequestException {
+        String key = key(flowName, clientRequestId);
+        Instant now = serviceHub.getClock().instant();
+
+        Completed cached = hot.get(key);
+        if (cached != null && !cached.expired(now, ttl)) return cached.txId;
+
+        FlowRequest row = serviceHub.withEntityManager((Function1<EntityManager, FlowRequest>) em ->
+                em.find(FlowRequest.class, key));
+        if (row != null && row.isCompleted()) {
+            Completed completed = new Completed(SecureHash.parse(row.getTxId()), row.getCompletedAt());
+            if (!completed.expired(now, ttl)) {
+                hot.put(key, completed);
+                return completed.txId;
+            }
+        } else if (row != null && !row.getRunId().equals(runId.toString())) {
+            UUID rowRunId = UUID.fromString(row.getRunId());
+            if (FlowCheckpoints.isRunning(serviceHub, rowRunId))
+                throw new DuplicateRequestException(clientRequestId, rowRunId);
+            logger.info("Taking over request {} from flow {}, which is no longer running", key, rowRunId);
+        }
+
+        // Expired, abandoned and new requests are all recorded as ours.
+        write(key, new FlowRequest(key, runId.toString(), now, null, null));
+        return null;
+    }
+
+    /** Records the transaction the request produced. Must be called from inside the flow that began it. */
+    public void completed(String flowName, String clientRequestId, UUID runId, SecureHash txId) {
+        String key = key(flowName, clientRequestId);
+        Instant now = serviceHub.getClock().instant();
+
+        FlowRequest started = serviceHub.withEntityManager((Function1<EntityManager, FlowRequest>) em ->
+                em.find(FlowRequest.class, key));
+        write(key, new FlowRequest(key, runId.toString(), started == null ? now : started.getStartedAt(), txId.toString(), now));
+
+        if (completions.incrementAndGet() % PURGE_EVERY == 0) {
+            Instant cutoff = now.minus(ttl);
+            int purged = serviceHub.withEntityManager((Function1<EntityManager, Integer>) em ->
+                    em.createQuery("DELETE FROM FlowRequest r WHERE r.startedAt < :cutoff"
+                            + " AND (r.completedAt IS NULL OR r.completedAt < :cutoff)")
+                            .setParameter("cutoff", cutoff)
+                            .executeUpdate());
+            logger.info("Purged {} expired client request ids", purged);
+        }
+        hot.put(key, new Completed(txId, now));
+    }
+
+    //    ----------------------------------------------- Flow requests -----------------------------------------------
+
+    // Replaces the request's row, as its columns cannot be updated in place.
+    private void write(String key, FlowRequest request) {
+        serviceHub.withEntityManager(em -> {
+            FlowRequest previous = em.find(FlowRequest.class, key);
+            if (previous != null) {
+                em.remove(previous);
+                em.flush();
+            }
+            em.persist(request);
+        });
+    }
+
+    //    ----------------------------------------------- Hot cache -----------------------------------------------
+
+    private void sweep() {
+        Instant now = serviceHub.getClock().instant();
+        hot.values().removeIf(completed -> completed.expired(now, ttl));
+    }
+
+    private static String key(String flowName, String clientRequestId) {
+        return flowName + "|" + clientRequestId;
+    }
+
+    private static final class Completed {
+        private final SecureHash txId;
+        private final Instant completedAt;
+
+        private Completed(SecureHash txId, Instant completedAt) {
+            this.txId = txId;
+            this.completedAt = completedAt;
+        }
+
+        private boolean expired(Instant now, Duration ttl) {
+            return completedAt.plus(ttl).isBefore(now);
+        }
+    }
+}
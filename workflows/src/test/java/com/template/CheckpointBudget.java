@@ -0,0 +1,35 @@
+package com.template;
+
+import com.template.metrics.CheckpointMetricsSnapshot;
+import com.template.services.FlowMetricsService;
+import net.corda.testing.node.StartedMockNode;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the checkpoints a node has recorded for a flow against a budget, so that a change which makes a flow carry
+ * much more state across its suspensions (a large field, a captured list) fails a test instead of showing up as disk
+ * load. The node's CorDapp config must set {@link FlowMetricsService#CHECKPOINT_SAMPLE_RATE_CONFIG} to 1.
+ */
+public final class CheckpointBudget {
+
+    private CheckpointBudget() {}
+
+    /** Returns what {@code node} has recorded for runs of the flow with the given simple class name. */
+    public static CheckpointMetricsSnapshot checkpointMetrics(StartedMockNode node, String flowName) {
+        return node.getServices().cordaService(FlowMetricsService.class).checkpointSnapshot().stream()
+                .filter(metrics -> metrics.getFlow().equals(flowName))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No checkpoints were sampled for " + flowName));
+    }
+
+    public static void assertWithinBudget(StartedMockNode node, String flowName, long maxBytes, long maxSuspensions) {
+        CheckpointMetricsSnapshot metrics = checkpointMetrics(node, flowName);
+        assertTrue("The suspensions of " + flowName + " could not be counted on this node",
+                metrics.getSuspensionSamples() > 0);
+        assertTrue(flowName + " checkpoint of " + metrics.getMaxBytes() + " bytes is over its budget of " + maxBytes,
+                metrics.getMaxBytes() <= maxBytes);
+        assertTrue(flowName + " suspended " + metrics.getMaxSuspensions() + " times, over its budget of " + maxSuspensions,
+                metrics.getMaxSuspensions() <= maxSuspensions);
+    }
+}
@@ -1,30 +1,72 @@
 package com.template;
 
+import co.paralleluniverse.fibers.Suspendable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.template.contracts.MetalContract;
 import com.template.flows.Responder;
 import com.template.states.MetalState;
 import net.corda.core.concurrent.CordaFuture;
 import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
 import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.NotaryFlow;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
 import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
 import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkNotarySpec;
 import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.MockNodeParameters;
 import net.corda.testing.node.StartedMockNode;
 import net.corda.testing.node.TestCordapp;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import com.template.flows.IssueMetal;
+import com.template.flows.IssuerNotification;
+import com.template.flows.GetFlowMetrics;
+import com.template.flows.GetHoldings;
+import com.template.flows.GetMetalIndexStats;
+import com.template.flows.InsufficientMetalException;
+import com.template.flows.IssueMetalBatch;
+import com.template.flows.MetalHolding;
+import com.template.flows.MetalIssuance;
+import com.template.flows.MetalTransfer;
+import com.template.flows.MetalStatePage;
+import com.template.flows.ReportToIssuers;
+import com.template.flows.SearchVault;
+import com.template.flows.SelectionOrder;
+import com.template.flows.SettleNetting;
+import com.template.flows.SubmitTransferIntent;
 import com.template.flows.TransferMetal;
+import com.template.flows.TransferMetalBatch;
+import com.template.metrics.StepMetricsSnapshot;
+import com.template.services.FlowMetricsService;
+import com.template.services.IssuerReportService;
+import com.template.services.MetalIndexStats;
+import com.template.services.NotarySelectionService;
+import com.template.services.RequestDedupeService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 
 public class FlowTests {
     private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
         TestCordapp.findCordapp("com.template.contracts"),
+        // Issuer reports are sent by the tests themselves rather than on a timer.
         TestCordapp.findCordapp("com.template.flows")
+                .withConfig(ImmutableMap.of(IssuerReportService.INTERVAL_CONFIG, 3600))
     )));
 
     private final StartedMockNode Mint = network.createNode();
@@ -82,6 +124,76 @@ public class FlowTests {
     }
 
 
+    @Test
+    public void batchIssuanceGroupsOutputsIntoTransactionsOfTheBatchSize() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        List<MetalIssuance> issuances = ImmutableList.of(
+                new MetalIssuance("Gold", 10, partyA),
+                new MetalIssuance("Silver", 100, partyB),
+                new MetalIssuance("Gold", 20, partyA),
+                new MetalIssuance("Silver", 200, partyB),
+                new MetalIssuance("Gold", 30, partyA)
+        );
+
+        CordaFuture<List<SecureHash>> future = Mint.startFlow(new IssueMetalBatch(issuances, 2));
+        setup();
+        List<SecureHash> transactionIds = future.get();
+
+        assertEquals(3, transactionIds.size());
+
+        CordaFuture<MetalStatePage> aFuture = A.startFlow(new SearchVault("Gold", partyA));
+        CordaFuture<MetalStatePage> bFuture = B.startFlow(new SearchVault("Silver", partyB));
+        setup();
+
+        assertEquals(3, aFuture.get().getTotalStatesAvailable());
+        assertEquals(2, bFuture.get().getTotalStatesAvailable());
+
+    }
+
+
+    @Test
+    public void issueRetriedWithTheSameRequestIdReturnsTheFirstTransaction() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+
+        CordaFuture<SignedTransaction> firstFuture = Mint.startFlow(new IssueMetal("Gold", 10, partyA, "request-1"));
+        setup();
+        CordaFuture<SignedTransaction> retryFuture = Mint.startFlow(new IssueMetal("Gold", 10, partyA, "request-1"));
+        CordaFuture<SignedTransaction> otherFuture = Mint.startFlow(new IssueMetal("Gold", 10, partyA, "request-2"));
+        setup();
+
+        assertEquals(firstFuture.get().getId(), retryFuture.get().getId());
+        assertFalse(firstFuture.get().getId().equals(otherFuture.get().getId()));
+
+        CordaFuture<List<MetalHolding>> holdingsFuture = A.startFlow(new GetHoldings("Gold", partyA));
+        setup();
+        assertEquals(20, holdingsFuture.get().get(0).getWeight());
+
+    }
+
+
+    @Test
+    public void requestOfAFlowThatWasKilledIsHandledByTheNextFlowStartedWithIt() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+
+        // A flow that ends without completing its request leaves what a killed one does: a row but no checkpoint.
+        CordaFuture<SecureHash> abandonedFuture = Mint.startFlow(new AbandonRequest("IssueMetal", "request-3"));
+        setup();
+        assertEquals(null, abandonedFuture.get());
+
+        CordaFuture<SignedTransaction> retryFuture = Mint.startFlow(new IssueMetal("Gold", 10, partyA, "request-3"));
+        setup();
+        SecureHash issued = retryFuture.get().getId();
+
+        // Once handled, the request is deduplicated as usual.
+        CordaFuture<SignedTransaction> secondRetryFuture = Mint.startFlow(new IssueMetal("Gold", 10, partyA, "request-3"));
+        setup();
+        assertEquals(issued, secondRetryFuture.get().getId());
+
+    }
+
+
    // ------------------------------------------ Transfer Metal Flow Tests ----------------------------------------
 
 
@@ -105,6 +217,29 @@ public class FlowTests {
     }
 
 
+    @Test
+    public void transferRetriedWithTheSameRequestIdMovesTheMetalOnce() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        setup();
+
+        CordaFuture<SignedTransaction> firstFuture = A.startFlow(new TransferMetal("Gold", 10, partyB, "transfer-1"));
+        setup();
+        CordaFuture<SignedTransaction> retryFuture = A.startFlow(new TransferMetal("Gold", 10, partyB, "transfer-1"));
+        setup();
+
+        assertEquals(firstFuture.get().getId(), retryFuture.get().getId());
+
+        CordaFuture<List<MetalHolding>> holdingsFuture = B.startFlow(new GetHoldings("Gold", partyB));
+        setup();
+        assertEquals(10, holdingsFuture.get().get(0).getWeight());
+
+    }
+
+
     @Test
     public void transactionHasTransferCommandWithOwnerAsSigner() throws Exception {
         IssueMetal flow = new IssueMetal("Gold", 10, A.getInfo().getLegalIdentities().get(0));
@@ -127,23 +262,556 @@ public class FlowTests {
     }
 
 
+    @Test
+    public void transferOfPartOfABarSendsTheChangeBackToTheSender() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
 
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        setup();
 
+        CordaFuture<SignedTransaction> transferFuture = A.startFlow(new TransferMetal("Gold", 7, partyB));
+        setup();
 
+        SignedTransaction signedTransaction = transferFuture.get();
 
-}
+        assertEquals(1, signedTransaction.getTx().getInputs().size());
+        assertEquals(2, signedTransaction.getTx().getOutputStates().size());
+
+        for (MetalState output : signedTransaction.getTx().outputsOfType(MetalState.class)) {
+            if (output.getOwner().equals(partyB)) assertEquals(7, output.getWeight());
+            else assertEquals(3, output.getWeight());
+        }
+
+    }
+
+
+    @Test
+    public void transferMergesBarsWhenNoSingleBarCoversTheWeight() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        Mint.startFlow(new IssueMetal("Gold", 20, partyA));
+        Mint.startFlow(new IssueMetal("Gold", 5, partyA));
+        setup();
+
+        CordaFuture<SignedTransaction> transferFuture = A.startFlow(new TransferMetal("Gold", 25, partyB));
+        setup();
+
+        SignedTransaction signedTransaction = transferFuture.get();
+
+        // The two heaviest bars are enough, the third one is left alone.
+        assertEquals(2, signedTransaction.getTx().getInputs().size());
+        assertEquals(2, signedTransaction.getTx().getOutputStates().size());
+
+    }
+
+
+    @Test
+    public void concurrentTransfersReserveDifferentInputs() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        setup();
+
+        // Both flows see the same two candidates in the same order. The soft lock taken by the first one makes the
+        // second one pick the other bar, so neither is rejected by the notary.
+        CordaFuture<SignedTransaction> firstFuture = A.startFlow(new TransferMetal("Gold", 10, partyB, SelectionOrder.FIRST));
+        CordaFuture<SignedTransaction> secondFuture = A.startFlow(new TransferMetal("Gold", 10, partyB, SelectionOrder.FIRST));
+        setup();
+
+        SignedTransaction first = firstFuture.get();
+        SignedTransaction second = secondFuture.get();
+
+        assertFalse(first.getTx().getInputs().get(0).equals(second.getTx().getInputs().get(0)));
+
+    }
+
+
+    @Test
+    public void metalIndexServesTransfersOfAnExactWeight() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        Mint.startFlow(new IssueMetal("Silver", 10, partyA));
+        setup();
+
+        A.startFlow(new TransferMetal("Gold", 10, B.getInfo().getLegalIdentities().get(0)));
+        setup();
+
+        CordaFuture<MetalIndexStats> statsFuture = A.startFlow(new GetMetalIndexStats());
+        setup();
+        MetalIndexStats stats = statsFuture.get();
+
+        assertTrue(stats.isSeeded());
+        assertEquals(1, stats.getHits());
+        assertEquals(0, stats.getMisses());
+        // Only the Silver bar is left once the Gold one has been transferred.
+        assertEquals(1, stats.getStates());
+
+    }
+
+
+    @Test
+    public void asynchronousTransferReachesTheIssuerWhenReported() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        setup();
+
+        CordaFuture<SignedTransaction> transferFuture = A.startFlow(
+                new TransferMetal("Gold", 10, partyB, SelectionOrder.STRIPED, IssuerNotification.ASYNCHRONOUS));
+        setup();
+        SecureHash txId = transferFuture.get().getId();
+
+        // Finality involved only A, B and the notary.
+        assertTrue(B.transaction(() -> B.getServices().getValidatedTransactions().getTransaction(txId)) != null);
+        assertTrue(Mint.transaction(() -> Mint.getServices().getValidatedTransactions().getTransaction(txId)) == null);
 
+        CordaFuture<Integer> reportFuture = A.startFlow(new ReportToIssuers());
+        setup();
 
+        assertEquals(1, (int) reportFuture.get());
+        assertTrue(Mint.transaction(() -> Mint.getServices().getValidatedTransactions().getTransaction(txId)) != null);
 
+        // Acknowledged reports are not sent again.
+        CordaFuture<Integer> secondReportFuture = A.startFlow(new ReportToIssuers());
+        setup();
+        assertEquals(0, (int) secondReportFuture.get());
 
+    }
 
 
+    @Test
+    public void anIssuerThatDoesNotAnswerHoldsUpOnlyItsOwnReports() throws Exception {
+        StartedMockNode otherMint = network.createNode();
+        setup();
+        Party mint = Mint.getInfo().getLegalIdentities().get(0);
+        Party otherIssuer = otherMint.getInfo().getLegalIdentities().get(0);
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
 
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        otherMint.startFlow(new IssueMetal("Gold", 10, partyA));
+        setup();
 
+        A.startFlow(new TransferMetal("Gold", 20, partyB, SelectionOrder.STRIPED, IssuerNotification.ASYNCHRONOUS));
+        setup();
 
+        // The other issuer goes down, so its report is never acknowledged.
+        otherMint.stop();
+        IssuerReportService reports = A.getServices().cordaService(IssuerReportService.class);
+        Map<Party, CordaFuture<Integer>> firstReports = reports.report(ImmutableList.of(otherIssuer));
+        setup();
+        assertFalse(firstReports.get(otherIssuer).isDone());
 
+        // The Mint is still reported to, and the other issuer is not reported to twice.
+        Map<Party, CordaFuture<Integer>> secondReports = reports.report(ImmutableList.of(mint, otherIssuer));
+        setup();
+        assertFalse(secondReports.containsKey(otherIssuer));
+        assertEquals(1, (int) secondReports.get(mint).get());
 
+    }
 
 
+    @Test
+    public void flowMetricsRecordEveryStepOfATransfer() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
 
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        setup();
 
+        A.startFlow(new TransferMetal("Gold", 4, B.getInfo().getLegalIdentities().get(0)));
+        setup();
+
+        CordaFuture<List<StepMetricsSnapshot>> metricsFuture = A.startFlow(new GetFlowMetrics());
+        setup();
+        List<StepMetricsSnapshot> metrics = metricsFuture.get();
+
+        // Six steps plus the whole flow, and at least one timed vault query.
+        long transferSteps = metrics.stream().filter(m -> m.getFlow().equals("TransferMetal")).count();
+        assertEquals(7, transferSteps);
+        for (StepMetricsSnapshot metric : metrics) {
+            if (!metric.getFlow().equals("TransferMetal")) continue;
+            assertEquals(1, metric.getSuccesses());
+            assertEquals(0, metric.getFailures());
+        }
+        assertTrue(metrics.stream().anyMatch(m -> m.getFlow().equals(FlowMetricsService.VAULT_QUERY)));
+
+    }
+
+
+    @Test
+    public void transferRetriesWithOtherInputsWhenTheNotaryReportsAConflict() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        CordaFuture<SignedTransaction> spentFuture = Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        CordaFuture<SignedTransaction> otherFuture = Mint.startFlow(new IssueMetal("Gold", 20, partyA));
+        setup();
+        StateAndRef<MetalState> spent = spentFuture.get().getTx().outRef(0);
+        StateAndRef<MetalState> other = otherFuture.get().getTx().outRef(0);
+
+        // The notary sees the exact-weight bar spent, but A's vault still has it as unconsumed.
+        A.startFlow(new NotariseWithoutRecording(spent));
+        setup();
+
+        CordaFuture<SignedTransaction> transferFuture = A.startFlow(new TransferMetal("Gold", 10, partyB));
+        setup();
+        SignedTransaction signedTransaction = transferFuture.get();
+
+        assertEquals(1, signedTransaction.getTx().getInputs().size());
+        assertEquals(other.getRef(), signedTransaction.getTx().getInputs().get(0));
+
+        CordaFuture<List<StepMetricsSnapshot>> metricsFuture = A.startFlow(new GetFlowMetrics());
+        setup();
+        StepMetricsSnapshot retries = metricsFuture.get().stream()
+                .filter(m -> m.getFlow().equals("TransferMetal") && m.getStep().startsWith("Retrying"))
+                .findFirst().get();
+        assertEquals(1, retries.getSuccesses());
+        assertEquals(0, retries.getFailures());
+
+    }
+
+
+    @Test
+    public void issueAndTransferCheckpointsStayWithinTheirBudgets() throws Exception {
+        // Only this network measures every checkpoint, so the other tests do not pay for the extra queries.
+        MockNetwork sampled = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+                TestCordapp.findCordapp("com.template.contracts"),
+                TestCordapp.findCordapp("com.template.flows")
+                        .withConfig(ImmutableMap.of(IssuerReportService.INTERVAL_CONFIG, 3600,
+                                FlowMetricsService.CHECKPOINT_SAMPLE_RATE_CONFIG, 1.0))
+        )));
+        try {
+            StartedMockNode mint = sampled.createNode();
+            StartedMockNode traderA = sampled.createNode();
+            StartedMockNode traderB = sampled.createNode();
+
+            mint.startFlow(new IssueMetal("Gold", 10, traderA.getInfo().getLegalIdentities().get(0)));
+            sampled.runNetwork();
+            traderA.startFlow(new TransferMetal("Gold", 4, traderB.getInfo().getLegalIdentities().get(0)));
+            sampled.runNetwork();
+
+            // Generous budgets: a regression is a checkpoint that grows by multiples, not by a few hundred bytes.
+            CheckpointBudget.assertWithinBudget(mint, "IssueMetal", 32 * 1024, 20);
+            CheckpointBudget.assertWithinBudget(traderA, "TransferMetal", 64 * 1024, 40);
+            assertTrue(CheckpointBudget.checkpointMetrics(traderA, "TransferMetal").getMaxSuspensions() > 0);
+        } finally {
+            sampled.stopNodes();
+        }
+
+    }
+
+
+    @Test(expected = InsufficientMetalException.class)
+    public void transferOfMoreMetalThanOwnedFails() throws Throwable {
+        Mint.startFlow(new IssueMetal("Gold", 10, A.getInfo().getLegalIdentities().get(0)));
+        setup();
+
+        CordaFuture<SignedTransaction> transferFuture = A.startFlow(new TransferMetal("Gold", 11, B.getInfo().getLegalIdentities().get(0)));
+        setup();
+
+        try {
+            transferFuture.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+
+    }
+
+
+   // ------------------------------------------ Search Vault Flow Tests ----------------------------------------
+
+
+
+    @Test
+    public void searchVaultReturnsTheVaultOnePageAtATime() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Mint.startFlow(new IssueMetal("Gold", 10 + i, A.getInfo().getLegalIdentities().get(0)));
+        }
+        setup();
+
+        CordaFuture<MetalStatePage> firstFuture = A.startFlow(new SearchVault(Vault.StateStatus.UNCONSUMED, 1, 2));
+        setup();
+        MetalStatePage firstPage = firstFuture.get();
+
+        assertEquals(2, firstPage.getStates().size());
+        assertEquals(3, firstPage.getTotalStatesAvailable());
+        assertTrue(firstPage.hasNextPage());
+
+        CordaFuture<MetalStatePage> secondFuture = A.startFlow(new SearchVault(Vault.StateStatus.UNCONSUMED, firstPage.nextPageNumber(), 2));
+        setup();
+        MetalStatePage secondPage = secondFuture.get();
+
+        assertEquals(1, secondPage.getStates().size());
+        assertFalse(secondPage.hasNextPage());
+
+    }
+
+
+    @Test
+    public void getHoldingsSumsWeightPerMetalAndOwnerInTheDatabase() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        Mint.startFlow(new IssueMetal("Gold", 15, partyA));
+        Mint.startFlow(new IssueMetal("Silver", 100, partyA));
+        setup();
+
+        CordaFuture<List<MetalHolding>> allFuture = A.startFlow(new GetHoldings());
+        setup();
+        List<MetalHolding> all = allFuture.get();
+
+        assertEquals(2, all.size());
+        for (MetalHolding holding : all) {
+            assertEquals(partyA.getName().toString(), holding.getOwner());
+            assertEquals(holding.getMetalName().equals("Gold") ? 25 : 100, holding.getWeight());
+        }
+
+        CordaFuture<List<MetalHolding>> goldFuture = A.startFlow(new GetHoldings("Gold", partyA));
+        setup();
+        List<MetalHolding> gold = goldFuture.get();
+
+        assertEquals(1, gold.size());
+        assertEquals(25, gold.get(0).getWeight());
+
+    }
+
+
+    @Test
+    public void transferMetalBatchPutsUpToBatchSizePaymentsInEachTransaction() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        Mint.startFlow(new IssueMetal("Gold", 50, partyA));
+        Mint.startFlow(new IssueMetal("Silver", 50, partyA));
+        setup();
+
+        CordaFuture<List<SecureHash>> batchFuture = A.startFlow(new TransferMetalBatch(ImmutableList.of(
+                new MetalTransfer("Gold", 10, partyB),
+                new MetalTransfer("Silver", 20, partyB),
+                new MetalTransfer("Gold", 5, partyB)), 2));
+        setup();
+
+        assertEquals(2, batchFuture.get().size());
+
+        CordaFuture<List<MetalHolding>> holdingsFuture = B.startFlow(new GetHoldings());
+        setup();
+
+        List<MetalHolding> holdings = holdingsFuture.get();
+        assertEquals(2, holdings.size());
+        for (MetalHolding holding : holdings) {
+            assertEquals(holding.getMetalName().equals("Gold") ? 15 : 20, holding.getWeight());
+        }
+
+    }
+
+
+    @Test
+    public void settleNettingPaysOnlyTheNetOfOffsettingTransferIntents() throws Exception {
+        Party mint = Mint.getInfo().getLegalIdentities().get(0);
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        Mint.startFlow(new IssueMetal("Gold", 10, partyB));
+        setup();
+
+        A.startFlow(new SubmitTransferIntent("Gold", 7, partyB, mint));
+        B.startFlow(new SubmitTransferIntent("Gold", 5, partyA, mint));
+        A.startFlow(new SubmitTransferIntent("Gold", 2, partyB, mint));
+        setup();
+
+        CordaFuture<SignedTransaction> settleFuture = Mint.startFlow(new SettleNetting());
+        setup();
+        SignedTransaction settlement = settleFuture.get();
+
+        // A owes B 4 net, so only A's bar is spent, in one transaction.
+        assertEquals(1, settlement.getTx().getInputs().size());
+
+        CordaFuture<List<MetalHolding>> holdingsA = A.startFlow(new GetHoldings("Gold", partyA));
+        CordaFuture<List<MetalHolding>> holdingsB = B.startFlow(new GetHoldings("Gold", partyB));
+        setup();
+        assertEquals(6, holdingsA.get().get(0).getWeight());
+        assertEquals(14, holdingsB.get().get(0).getWeight());
+
+        // The settled intents are gone.
+        CordaFuture<SignedTransaction> secondSettleFuture = Mint.startFlow(new SettleNetting());
+        setup();
+        assertEquals(null, secondSettleFuture.get());
+
+    }
+
+
+    @Test
+    public void settleNettingSetsAsideTheIntentsOfAPayerThatIsShortAndSettlesTheRest() throws Exception {
+        Party mint = Mint.getInfo().getLegalIdentities().get(0);
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        Mint.startFlow(new IssueMetal("Gold", 10, partyB));
+        setup();
+
+        // A owes B 11 net but holds only 10.
+        A.startFlow(new SubmitTransferIntent("Gold", 15, partyB, mint));
+        B.startFlow(new SubmitTransferIntent("Gold", 4, partyA, mint));
+        setup();
+
+        CordaFuture<SignedTransaction> shortFuture = Mint.startFlow(new SettleNetting());
+        setup();
+        try {
+            shortFuture.get();
+            throw new AssertionError("The settlement should have failed.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InsufficientMetalException);
+        }
+
+        // A's intent is set aside, so the next settlement pays only B's.
+        CordaFuture<SignedTransaction> settleFuture = Mint.startFlow(new SettleNetting());
+        setup();
+        assertEquals(1, settleFuture.get().getTx().getInputs().size());
+
+        CordaFuture<List<MetalHolding>> holdingsA = A.startFlow(new GetHoldings("Gold", partyA));
+        CordaFuture<List<MetalHolding>> holdingsB = B.startFlow(new GetHoldings("Gold", partyB));
+        setup();
+        assertEquals(14, holdingsA.get().get(0).getWeight());
+        assertEquals(6, holdingsB.get().get(0).getWeight());
+
+        // And the rejected intent is never claimed again.
+        CordaFuture<SignedTransaction> thirdSettleFuture = Mint.startFlow(new SettleNetting());
+        setup();
+        assertEquals(null, thirdSettleFuture.get());
+
+    }
+
+
+    @Test
+    public void aSettlementResumedAfterTheAgentRestartsKeepsItsClaimAndPaysTheIntentsOnce() throws Exception {
+        Party mint = Mint.getInfo().getLegalIdentities().get(0);
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        Mint.startFlow(new IssueMetal("Gold", 10, partyA));
+        Mint.startFlow(new IssueMetal("Gold", 10, partyB));
+        setup();
+
+        A.startFlow(new SubmitTransferIntent("Gold", 7, partyB, mint));
+        setup();
+
+        // With A down, the settlement waits for A's metal, its claim committed with its checkpoint.
+        A.stop();
+        Mint.startFlow(new SettleNetting());
+        setup();
+
+        // A concurrent settlement finds nothing to claim.
+        CordaFuture<SignedTransaction> concurrentFuture = Mint.startFlow(new SettleNetting());
+        setup();
+        assertEquals(null, concurrentFuture.get());
+
+        // The agent restarts mid-settlement, and the settlement resumes from its checkpoint once A is back.
+        Mint.stop();
+        StartedMockNode restartedMint = startAgain(Mint);
+        StartedMockNode restartedA = startAgain(A);
+        setup();
+
+        CordaFuture<List<MetalHolding>> holdingsA = restartedA.startFlow(new GetHoldings("Gold", partyA));
+        CordaFuture<List<MetalHolding>> holdingsB = B.startFlow(new GetHoldings("Gold", partyB));
+        setup();
+        assertEquals(3, holdingsA.get().get(0).getWeight());
+        assertEquals(17, holdingsB.get().get(0).getWeight());
+
+        // The intent was deleted by the resumed settlement, so it is not paid again.
+        CordaFuture<SignedTransaction> laterFuture = restartedMint.startFlow(new SettleNetting());
+        setup();
+        assertEquals(null, laterFuture.get());
+
+    }
+
+
+    @Test
+    public void transferMovesInputsIssuedOnDifferentNotariesOntoOne() throws Exception {
+        MockNetwork twoNotaries = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+                TestCordapp.findCordapp("com.template.contracts"),
+                TestCordapp.findCordapp("com.template.flows")
+                        .withConfig(ImmutableMap.of(IssuerReportService.INTERVAL_CONFIG, 3600,
+                                NotarySelectionService.STRATEGY_CONFIG, "ROUND_ROBIN"))
+        )).withNotarySpecs(ImmutableList.of(
+                new MockNetworkNotarySpec(CordaX500Name.parse("O=Notary,L=London,C=GB"), false),
+                new MockNetworkNotarySpec(CordaX500Name.parse("O=Notary2,L=London,C=GB"), false))));
+        try {
+            StartedMockNode mint = twoNotaries.createNode();
+            StartedMockNode traderA = twoNotaries.createNode();
+            StartedMockNode traderB = twoNotaries.createNode();
+            Party partyA = traderA.getInfo().getLegalIdentities().get(0);
+
+            CordaFuture<SignedTransaction> firstFuture = mint.startFlow(new IssueMetal("Gold", 10, partyA));
+            CordaFuture<SignedTransaction> secondFuture = mint.startFlow(new IssueMetal("Gold", 10, partyA));
+            twoNotaries.runNetwork();
+
+            // Round robin issued the two bars on different notaries.
+            assertFalse(firstFuture.get().getNotary().equals(secondFuture.get().getNotary()));
+
+            CordaFuture<SignedTransaction> transferFuture = traderA.startFlow(
+                    new TransferMetal("Gold", 15, traderB.getInfo().getLegalIdentities().get(0)));
+            twoNotaries.runNetwork();
+            SignedTransaction transfer = transferFuture.get();
+
+            // One of the bars was moved onto the other's notary first, so that both could be spent together.
+            assertEquals(2, transfer.getTx().getInputs().size());
+        } finally {
+            twoNotaries.stopNodes();
+        }
+
+    }
+
+    // Starts a stopped node again on the same database, so its flows resume from their checkpoints.
+    private StartedMockNode startAgain(StartedMockNode stopped) {
+        return network.createNode(new MockNodeParameters()
+                .withForcedID(stopped.getId())
+                .withLegalName(stopped.getInfo().getLegalIdentities().get(0).getName()));
+    }
+
+    // Begins a request and ends without completing it.
+    private static class AbandonRequest extends FlowLogic<SecureHash> {
+        private final String flowName;
+        private final String clientRequestId;
+
+        AbandonRequest(String flowName, String clientRequestId) {
+            this.flowName = flowName;
+            this.clientRequestId = clientRequestId;
+        }
+
+        @Suspendable
+        @Override
+        public SecureHash call() throws FlowException {
+            return getServiceHub().cordaService(RequestDedupeService.class)
+                    .begin(flowName, clientRequestId, getRunId().getUuid());
+        }
+    }
+
+    // Spends a state at the notary without recording the transaction, as a flow on another node holding the key would.
+    private static class NotariseWithoutRecording extends FlowLogic<Void> {
+        private final StateAndRef<MetalState> input;
+
+        NotariseWithoutRecording(StateAndRef<MetalState> input) {
+            this.input = input;
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            TransactionBuilder txB = new TransactionBuilder(input.getState().getNotary())
+                    .addInputState(input)
+                    .addOutputState(input.getState().getData(), MetalContract.CID)
+                    .addCommand(new MetalContract.Transfer(), getOurIdentity().getOwningKey());
+            subFlow(new NotaryFlow.Client(getServiceHub().signInitialTransaction(txB)));
+            return null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.template.services;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LongObjectMapTests {
+
+    // The table a new map starts with, which grows once it holds more than half of this.
+    private static final int CAPACITY = 16;
+
+    @Test
+    public void removingFromAProbeChainThatWrapsKeepsTheRestOfTheChainReachable() {
+        // Three keys homed in the last slot fill it and wrap into slots 0 and 1; a key homed in slot 0 then lands in 2.
+        List<Long> lastSlot = keysWithHome(CAPACITY - 1, 3);
+        long firstSlot = keysWithHome(0, 1).get(0);
+
+        LongObjectMap<String> map = new LongObjectMap<>();
+        for (long key : lastSlot) map.put(key, "last" + key);
+        map.put(firstSlot, "first");
+
+        // Leaves a gap at the end of the table, which must pull back the entries from across the wrap.
+        assertEquals("last" + lastSlot.get(0), map.remove(lastSlot.get(0)));
+
+        assertNull(map.get(lastSlot.get(0)));
+        assertEquals("last" + lastSlot.get(1), map.get(lastSlot.get(1)));
+        assertEquals("last" + lastSlot.get(2), map.get(lastSlot.get(2)));
+        assertEquals("first", map.get(firstSlot));
+        assertEquals(3, map.size());
+
+        // Same again from the middle of the chain.
+        assertEquals("last" + lastSlot.get(2), map.remove(lastSlot.get(2)));
+        assertEquals("last" + lastSlot.get(1), map.get(lastSlot.get(1)));
+        assertEquals("first", map.get(firstSlot));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void growingKeepsEveryMapping() {
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        int count = CAPACITY * 64;
+        for (long i = 0; i < count; i++) {
+            // Keys differing only in their high bits, as the metal index packs them.
+            assertNull(map.put(i << 32, i));
+        }
+
+        assertEquals(count, map.size());
+        for (long i = 0; i < count; i++) {
+            assertEquals(Long.valueOf(i), map.get(i << 32));
+        }
+        assertNull(map.get(-1L));
+
+        assertEquals(Long.valueOf(7), map.put(7L << 32, 70L));
+        assertEquals(Long.valueOf(70), map.get(7L << 32));
+        assertEquals(count, map.size());
+    }
+
+    @Test
+    public void randomPutsAndRemovesAgreeWithAHashMap() {
+        Random random = new Random(42);
+        LongObjectMap<Long> map = new LongObjectMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+
+        // Few distinct keys, so the table stays small and crowded and removals often land inside probe chains.
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(40);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (long key = 0; key < 40; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    public void clearEmptiesTheMap() {
+        LongObjectMap<String> map = new LongObjectMap<>(100);
+        for (long i = 0; i < 100; i++) map.put(i, "value");
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertNull(map.get(5));
+        map.put(5, "again");
+        assertEquals("again", map.get(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullValuesAreRejected() {
+        new LongObjectMap<String>().put(1, null);
+    }
+
+    // Finds keys whose first probe in a table of CAPACITY slots is the given slot, by the same hash as the map.
+    private static List<Long> keysWithHome(int slot, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 1; keys.size() < count; key++) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            if (((int) (h ^ (h >>> 32)) & (CAPACITY - 1)) == slot) keys.add(key);
+        }
+        return keys;
+    }
+}